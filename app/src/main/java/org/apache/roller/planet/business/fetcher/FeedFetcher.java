@@ -68,5 +68,22 @@ public interface FeedFetcher {
      * @throws FetcherException If there is an error fetching the subscription.
      */
     Subscription fetchSubscription(String feedURL, Date lastModified) throws FetcherException;
+    
+    
+    /**
+     * Conditionally fetch a single subscription using what was saved from
+     * its last fetch.
+     *
+     * This method takes in a subscription with the validators saved from its
+     * last fetch (etag, last modified and content hash) and should return a
+     * transient Subscription for the feed only if the feed has changed since.
+     * The returned Subscription carries the validators of this fetch, to be
+     * saved for the next one.
+     *
+     * @param sub The subscription to fetch, persistent or not.
+     * @return Subscription The fetched subscription, or null if unchanged.
+     * @throws FetcherException If there is an error fetching the subscription.
+     */
+    Subscription fetchSubscription(Subscription sub) throws FetcherException;
 
 }
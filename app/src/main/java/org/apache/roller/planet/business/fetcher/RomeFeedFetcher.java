@@ -23,20 +23,23 @@ import com.rometools.rome.feed.synd.SyndCategory;
 import com.rometools.rome.feed.synd.SyndContent;
 import com.rometools.rome.feed.synd.SyndEntry;
 import com.rometools.rome.feed.synd.SyndFeed;
-import com.rometools.fetcher.FeedFetcher;
-import com.rometools.fetcher.impl.FeedFetcherCache;
-import com.rometools.fetcher.impl.HttpURLFeedFetcher;
-import com.rometools.fetcher.impl.SyndFeedInfo;
-import com.rometools.fetcher.impl.DiskFeedInfoCache;
+import com.rometools.rome.io.SyndFeedInput;
+import com.rometools.rome.io.XmlReader;
 
-import java.io.File;
-import java.net.MalformedURLException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -44,18 +47,49 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.planet.pojos.SubscriptionEntry;
 import org.apache.roller.planet.pojos.Subscription;
 import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.Utilities;
 
 
 /**
  * A FeedFetcher based on the ROME RSS/Atom feed parser (http://rome.dev.java.net).
+ *
+ * Feeds are fetched with conditional requests using the ETag and
+ * Last-Modified validators saved with a subscription, and feeds with the
+ * same content as on the last fetch are not parsed again.
+ *
+ * Connecting and every read of a fetch time out after the time set by the
+ * planet.aggregator.updater.timeout property, so a host which stops
+ * answering never holds on to the fetching thread.
  */
 public class RomeFeedFetcher implements org.apache.roller.planet.business.fetcher.FeedFetcher {
     
     private static Log log = LogFactory.getLog(RomeFeedFetcher.class);
     
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong parseMillis = new AtomicLong();
+    
+    // max time in millis to connect, and to wait for data
+    private final int timeout;
+    
+    // longest validators the etag and last_modified columns hold
+    private static final int MAX_ETAG_LENGTH = 255;
+    private static final int MAX_LAST_MODIFIED_LENGTH = 64;
+    
     
     public RomeFeedFetcher() {
-        // no-op
+        this(WebloggerConfig.getIntProperty("planet.aggregator.updater.timeout", 60) * 1000);
+    }
+    
+    
+    /**
+     * @param timeout max time in millis to connect, and to wait for data
+     */
+    public RomeFeedFetcher(int timeout) {
+        this.timeout = Math.max(1, timeout);
     }
     
     
@@ -78,17 +112,154 @@ public class RomeFeedFetcher implements org.apache.roller.planet.business.fetche
             throw new IllegalArgumentException("feed url cannot be null");
         }
         
-        // setup Rome feed fetcher
-        FeedFetcher feedFetcher = getRomeFetcher();
+        Subscription newSub = fetchFeed(feedURL, null, null, null);
+        
+        // check if feed is unchanged and bail now if so
+        if(lastModified != null && newSub.getLastUpdated() != null &&
+                !newSub.getLastUpdated().after(lastModified)) {
+            return null;
+        }
+        
+        return newSub;
+    }
+    
+    
+    /**
+     * @inheritDoc
+     */
+    public Subscription fetchSubscription(Subscription sub) 
+            throws FetcherException {
+        
+        if(sub == null || sub.getFeedURL() == null) {
+            throw new IllegalArgumentException("feed url cannot be null");
+        }
+        
+        return fetchFeed(sub.getFeedURL(), sub.getEtag(), sub.getLastModified(),
+                sub.getContentHash());
+    }
+    
+    
+    /**
+     * Counts of feed fetching work since startup: requests, notModified (304
+     * responses), unchanged (same content as last time), parsed, bytes
+     * downloaded and parseMillis.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new HashMap<String, Long>();
+        stats.put("requests", requests.get());
+        stats.put("notModified", notModified.get());
+        stats.put("unchanged", unchanged.get());
+        stats.put("parsed", parsed.get());
+        stats.put("bytes", bytes.get());
+        stats.put("parseMillis", parseMillis.get());
+        return stats;
+    }
+    
+    
+    // fetch a feed, conditionally if we have validators from an earlier fetch
+    private Subscription fetchFeed(String feedURL, String etag, String lastModified,
+            String contentHash) throws FetcherException {
         
-        // fetch the feed
         log.debug("Fetching feed: "+feedURL);
-        SyndFeed feed;
+        
+        byte[] content;
+        HttpURLConnection conn = null;
         try {
-            feed = feedFetcher.retrieveFeed(new URL(feedURL));
+            conn = (HttpURLConnection) new URL(feedURL).openConnection();
+            conn.setConnectTimeout(timeout);
+            conn.setReadTimeout(timeout);
+            conn.setRequestProperty("User-Agent", "RollerPlanetAggregator");
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            if (etag != null) {
+                conn.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                conn.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            
+            int status = conn.getResponseCode();
+            requests.incrementAndGet();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                log.debug("Feed not modified: "+feedURL);
+                notModified.incrementAndGet();
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new FetcherException("Error fetching subscription - "+feedURL
+                        +", HTTP status "+status);
+            }
+            
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            Utilities.copyInputToOutput(conn.getInputStream(), raw);
+            bytes.addAndGet(raw.size());
+            content = raw.toByteArray();
+            if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+                Utilities.copyInputToOutput(
+                        new GZIPInputStream(new ByteArrayInputStream(content)), unzipped);
+                content = unzipped.toByteArray();
+            }
+            
+        } catch (FetcherException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new FetcherException("Error fetching subscription - "+feedURL, ex);
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+        
+        // same content as last time, so no need to parse it
+        String hash = DigestUtils.sha1Hex(content);
+        if (hash.equals(contentHash)) {
+            log.debug("Feed content unchanged: "+feedURL);
+            unchanged.incrementAndGet();
+            return null;
+        }
+        
+        SyndFeed feed;
+        long parseStart = System.currentTimeMillis();
+        try {
+            feed = new SyndFeedInput().build(new XmlReader(
+                    new ByteArrayInputStream(content), conn.getContentType(), true));
+        } catch (Exception ex) {
+            throw new FetcherException("Error parsing subscription - "+feedURL, ex);
+        } finally {
+            parseMillis.addAndGet(System.currentTimeMillis() - parseStart);
         }
+        parsed.incrementAndGet();
+        
+        Subscription newSub = buildSubscription(feedURL, feed);
+        
+        // no update time specified in feed, so use the http header
+        if (newSub.getLastUpdated() == null && conn.getLastModified() != 0) {
+            newSub.setLastUpdated(new Date(conn.getLastModified()));
+        }
+        
+        newSub.setEtag(getValidator(conn, "ETag", MAX_ETAG_LENGTH));
+        newSub.setLastModified(getValidator(conn, "Last-Modified", MAX_LAST_MODIFIED_LENGTH));
+        newSub.setContentHash(hash);
+        
+        return newSub;
+    }
+    
+    
+    // a validator header, or null if there is none or it's too long to be
+    // saved, which would fail saving the other feeds updated along with it
+    private static String getValidator(HttpURLConnection conn, String header, int maxLength) {
+        String value = conn.getHeaderField(header);
+        if (value != null && value.length() > maxLength) {
+            log.debug("Ignoring " + header + " header of " + value.length()
+                    + " characters - " + conn.getURL());
+            return null;
+        }
+        return value;
+    }
+    
+    
+    // build a Subscription from a Rome SyndFeed
+    private Subscription buildSubscription(String feedURL, SyndFeed feed) {
         
         log.debug("Feed pulled, extracting data into Subscription");
         
@@ -110,27 +281,6 @@ public class RomeFeedFetcher implements org.apache.roller.planet.business.fetche
             // set the author to the title
             newSub.setAuthor(newSub.getTitle());
         }
-        if(newSub.getLastUpdated() == null) {
-            // no update time specified in feed, so try consulting feed info cache
-            FeedFetcherCache feedCache = getRomeFetcherCache();
-            try {
-                SyndFeedInfo feedInfo = feedCache.getFeedInfo(new URL(newSub.getFeedURL()));
-                if(feedInfo.getLastModified() != null) {
-                    long lastUpdatedLong = (Long) feedInfo.getLastModified();
-                    if (lastUpdatedLong != 0) {
-                        newSub.setLastUpdated(new Date(lastUpdatedLong));
-                    }
-                }
-            } catch (MalformedURLException ex) {
-                // should never happen since we check this above
-            }
-        }
-        
-        // check if feed is unchanged and bail now if so
-        if(lastModified != null && newSub.getLastUpdated() != null &&
-                !newSub.getLastUpdated().after(lastModified)) {
-            return null;
-        }
         
         if(log.isDebugEnabled()) {
             log.debug("Subscription is: " + newSub.toString());
@@ -152,6 +302,9 @@ public class RomeFeedFetcher implements org.apache.roller.planet.business.fetche
         List<SyndEntry> feedEntries = feed.getEntries();
         for (SyndEntry feedEntry : feedEntries) {
             SubscriptionEntry newEntry = buildEntry(feedEntry);
+            if(newEntry == null) {
+                continue;
+            }
             
             // some kludge to handle feeds with no entry dates
             if (newEntry.getPubTime() == null) {
@@ -160,9 +313,7 @@ public class RomeFeedFetcher implements org.apache.roller.planet.business.fetche
                 cal.add(Calendar.DATE, -1);
             }
             
-            if(newEntry != null) {
-                newSub.addEntry(newEntry);
-            }
+            newSub.addEntry(newEntry);
         }
         
         log.debug(feedEntries.size()+" entries included");
@@ -213,7 +364,7 @@ public class RomeFeedFetcher implements org.apache.roller.planet.business.fetche
         // get content and unescape if it is 'text/plain'
         if (romeEntry.getContents().size() > 0) {
             SyndContent content= (SyndContent)romeEntry.getContents().get(0);
-            if (content != null && content.getType().equals("text/plain")) {
+            if (content != null && "text/plain".equals(content.getType())) {
                 newEntry.setText(StringEscapeUtils.unescapeHtml4(content.getValue()));
             } else if (content != null) {
                 newEntry.setText(content.getValue());
@@ -237,68 +388,4 @@ public class RomeFeedFetcher implements org.apache.roller.planet.business.fetche
         return newEntry;
     }
     
-    
-    // get a feed fetcher cache, if possible
-    private FeedFetcherCache getRomeFetcherCache() {
-        
-        String cacheDirPath = WebloggerConfig.getProperty("cache.dir");
-        
-        // can't continue without cache dir
-        if (cacheDirPath == null) {
-            log.warn("Planet cache directory not set, feeds cannot be cached.");
-            return null;
-        }
-        
-        // allow ${user.home} in cache dir property
-        String cacheDirName = cacheDirPath.replaceFirst(
-                "\\$\\{user.home}",System.getProperty("user.home"));
-        
-        // allow ${catalina.home} in cache dir property
-        if (System.getProperty("catalina.home") != null) {
-            cacheDirName = cacheDirName.replaceFirst(
-                    "\\$\\{catalina.home}",System.getProperty("catalina.home"));
-        }
-        
-        // create cache  dir if it does not exist
-        File cacheDir = null;
-        try {
-            cacheDir = new File(cacheDirName);
-            if (!cacheDir.exists()) {
-                cacheDir.mkdirs();
-            }
-        } catch (Exception e) {
-            log.error("Unable to create planet cache directory: " +
-                    ((cacheDir != null) ? cacheDir.getPath() : null), e);
-            return null;
-        }
-        
-        // abort if cache dir is not writable
-        if (!cacheDir.canWrite()) {
-            log.error("Planet cache directory is not writable: " + cacheDir.getPath());
-            return null;
-        }
-        
-        return new DiskFeedInfoCache(cacheDirName);
-    }
-
-
-    // get a feed fetcher
-    private FeedFetcher getRomeFetcher() {
-        
-        FeedFetcherCache feedCache = getRomeFetcherCache();
-        
-        FeedFetcher feedFetcher;
-        if(feedCache != null) {
-            feedFetcher = new HttpURLFeedFetcher(feedCache);
-        } else {
-            feedFetcher = new HttpURLFeedFetcher();
-        }
-        
-        // set options
-        feedFetcher.setUsingDeltaEncoding(false);
-        feedFetcher.setUserAgent("RollerPlanetAggregator");
-        
-        return feedFetcher;
-    }
-    
 }
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.planet.business.updater;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.roller.planet.pojos.Subscription;
+import org.apache.roller.planet.pojos.SubscriptionEntry;
+
+
+/**
+ * The entries inserted, updated and removed when merging freshly fetched
+ * entries into a subscription.
+ *
+ * Fetched entries are matched to existing ones by guid, falling back to
+ * the permalink.  Matching entries are only touched if their
+ * content differs, so a refetched feed with no new items changes nothing.
+ */
+public class EntryChanges {
+
+    /** No changes, for feeds which were not updated. */
+    public static final EntryChanges NONE = new EntryChanges();
+
+    private int inserted = 0;
+    private int updated = 0;
+    private List<SubscriptionEntry> removed = new ArrayList<SubscriptionEntry>();
+
+
+    private EntryChanges() {}
+
+
+    /**
+     * Merge fetched entries into the entries of a subscription.  Matched
+     * entries are updated in place, new ones are added to the subscription
+     * and ones no longer in the feed are taken out of the subscription and
+     * returned by getRemoved() so they can be deleted.
+     *
+     * @param sub     the subscription to update
+     * @param fetched the entries of the fetched feed
+     */
+    public static EntryChanges merge(Subscription sub, Collection<SubscriptionEntry> fetched) {
+
+        EntryChanges changes = new EntryChanges();
+
+        // index existing entries, any duplicates are simply dropped
+        Map<String, SubscriptionEntry> byGuid = new HashMap<String, SubscriptionEntry>();
+        Map<String, SubscriptionEntry> byPermalink = new HashMap<String, SubscriptionEntry>();
+        Set<SubscriptionEntry> unmatched = Collections.newSetFromMap(
+                new IdentityHashMap<SubscriptionEntry, Boolean>());
+        for (SubscriptionEntry entry : sub.getEntries()) {
+            if (entry.getGuid() != null && !byGuid.containsKey(entry.getGuid())) {
+                byGuid.put(entry.getGuid(), entry);
+            }
+            if (entry.getPermalink() != null && !byPermalink.containsKey(entry.getPermalink())) {
+                byPermalink.put(entry.getPermalink(), entry);
+            }
+            unmatched.add(entry);
+        }
+
+        List<SubscriptionEntry> toAdd = new ArrayList<SubscriptionEntry>();
+        for (SubscriptionEntry entry : fetched) {
+            SubscriptionEntry match = null;
+            if (entry.getGuid() != null) {
+                match = byGuid.remove(entry.getGuid());
+            }
+            if (match == null && entry.getPermalink() != null) {
+                match = byPermalink.remove(entry.getPermalink());
+            }
+
+            if (match == null) {
+                toAdd.add(entry);
+                changes.inserted++;
+            } else {
+                // an entry only matches once
+                byGuid.remove(match.getGuid());
+                byPermalink.remove(match.getPermalink());
+                unmatched.remove(match);
+
+                if (!sameContent(match, entry)) {
+                    // entries are hashed by permalink, so take it out of the set
+                    sub.getEntries().remove(match);
+                    copyContent(entry, match);
+                    sub.getEntries().add(match);
+                    changes.updated++;
+                }
+            }
+        }
+
+        for (SubscriptionEntry entry : unmatched) {
+            sub.getEntries().remove(entry);
+            changes.removed.add(entry);
+        }
+        sub.addEntries(toAdd);
+
+        return changes;
+    }
+
+
+    /**
+     * Number of new entries added to the subscription.
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+
+    /**
+     * Number of existing entries whose content changed.
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+
+    /**
+     * Number of existing entries no longer in the feed.
+     */
+    public int getDeleted() {
+        return removed.size();
+    }
+
+
+    /**
+     * Entries no longer in the feed, which need to be deleted.
+     */
+    public List<SubscriptionEntry> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+
+    /**
+     * Total number of entries inserted, updated or deleted.
+     */
+    public int getTotal() {
+        return inserted + updated + removed.size();
+    }
+
+
+    @Override
+    public String toString() {
+        return inserted + " inserted, " + updated + " updated, " + removed.size() + " deleted";
+    }
+
+
+    private static boolean sameContent(SubscriptionEntry a, SubscriptionEntry b) {
+        return StringUtils.equals(a.getTitle(), b.getTitle())
+                && StringUtils.equals(a.getGuid(), b.getGuid())
+                && StringUtils.equals(a.getPermalink(), b.getPermalink())
+                && StringUtils.equals(a.getAuthor(), b.getAuthor())
+                && StringUtils.equals(a.getText(), b.getText())
+                && StringUtils.equals(a.getCategoriesString(), b.getCategoriesString())
+                && sameTime(a.getPubTime(), b.getPubTime())
+                && sameTime(a.getUpdateTime(), b.getUpdateTime());
+    }
+
+
+    // databases may drop the millis of a timestamp, so compare seconds
+    private static boolean sameTime(Timestamp a, Timestamp b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getTime() / 1000 == b.getTime() / 1000;
+    }
+
+
+    private static void copyContent(SubscriptionEntry from, SubscriptionEntry to) {
+        to.setTitle(from.getTitle());
+        to.setGuid(from.getGuid());
+        to.setPermalink(from.getPermalink());
+        to.setAuthor(from.getAuthor());
+        to.setText(from.getText());
+        to.setCategoriesString(from.getCategoriesString());
+        to.setPubTime(from.getPubTime());
+        to.setUpdateTime(from.getUpdateTime());
+    }
+
+}
@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.planet.business.updater;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.planet.business.PlanetManager;
+import org.apache.roller.planet.business.fetcher.FeedFetcher;
+import org.apache.roller.planet.business.fetcher.RomeFeedFetcher;
+import org.apache.roller.planet.pojos.Subscription;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+
+/**
+ * A FeedUpdater which fetches feeds in parallel.
+ *
+ * Feeds are fetched by a pool of threads, with at most threadsPerHost
+ * fetches from any one host at a time.  Fetches taking longer than the
+ * timeout are abandoned.  Fetched feeds are written to the database by the
+ * calling thread alone, which commits after every batchSize subscriptions.
+ */
+public class ParallelFeedUpdater extends SingleThreadedFeedUpdater {
+
+    private static Log log = LogFactory.getLog(ParallelFeedUpdater.class);
+
+    private static final AtomicInteger updaterCount = new AtomicInteger();
+
+    private final int threads;
+    private final int threadsPerHost;
+    private final long timeout;
+    private final int batchSize;
+
+    // fetches running or waiting per host
+    private final ConcurrentMap<String, Semaphore> hostPermits =
+            new ConcurrentHashMap<String, Semaphore>();
+
+    // timings and counts of the last update of a collection of subscriptions
+    private volatile Map<String, Object> lastStats = Collections.emptyMap();
+
+
+    /**
+     * Create an updater configured by the planet.aggregator.updater.*
+     * properties.
+     */
+    public ParallelFeedUpdater() {
+        this(WebloggerConfig.getIntProperty("planet.aggregator.updater.threads", 8),
+             WebloggerConfig.getIntProperty("planet.aggregator.updater.threadsPerHost", 2),
+             WebloggerConfig.getIntProperty("planet.aggregator.updater.timeout", 60) * 1000L,
+             WebloggerConfig.getIntProperty("planet.aggregator.updater.batchSize", 50));
+    }
+
+
+    /**
+     * @param threads        number of threads fetching feeds
+     * @param threadsPerHost max number of feeds fetched from one host at a time
+     * @param timeout        max time in millis to fetch a single feed
+     * @param batchSize      number of updated subscriptions per commit
+     */
+    public ParallelFeedUpdater(int threads, int threadsPerHost, long timeout, int batchSize) {
+        this.threads = Math.max(1, threads);
+        this.threadsPerHost = Math.max(1, threadsPerHost);
+        this.timeout = Math.max(1, timeout);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+
+    /**
+     * Counts and timings of the last update of all subscriptions or of a
+     * group: subscriptions, updated, unchanged, failed, timedOut,
+     * entriesInserted, entriesUpdated, entriesDeleted, batches, fetchMillis
+     * (summed over all fetches), writeMillis and totalMillis.  With the
+     * RomeFeedFetcher also httpRequests, notModified, notModifiedPercent,
+     * unchangedContent, bytesDownloaded, parsed and parseMillis.
+     */
+    public Map<String, Object> getLastStats() {
+        return lastStats;
+    }
+
+
+    @Override
+    protected void updateSubscriptions(Collection<Subscription> subscriptions) {
+
+        long startTime = System.currentTimeMillis();
+
+        // workers only get what they need to fetch, the persistent
+        // subscriptions are only touched by this thread
+        List<FetchTask> tasks = new ArrayList<FetchTask>();
+        for (Subscription sub : subscriptions) {
+            tasks.add(new FetchTask(sub));
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        Stats stats = new Stats();
+        stats.subscriptions = tasks.size();
+        Map<String, Long> fetcherStart = getFetcherStats();
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(threads, tasks.size()), new FetcherThreadFactory());
+        try {
+            CompletionService<FetchTask> completed = new ExecutorCompletionService<FetchTask>(pool);
+            Map<Future<FetchTask>, FetchTask> pending = new HashMap<Future<FetchTask>, FetchTask>();
+            for (FetchTask task : tasks) {
+                pending.put(completed.submit(task), task);
+            }
+
+            // written subscriptions only count once their batch is committed
+            Stats batch = new Stats();
+            int unflushed = 0;
+            while (!pending.isEmpty()) {
+                Future<FetchTask> done;
+                try {
+                    done = completed.poll(Math.min(timeout, 1000), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    log.warn("Interrupted while updating subscriptions");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (done == null) {
+                    cancelTimedOut(pending, stats);
+                    continue;
+                }
+
+                // null if it was cancelled for taking too long
+                FetchTask task = pending.remove(done);
+                if (task == null) {
+                    continue;
+                }
+                stats.fetchMillis += task.fetchMillis;
+
+                if (task.error != null) {
+                    stats.failed++;
+                    logUpdateError(task.feedURL, task.error);
+                } else if (task.result == null) {
+                    stats.unchanged++;
+                } else if (write(task, stats, batch)) {
+                    unflushed++;
+                    if (unflushed >= batchSize) {
+                        flush(stats, batch);
+                        batch = new Stats();
+                        unflushed = 0;
+                    }
+                }
+            }
+            if (unflushed > 0) {
+                flush(stats, batch);
+            }
+
+        } finally {
+            pool.shutdownNow();
+        }
+
+        stats.totalMillis = System.currentTimeMillis() - startTime;
+        stats.fetcherStart = fetcherStart;
+        stats.fetcherEnd = getFetcherStats();
+        lastStats = stats.toMap();
+        log.info("Updated subscriptions: " + lastStats);
+    }
+
+
+    // save a fetched subscription, without committing, counting it in the
+    // stats of the batch
+    private boolean write(FetchTask task, Stats stats, Stats batch) {
+        long start = System.currentTimeMillis();
+        try {
+            // reattach sub, the ones we were given may be detached by now
+            PlanetManager pmgr = WebloggerFactory.getWeblogger().getPlanetManager();
+            Subscription sub = pmgr.getSubscriptionById(task.id);
+            if (sub == null) {
+                log.warn("Subscription went missing while doing update: " + task.feedURL);
+                return false;
+            }
+            EntryChanges changes = applyUpdate(sub, task.result);
+            if (changes == EntryChanges.NONE) {
+                batch.unchanged++;
+            } else {
+                batch.updated++;
+                batch.inserted += changes.getInserted();
+                batch.changed += changes.getUpdated();
+                batch.deleted += changes.getDeleted();
+            }
+            return true;
+        } catch (Exception ex) {
+            stats.failed++;
+            logUpdateError(task.feedURL, ex);
+            return false;
+        } finally {
+            stats.writeMillis += System.currentTimeMillis() - start;
+        }
+    }
+
+
+    // commit a batch of updated subscriptions and start with a fresh session
+    private void flush(Stats stats, Stats batch) {
+        long start = System.currentTimeMillis();
+        try {
+            WebloggerFactory.getWeblogger().flush();
+            stats.batches++;
+            stats.updated += batch.updated;
+            stats.unchanged += batch.unchanged;
+            stats.inserted += batch.inserted;
+            stats.changed += batch.changed;
+            stats.deleted += batch.deleted;
+        } catch (Exception ex) {
+            // nothing of the batch was saved
+            stats.failed += batch.updated + batch.unchanged;
+            log.error("Error committing updated subscriptions", ex);
+        } finally {
+            WebloggerFactory.getWeblogger().release();
+            stats.writeMillis += System.currentTimeMillis() - start;
+        }
+    }
+
+
+    // give up on fetches running for longer than the timeout
+    private void cancelTimedOut(Map<Future<FetchTask>, FetchTask> pending, Stats stats) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Future<FetchTask>, FetchTask>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Future<FetchTask>, FetchTask> entry = it.next();
+            long started = entry.getValue().started.get();
+            if (started > 0 && now - started > timeout) {
+                entry.getKey().cancel(true);
+                it.remove();
+                stats.timedOut++;
+                stats.fetchMillis += now - started;
+                log.warn("Timed out fetching subscription - " + entry.getValue().feedURL);
+            }
+        }
+    }
+
+
+    // counters of the feed fetcher, if it keeps any
+    private Map<String, Long> getFetcherStats() {
+        FeedFetcher fetcher = WebloggerFactory.getWeblogger().getFeedFetcher();
+        if (fetcher instanceof RomeFeedFetcher) {
+            return ((RomeFeedFetcher) fetcher).getStats();
+        }
+        return null;
+    }
+
+
+    private Semaphore getHostPermits(String feedURL) {
+        String host;
+        try {
+            host = new URL(feedURL).getHost().toLowerCase();
+        } catch (MalformedURLException ex) {
+            // e.g. local weblogger: feeds
+            host = "";
+        }
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(threadsPerHost);
+            permits = hostPermits.putIfAbsent(host, newPermits);
+            if (permits == null) {
+                permits = newPermits;
+            }
+        }
+        return permits;
+    }
+
+
+    /**
+     * Fetches one subscription on a pool thread.
+     */
+    private class FetchTask implements Callable<FetchTask> {
+
+        private final String id;
+        private final String feedURL;
+        
+        // transient copy of what the fetcher needs from the subscription
+        private final Subscription request = new Subscription();
+
+        // set once the fetch has started, 0 while waiting for the host
+        private final AtomicLong started = new AtomicLong();
+
+        private Subscription result = null;
+        private Exception error = null;
+        private long fetchMillis = 0;
+
+        FetchTask(Subscription sub) {
+            this.id = sub.getId();
+            this.feedURL = sub.getFeedURL();
+            request.setFeedURL(sub.getFeedURL());
+            request.setLastUpdated(sub.getLastUpdated());
+            request.setEtag(sub.getEtag());
+            request.setLastModified(sub.getLastModified());
+            request.setContentHash(sub.getContentHash());
+        }
+
+        public FetchTask call() throws InterruptedException {
+            Semaphore permits = getHostPermits(feedURL);
+            permits.acquire();
+            try {
+                long start = System.currentTimeMillis();
+                started.set(start);
+                try {
+                    result = fetchSubscription(request);
+                } catch (Exception ex) {
+                    error = ex;
+                }
+                fetchMillis = System.currentTimeMillis() - start;
+            } finally {
+                permits.release();
+
+                // local feeds are read from the database on this thread
+                WebloggerFactory.getWeblogger().release();
+            }
+            return this;
+        }
+    }
+
+
+    private static class FetcherThreadFactory implements ThreadFactory {
+
+        private final String name = "Roller Planet Feed Fetcher " + updaterCount.incrementAndGet();
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+
+    // only touched by the writing thread
+    private static class Stats {
+
+        private int subscriptions = 0;
+        private int updated = 0;
+        private int unchanged = 0;
+        private int failed = 0;
+        private int timedOut = 0;
+        private int inserted = 0;
+        private int changed = 0;
+        private int deleted = 0;
+        private int batches = 0;
+        private long fetchMillis = 0;
+        private long writeMillis = 0;
+        private long totalMillis = 0;
+        private Map<String, Long> fetcherStart = null;
+        private Map<String, Long> fetcherEnd = null;
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("subscriptions", subscriptions);
+            map.put("updated", updated);
+            map.put("unchanged", unchanged);
+            map.put("failed", failed);
+            map.put("timedOut", timedOut);
+            map.put("entriesInserted", inserted);
+            map.put("entriesUpdated", changed);
+            map.put("entriesDeleted", deleted);
+            map.put("batches", batches);
+            map.put("fetchMillis", fetchMillis);
+            map.put("writeMillis", writeMillis);
+            map.put("totalMillis", totalMillis);
+            if (fetcherStart != null && fetcherEnd != null) {
+                long requests = fetcherDelta("requests");
+                long notModified = fetcherDelta("notModified");
+                map.put("httpRequests", requests);
+                map.put("notModified", notModified);
+                map.put("notModifiedPercent", requests > 0 ? notModified * 100 / requests : 0L);
+                map.put("unchangedContent", fetcherDelta("unchanged"));
+                map.put("bytesDownloaded", fetcherDelta("bytes"));
+                map.put("parsed", fetcherDelta("parsed"));
+                map.put("parseMillis", fetcherDelta("parseMillis"));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        private long fetcherDelta(String name) {
+            return fetcherEnd.get(name) - fetcherStart.get(name);
+        }
+    }
+
+}
@@ -60,29 +60,79 @@ public class SingleThreadedFeedUpdater implements FeedUpdater {
         
         long subStartTime = System.currentTimeMillis();
         
+        Subscription updatedSub = fetchSubscription(sub);
+        
+        EntryChanges changes = applyUpdate(sub, updatedSub);
+        
+        if (updatedSub != null) {
+            try {
+                WebloggerFactory.getWeblogger().flush();
+            } catch(RollerException ex) {
+                throw new UpdaterException("Error persisting updated subscription", ex);
+            }
+        }
+        
+        long subEndTime = System.currentTimeMillis();
+        log.debug("updated feed -- "+sub.getFeedURL()+" -- in " +
+                ((subEndTime-subStartTime) / RollerConstants.SEC_IN_MS) + " seconds.  " + changes);
+    }
+    
+    
+    /**
+     * Fetch the latest version of a subscription, conditionally on what was
+     * saved from its last fetch.
+     *
+     * @param sub the subscription, persistent or a transient copy
+     * @return the fetched subscription, or null if it hasn't changed
+     */
+    protected Subscription fetchSubscription(Subscription sub)
+            throws UpdaterException {
+        
         Subscription updatedSub;
         try {
             // fetch the latest version of the subscription
             log.debug("Getting fetcher");
             FeedFetcher fetcher = WebloggerFactory.getWeblogger().getFeedFetcher();
             log.debug("Using fetcher class: " + fetcher.getClass().getName());
-            updatedSub = fetcher.fetchSubscription(sub.getFeedURL(), sub.getLastUpdated());
+            updatedSub = fetcher.fetchSubscription(sub);
             
         } catch (FetcherException ex) {
             throw new UpdaterException("Error fetching updated subscription", ex);
         }
         
         log.debug("Got updatedSub = " + updatedSub);
-
+        
+        return updatedSub;
+    }
+    
+    
+    /**
+     * Update a subscription with the data of its fetched version.  Only new,
+     * changed and removed entries are written, and changes are saved but
+     * not flushed.
+     *
+     * @param sub        the persistent subscription
+     * @param updatedSub the fetched subscription, or null if it hasn't changed
+     * @return the entries inserted, updated and deleted
+     */
+    protected EntryChanges applyUpdate(Subscription sub, Subscription updatedSub)
+            throws UpdaterException {
+        
         // if sub was unchanged then we are done
         if (updatedSub == null) {
-            return;
+            return EntryChanges.NONE;
         }
         
+        // keep validators for the next conditional fetch
+        sub.setEtag(updatedSub.getEtag());
+        sub.setLastModified(updatedSub.getLastModified());
+        sub.setContentHash(updatedSub.getContentHash());
+        
         // if this subscription hasn't changed since last update then we're done
         if (sub.getLastUpdated() != null && updatedSub.getLastUpdated() != null &&
                 !updatedSub.getLastUpdated().after(sub.getLastUpdated())) {
             log.debug("Skipping update, feed hasn't changed - "+sub.getFeedURL());
+            return EntryChanges.NONE;
         }
         
         // update subscription attributes
@@ -91,37 +141,32 @@ public class SingleThreadedFeedUpdater implements FeedUpdater {
         sub.setAuthor(updatedSub.getAuthor());
         sub.setLastUpdated(updatedSub.getLastUpdated());
         
-        // update subscription entries
-        int entries = 0;
+        // update subscription entries, keeping the old ones if the feed is empty
+        EntryChanges changes = EntryChanges.NONE;
         Set<SubscriptionEntry> newEntries = updatedSub.getEntries();
         log.debug("newEntries.size() = " + newEntries.size());
         if (newEntries.size() > 0) {
             try {
                 PlanetManager pmgr = WebloggerFactory.getWeblogger().getPlanetManager();
-
-                // clear out old entries
-                pmgr.deleteEntries(sub);
-
-                // add fresh entries
-                sub.getEntries().clear();
-                sub.addEntries(newEntries);
-
-                // save and flush
+                
+                changes = EntryChanges.merge(sub, newEntries);
+                
+                // remove entries no longer in the feed
+                for (SubscriptionEntry entry : changes.getRemoved()) {
+                    pmgr.deleteEntry(entry);
+                }
+                
+                // save
                 pmgr.saveSubscription(sub);
-                WebloggerFactory.getWeblogger().flush();
-
-                log.debug("Added entries");
-                entries += newEntries.size();
-
+                
+                log.debug("Merged entries: " + changes);
+                
             } catch(RollerException ex) {
                 throw new UpdaterException("Error persisting updated subscription", ex);
             }
         }
         
-        long subEndTime = System.currentTimeMillis();
-        log.debug("updated feed -- "+sub.getFeedURL()+" -- in " +
-                ((subEndTime-subStartTime) / RollerConstants.SEC_IN_MS) + " seconds.  " + entries +
-                " entries updated.");
+        return changes;
     }
     
     
@@ -174,7 +219,7 @@ public class SingleThreadedFeedUpdater implements FeedUpdater {
     
     
     // convenience method which handles updating any arbitrary collection of subs
-    private void updateSubscriptions(Collection<Subscription> subscriptions) {
+    protected void updateSubscriptions(Collection<Subscription> subscriptions) {
         
         PlanetManager pmgr = WebloggerFactory.getWeblogger().getPlanetManager();
 		for (Subscription sub : subscriptions) {
@@ -188,37 +233,45 @@ public class SingleThreadedFeedUpdater implements FeedUpdater {
 			// this updates and saves
 			try {
 				updateSubscription(sub);
-			} catch(UpdaterException ex) {
-				// do a little work to get at the source of the problem
-				Throwable cause = ex;
-				if(ex.getRootCause() != null) {
-					cause = ex.getRootCause();
-				}
-				if(cause.getCause() != null) {
-					cause = cause.getCause();
-				}
-				
-				if (log.isDebugEnabled()) {
-					log.debug("Error updating subscription - "+sub.getFeedURL(), cause);
-				} else {
-					log.warn("Error updating subscription - "+sub.getFeedURL()
-						+ " turn on debug logging for more info");
-				}
-				
 			} catch(Exception ex) {
-				if (log.isDebugEnabled()) {
-					log.warn("Error updating subscription - "+sub.getFeedURL(), ex);
-				} else {
-					log.warn("Error updating subscription - "+sub.getFeedURL()
-						+ " turn on debug logging for more info");
-				}
+				logUpdateError(sub.getFeedURL(), ex);
 			}
 		}
     }
     
     
+    // log an error updating a subscription
+    protected void logUpdateError(String feedURL, Exception ex) {
+        if (ex instanceof UpdaterException) {
+            // do a little work to get at the source of the problem
+            Throwable cause = ex;
+            if(((UpdaterException) ex).getRootCause() != null) {
+                cause = ((UpdaterException) ex).getRootCause();
+            }
+            if(cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            
+            if (log.isDebugEnabled()) {
+                log.debug("Error updating subscription - "+feedURL, cause);
+            } else {
+                log.warn("Error updating subscription - "+feedURL
+                        + " turn on debug logging for more info");
+            }
+            
+        } else {
+            if (log.isDebugEnabled()) {
+                log.warn("Error updating subscription - "+feedURL, ex);
+            } else {
+                log.warn("Error updating subscription - "+feedURL
+                        + " turn on debug logging for more info");
+            }
+        }
+    }
+    
+    
     // upate proxy settings for jvm based on planet configuration
-    private void updateProxySettings() {
+    protected void updateProxySettings() {
         String proxyHost = WebloggerRuntimeConfig.getProperty("planet.site.proxyhost");
         int proxyPort = WebloggerRuntimeConfig.getIntProperty("planet.site.proxyport");
         if (proxyHost != null && proxyPort > 0) {
@@ -39,6 +39,11 @@ public class Subscription implements Serializable, Comparable<Subscription> {
     private int inboundlinks = 0;
     private int inboundblogs = 0;
 
+    // validators from the last fetch, for conditional fetching
+    private String etag;
+    private String lastModified;
+    private String contentHash;
+
     // associations
     private Set<PlanetGroup> groups = new HashSet<PlanetGroup>();
     private Set<SubscriptionEntry> entries = new HashSet<SubscriptionEntry>();
@@ -162,6 +167,42 @@ public class Subscription implements Serializable, Comparable<Subscription> {
     }
 
 
+    /**
+     * ETag header of the feed when it was last fetched.
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+
+    /**
+     * Last-Modified header of the feed when it was last fetched.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+
+    /**
+     * Hash of the feed content when it was last fetched.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+
     public Set<PlanetGroup> getGroups() {
         return groups;
     }
@@ -18,9 +18,11 @@
 
 package org.apache.roller.weblogger.business;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -38,6 +40,12 @@ import org.apache.roller.weblogger.pojos.Weblog;
  * We also start up a single thread which runs continously to take the queued
  * hit counts, tally them, and record them into the db.
  *
+ * Hits are tallied as they come in, with one counter per weblog in a
+ * concurrent map which is swapped for an empty one each time the hits are
+ * drained.  Counting a hit for a weblog which already has a counter allocates
+ * nothing and takes no lock.  The number of weblogs counted between drains is
+ * capped by hitcount.queue.maxWeblogs, hits for further weblogs are dropped.
+ *
  * TODO: we may want to make this an interface that is pluggable if there is
  *   some indication that users want to override this implementation.
  */
@@ -48,7 +56,15 @@ public final class HitCountQueue {
     private static HitCountQueue instance = null;
     
     private WorkerThread worker = null;
-    private List<String> queue = null;
+    
+    // hit counters by weblog handle, replaced each time hits are drained
+    private volatile ConcurrentMap<String, AtomicLong> hits = null;
+    
+    // max number of weblogs counted between drains
+    private int maxWeblogs = 10000;
+    
+    // hits dropped since the last drain because maxWeblogs was reached
+    private final AtomicLong droppedHits = new AtomicLong();
     
     
     static {
@@ -68,8 +84,11 @@ public final class HitCountQueue {
             log.warn("Invalid sleep time ["+sleep+"], using default");
         }
         
-        // create the hits queue
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
+        this.maxWeblogs = WebloggerConfig.getIntProperty(
+                "hitcount.queue.maxWeblogs", maxWeblogs);
+        
+        // create the hit counters
+        this.hits = newCounters();
         
         // start up a worker to process the hits at intervals
         HitCountProcessingJob job = new HitCountProcessingJob();
@@ -85,16 +104,54 @@ public final class HitCountQueue {
     
     public void processHit(Weblog weblog) {
         
-        // if the weblog isn't null then just drop its handle in the queue
-        // each entry in the queue is a weblog handle and indicates a single hit
+        // if the weblog isn't null then count a hit against its handle
         if(weblog != null) {
-            this.queue.add(weblog.getHandle());
+            ConcurrentMap<String, AtomicLong> counters = this.hits;
+            
+            AtomicLong count = counters.get(weblog.getHandle());
+            if(count == null) {
+                // first hit for this weblog since the last drain
+                if(counters.size() >= maxWeblogs) {
+                    droppedHits.incrementAndGet();
+                    return;
+                }
+                AtomicLong newCount = new AtomicLong();
+                count = counters.putIfAbsent(weblog.getHandle(), newCount);
+                if(count == null) {
+                    count = newCount;
+                }
+            }
+            count.incrementAndGet();
         }
     }
     
     
-    public List<String> getHits() {
-        return new ArrayList<String>(this.queue);
+    /**
+     * Take the hits counted so far, tallied by weblog handle, and start
+     * counting from zero again.
+     *
+     * A hit being counted at the very moment the counters are swapped may
+     * be missed, hit counts are approximate anyway.
+     */
+    public Map<String, Long> drainHits() {
+        
+        ConcurrentMap<String, AtomicLong> counters;
+        synchronized(this) {
+            counters = this.hits;
+            this.hits = newCounters();
+        }
+        
+        long dropped = droppedHits.getAndSet(0);
+        if(dropped > 0) {
+            log.warn("Dropped "+dropped+" hits, more than "+maxWeblogs+
+                    " weblogs were hit since the last update");
+        }
+        
+        Map<String, Long> tally = new HashMap<String, Long>(counters.size() * 2);
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            tally.put(entry.getKey(), entry.getValue().get());
+        }
+        return tally;
     }
     
     
@@ -102,7 +159,14 @@ public final class HitCountQueue {
      * Reset the queued hits.
      */
     public synchronized void resetHits() {
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
+        this.hits = newCounters();
+        this.droppedHits.set(0);
+    }
+    
+    
+    private ConcurrentMap<String, AtomicLong> newCounters() {
+        return new ConcurrentHashMap<String, AtomicLong>(
+                16, 0.75f, Runtime.getRuntime().availableProcessors());
     }
     
     
@@ -70,6 +70,18 @@ public interface WeblogEntryManager {
     List<WeblogEntry> getWeblogEntries(WeblogEntrySearchCriteria wesc)
             throws WebloggerException;
 
+    /**
+     * Get a chunk of published entries ordered by id, for walking through
+     * every entry of a weblog or of the whole site a chunk at a time.
+     * @param weblog Weblog to restrict to, or null for all visible weblogs
+     * @param afterId Only entries with an id after this one, or null to start
+     * @param max Maximum number of entries to return
+     * @return List of WeblogEntry objects in ascending id order
+     * @throws WebloggerException
+     */
+    List<WeblogEntry> getPublishedWeblogEntriesAfter(Weblog weblog,
+            String afterId, int max) throws WebloggerException;
+
     /**
      * Get Weblog Entries grouped by day.
      * @param wesc WeblogEntrySearchCriteria object listing desired search parameters
@@ -89,6 +101,37 @@ public interface WeblogEntryManager {
      */
     Map<Date, String> getWeblogEntryStringMap(WeblogEntrySearchCriteria wesc)
             throws WebloggerException;
+
+    /**
+     * Get the number of Weblog Entries on each calendar day, without loading
+     * the entries themselves.  Offset and max results of the criteria
+     * select the same range of entries as getWeblogEntries() does.
+     * @param wesc WeblogEntrySearchCriteria object listing desired search parameters
+     * @return Map of entry counts keyed by Date, latest day first
+     * @throws WebloggerException
+     */
+    Map<Date, Integer> getWeblogEntryCountMap(WeblogEntrySearchCriteria wesc)
+            throws WebloggerException;
+
+    /**
+     * Get the publication time of the earliest Weblog Entry matching the
+     * criteria, without loading the entry.
+     * @param wesc WeblogEntrySearchCriteria object listing desired search parameters
+     * @return Earliest publication time, or null if no entries match
+     * @throws WebloggerException
+     */
+    Date getEarliestPubTime(WeblogEntrySearchCriteria wesc)
+            throws WebloggerException;
+
+    /**
+     * Get the publication time of the latest Weblog Entry matching the
+     * criteria, without loading the entry.
+     * @param wesc WeblogEntrySearchCriteria object listing desired search parameters
+     * @return Latest publication time, or null if no entries match
+     * @throws WebloggerException
+     */
+    Date getLatestPubTime(WeblogEntrySearchCriteria wesc)
+            throws WebloggerException;
     
     /**
      * Get weblog entries ordered by descending number of comments.
@@ -380,6 +423,20 @@ public interface WeblogEntryManager {
         throws WebloggerException;
     
     
+    /**
+     * Increment the hit counts of many weblogs at once.
+     *
+     * Existing counts are updated in bulk, without loading them, and counts
+     * are created for weblogs which don't have one yet.  Unknown handles are
+     * ignored.
+     *
+     * @param hitsByHandle How much to increment by, keyed by weblog handle.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void incrementHitCounts(Map<String, Long> hitsByHandle)
+        throws WebloggerException;
+    
+    
     /**
      * Reset the hit counts for all weblogs.  This sets the counts back to 0.
      *
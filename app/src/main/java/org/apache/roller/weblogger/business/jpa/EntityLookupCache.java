@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the lookups done on almost every request, i.e. weblogs by
+ * handle, users by user name and the weblog permissions of a user.
+ *
+ * Only ids are cached, the managers then load entities by id, which is
+ * answered by the persistence context or the shared JPA cache without a
+ * query.  A loaded entity which no longer matches its key means the
+ * mapping is old, and callers should drop it and query again.
+ *
+ * That a user has no permission in a weblog isn't cached, a new permission
+ * would stay unseen until the mapping times out, on other machines of a
+ * cluster too.  Repeated checks of a missing permission are answered by the
+ * permission decision cache instead.  Mappings of changed permissions are
+ * dropped once the change commits, queued per thread with
+ * removePermissionOnCommit() like in the permission decision cache, and
+ * until then the thread making the change doesn't use them.
+ */
+public final class EntityLookupCache implements CacheHandler {
+
+    private static Log log = LogFactory.getLog(EntityLookupCache.class);
+
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.lookup";
+
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+
+    // permission mappings changed by the transaction of each thread, not
+    // yet committed
+    private final ThreadLocal<Set<String>> pending = new ThreadLocal<Set<String>>();
+
+    // reference to our singleton instance
+    private static EntityLookupCache singletonInstance = new EntityLookupCache();
+
+
+    private EntityLookupCache() {
+
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+
+        Map<String, String> cacheProps = new HashMap<String, String>();
+        cacheProps.put("id", CACHE_ID);
+        Enumeration allProps = WebloggerConfig.keys();
+        String prop = null;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+
+        log.info(cacheProps);
+
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+
+
+    public static EntityLookupCache getInstance() {
+        return singletonInstance;
+    }
+
+
+    /**
+     * @return id of the weblog with the handle, or null if not cached
+     */
+    public String getWeblogId(String handle) {
+        return get(weblogKey(handle));
+    }
+
+
+    public void putWeblog(Weblog weblog) {
+        put(weblogKey(weblog.getHandle()), weblog.getId());
+    }
+
+
+    public void removeWeblog(String handle) {
+        remove(weblogKey(handle));
+    }
+
+
+    /**
+     * @return id of the user with the user name, or null if not cached
+     */
+    public String getUserId(String userName) {
+        return get(userKey(userName));
+    }
+
+
+    public void putUser(User user) {
+        put(userKey(user.getUserName()), user.getId());
+    }
+
+
+    public void removeUser(String userName) {
+        remove(userKey(userName));
+    }
+
+
+    /**
+     * @return id of the permission of a user in a weblog, or null if not cached
+     */
+    public String getPermissionId(String userName, String handle) {
+        String key = permissionKey(userName, handle);
+        if (isPending(key)) {
+            return null;
+        }
+        return get(key);
+    }
+
+
+    public void putPermission(WeblogPermission perm) {
+        String key = permissionKey(perm.getUserName(), perm.getObjectId());
+        if (isPending(key)) {
+            return;
+        }
+        put(key, perm.getId());
+    }
+
+
+    public void removePermission(String userName, String handle) {
+        remove(permissionKey(userName, handle));
+    }
+
+
+    /**
+     * Drop the permission mapping of a user in a weblog once the transaction
+     * of the current thread commits, after changing the permission.
+     */
+    public void removePermissionOnCommit(String userName, String handle) {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        Set<String> changed = pending.get();
+        if (changed == null) {
+            changed = new HashSet<String>();
+            pending.set(changed);
+        }
+        changed.add(permissionKey(userName, handle));
+    }
+
+
+    /**
+     * The transaction of the current thread committed, drop the permission
+     * mappings it changed.
+     */
+    public void committed() {
+
+        Set<String> changed = pending.get();
+        if (changed != null) {
+            pending.remove();
+            for (String key : changed) {
+                remove(key);
+            }
+        }
+    }
+
+
+    /**
+     * The transaction of the current thread rolled back, nothing changed.
+     */
+    public void rolledBack() {
+        pending.remove();
+    }
+
+
+    private boolean isPending(String key) {
+        Set<String> changed = pending.get();
+        return changed != null && changed.contains(key);
+    }
+
+
+    public void clear() {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.clear();
+    }
+
+
+    private String get(String key) {
+
+        if (!cacheEnabled) {
+            return null;
+        }
+
+        String id = (String) contentCache.get(key);
+        if (log.isDebugEnabled()) {
+            log.debug((id != null ? "HIT " : "MISS ")+key);
+        }
+        return id;
+    }
+
+
+    private void put(String key, String id) {
+
+        if (!cacheEnabled || id == null) {
+            return;
+        }
+
+        contentCache.put(key, id);
+        log.debug("PUT "+key);
+    }
+
+
+    private void remove(String key) {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.remove(key);
+        log.debug("REMOVE "+key);
+    }
+
+
+    private static String weblogKey(String handle) {
+        return "weblog:" + handle;
+    }
+
+
+    private static String userKey(String userName) {
+        return "user:" + userName;
+    }
+
+
+    private static String permissionKey(String userName, String handle) {
+        return "perm:" + userName + ":" + handle;
+    }
+
+
+    /**
+     * A weblog has changed, possibly removed.
+     */
+    public void invalidate(Weblog website) {
+        removeWeblog(website.getHandle());
+    }
+
+
+    /**
+     * A user has changed, possibly removed.
+     */
+    public void invalidate(User user) {
+        removeUser(user.getUserName());
+    }
+
+
+    public void invalidate(WeblogEntry entry) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogBookmark bookmark) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogBookmarkFolder folder) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogEntryComment comment) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogCategory category) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogTemplate template) {
+        // ignored
+    }
+
+}
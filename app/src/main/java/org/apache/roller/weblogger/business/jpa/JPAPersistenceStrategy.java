@@ -25,6 +25,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityManager;
 import javax.persistence.FlushModeType;
@@ -136,6 +137,10 @@ public class JPAPersistenceStrategy {
         } catch (PersistenceException pe) {
             throw new WebloggerException(pe);
         }
+        // permission and runtime config changes only count once committed
+        EntityLookupCache.getInstance().committed();
+        PermissionDecisionCache.getInstance().committed();
+        WebloggerRuntimeConfig.committed();
     }
     
     /**
@@ -148,6 +153,9 @@ public class JPAPersistenceStrategy {
         }
         em.close();
         setThreadLocalEntityManager(null);
+        EntityLookupCache.getInstance().rolledBack();
+        PermissionDecisionCache.getInstance().rolledBack();
+        WebloggerRuntimeConfig.rolledBack();
     }
     
     /**
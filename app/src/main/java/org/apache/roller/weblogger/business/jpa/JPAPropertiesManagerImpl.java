@@ -18,6 +18,8 @@
  */
 package org.apache.roller.weblogger.business.jpa;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -76,6 +78,7 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
             // initialize them and save them to that table.
             initializeMissingProps(props);
             this.saveProperties(props);
+            WebloggerRuntimeConfig.setProperties(props.values());
 
         } catch (Exception e) {
             log.fatal("Failed to initialize runtime configuration properties."+
@@ -126,6 +129,7 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
     public void saveProperty(RuntimeConfigProperty property) 
             throws WebloggerException {
         this.strategy.store(property);
+        WebloggerRuntimeConfig.updatePropertiesOnCommit(Collections.singletonList(property));
     }
 
 
@@ -135,9 +139,12 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
     public void saveProperties(Map properties) throws WebloggerException {
 
         // just go through the list and saveProperties each property
+        List<RuntimeConfigProperty> saved = new ArrayList<RuntimeConfigProperty>();
         for (Object prop : properties.values()) {
             this.strategy.store(prop);
+            saved.add((RuntimeConfigProperty) prop);
         }
+        WebloggerRuntimeConfig.updatePropertiesOnCommit(saved);
     }
     
 
@@ -28,7 +28,6 @@ import org.apache.roller.weblogger.business.UserManager;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -48,8 +47,11 @@ public class JPAUserManagerImpl implements UserManager {
 
     private final JPAPersistenceStrategy strategy;
     
-    // cached mapping of userNames -> userIds
-    private Map<String, String> userNameToIdMap = new HashMap<String, String>();
+    // cached mapping of userNames -> userIds, and of weblog permissions
+    private final EntityLookupCache lookupCache = EntityLookupCache.getInstance();
+    
+    // cached outcome of permission checks
+    private final PermissionDecisionCache decisionCache = PermissionDecisionCache.getInstance();
     
 
     @com.google.inject.Inject
@@ -76,11 +78,13 @@ public class JPAUserManagerImpl implements UserManager {
         List<WeblogPermission> perms = getWeblogPermissions(user);
         for (WeblogPermission perm : perms) {
             this.strategy.remove(perm);
+            this.lookupCache.removePermissionOnCommit(userName, perm.getObjectId());
         }
         this.strategy.remove(user);
 
         // remove entry from cache mapping
-        this.userNameToIdMap.remove(userName);
+        this.lookupCache.removeUser(userName);
+        this.decisionCache.removeOnCommit(userName);
     }
 
     
@@ -156,19 +160,20 @@ public class JPAUserManagerImpl implements UserManager {
         
         // check cache first
         // NOTE: if we ever allow changing usernames then this needs updating
-        if(this.userNameToIdMap.containsKey(userName)) {
+        String userId = this.lookupCache.getUserId(userName);
+        if (userId != null) {
 
-            User user = this.getUser(
-                    this.userNameToIdMap.get(userName));
-            if (user != null) {
+            User user = this.getUser(userId);
+            if (user != null && userName.equals(user.getUserName())) {
                 // only return the user if the enabled status matches
+                log.debug("userNameToIdMap CACHE HIT - "+userName);
                 if(enabled == null || enabled.equals(user.getEnabled())) {
-                    log.debug("userNameToIdMap CACHE HIT - "+userName);
                     return user;
                 }
+                return null;
             } else {
                 // mapping hit with lookup miss?  mapping must be old, remove it
-                this.userNameToIdMap.remove(userName);
+                this.lookupCache.removeUser(userName);
             }
         }
 
@@ -197,7 +202,7 @@ public class JPAUserManagerImpl implements UserManager {
         // add mapping to cache
         if(user != null) {
             log.debug("userNameToIdMap CACHE MISS - " + userName);
-            this.userNameToIdMap.put(user.getUserName(), user.getId());
+            this.lookupCache.putUser(user);
         }
 
         return user;
@@ -340,6 +345,22 @@ public class JPAUserManagerImpl implements UserManager {
  
     public boolean checkPermission(RollerPermission perm, User user) throws WebloggerException {
 
+        // check cache first, the key is taken before checking so that the
+        // decision is dropped by any change committed meanwhile
+        String key = this.decisionCache.getKey(perm, user);
+        Boolean decision = this.decisionCache.get(key);
+        if (decision != null) {
+            return decision;
+        }
+
+        decision = checkPermissionUncached(perm, user);
+        this.decisionCache.put(key, decision);
+        return decision;
+    }
+
+
+    private boolean checkPermissionUncached(RollerPermission perm, User user) throws WebloggerException {
+
         // if permission a weblog permission
         if (perm instanceof WeblogPermission) {
             // if user has specified permission in weblog return true
@@ -367,15 +388,32 @@ public class JPAUserManagerImpl implements UserManager {
 
     
     public WeblogPermission getWeblogPermission(Weblog weblog, User user) throws WebloggerException {
+
+        // check cache first
+        String permId = this.lookupCache.getPermissionId(user.getUserName(), weblog.getHandle());
+        if (permId != null) {
+            WeblogPermission perm = (WeblogPermission) this.strategy.load(WeblogPermission.class, permId);
+            if (perm != null && !perm.isPending()
+                    && user.getUserName().equals(perm.getUserName())
+                    && weblog.getHandle().equals(perm.getObjectId())) {
+                return perm;
+            }
+            // mapping must be old, remove it
+            this.lookupCache.removePermission(user.getUserName(), weblog.getHandle());
+        }
+
         TypedQuery<WeblogPermission> q = strategy.getNamedQuery("WeblogPermission.getByUserName&WeblogId"
                 , WeblogPermission.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, weblog.getHandle());
+        WeblogPermission perm;
         try {
-            return q.getSingleResult();
+            perm = q.getSingleResult();
         } catch (NoResultException ignored) {
             return null;
         }
+        this.lookupCache.putPermission(perm);
+        return perm;
     }
 
     public WeblogPermission getWeblogPermissionIncludingPending(Weblog weblog, User user) throws WebloggerException {
@@ -397,6 +435,8 @@ public class JPAUserManagerImpl implements UserManager {
                 WeblogPermission.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, weblog.getHandle());
+        this.lookupCache.removePermissionOnCommit(user.getUserName(), weblog.getHandle());
+        this.decisionCache.removeOnCommit(user.getUserName());
         WeblogPermission existingPerm = null;
         try {
             existingPerm = q.getSingleResult();
@@ -421,6 +461,8 @@ public class JPAUserManagerImpl implements UserManager {
                 WeblogPermission.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, weblog.getHandle());
+        this.lookupCache.removePermissionOnCommit(user.getUserName(), weblog.getHandle());
+        this.decisionCache.removeOnCommit(user.getUserName());
         WeblogPermission existingPerm = null;
         try {
             existingPerm = q.getSingleResult();
@@ -446,6 +488,8 @@ public class JPAUserManagerImpl implements UserManager {
                 WeblogPermission.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, weblog.getHandle());
+        this.lookupCache.removePermissionOnCommit(user.getUserName(), weblog.getHandle());
+        this.decisionCache.removeOnCommit(user.getUserName());
         WeblogPermission existingPerm;
         try {
             existingPerm = q.getSingleResult();
@@ -466,6 +510,8 @@ public class JPAUserManagerImpl implements UserManager {
                 WeblogPermission.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, weblog.getHandle());
+        this.lookupCache.removePermissionOnCommit(user.getUserName(), weblog.getHandle());
+        this.decisionCache.removeOnCommit(user.getUserName());
         WeblogPermission existingPerm;
         try {
             existingPerm = q.getSingleResult();
@@ -484,6 +530,8 @@ public class JPAUserManagerImpl implements UserManager {
                 WeblogPermission.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, weblog.getHandle());
+        this.lookupCache.removePermissionOnCommit(user.getUserName(), weblog.getHandle());
+        this.decisionCache.removeOnCommit(user.getUserName());
         WeblogPermission oldperm;
         try {
             oldperm = q.getSingleResult();
@@ -578,6 +626,7 @@ public class JPAUserManagerImpl implements UserManager {
      * Grant to user role specified by role name.
      */
     public void grantRole(String roleName, User user) throws WebloggerException {
+        this.decisionCache.removeOnCommit(user.getUserName());
         if (!hasRole(roleName, user)) {
             UserRole role = new UserRole(user.getUserName(), roleName);
             this.strategy.store(role);
@@ -586,6 +635,7 @@ public class JPAUserManagerImpl implements UserManager {
 
     
     public void revokeRole(String roleName, User user) throws WebloggerException {
+        this.decisionCache.removeOnCommit(user.getUserName());
         TypedQuery<UserRole> q = strategy.getNamedQuery("UserRole.getByUserNameAndRole", UserRole.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, roleName);
@@ -32,6 +32,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.plugins.TransformedTextCache;
 import org.apache.roller.weblogger.pojos.CommentSearchCriteria;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
@@ -51,6 +52,7 @@ import org.apache.roller.weblogger.pojos.WeblogEntryAttribute;
 import org.apache.roller.weblogger.pojos.StatCountCountComparator;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.planet.business.LocalSubscriptionSync;
 
 
 /**
@@ -67,6 +69,9 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     private final Weblogger roller;
     private final JPAPersistenceStrategy strategy;
     
+    // keeps planet subscriptions of local weblogs up to date
+    private final LocalSubscriptionSync planetSync;
+    
     // cached mapping of entryAnchors -> entryIds
     private Map<String, String> entryAnchorToIdMap = new HashMap<String, String>();
     
@@ -78,12 +83,17 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     private static final Comparator<StatCount> STAT_COUNT_COUNT_REVERSE_COMPARATOR =
             Collections.reverseOrder(StatCountCountComparator.getInstance());
     
+    // max number of values bound to a single IN clause
+    private static final int MAX_IN_LIST = 500;
+    
     
     @com.google.inject.Inject
-    protected JPAWeblogEntryManagerImpl(Weblogger roller, JPAPersistenceStrategy strategy) {
+    protected JPAWeblogEntryManagerImpl(Weblogger roller, JPAPersistenceStrategy strategy,
+            LocalSubscriptionSync planetSync) {
         LOG.debug("Instantiating JPA Weblog Manager");
         this.roller = roller;
         this.strategy = strategy;
+        this.planetSync = planetSync;
     }
     
     /**
@@ -215,11 +225,19 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         
         this.strategy.store(entry);
         
+        // drop text rendered from the previous version
+        TransformedTextCache.getInstance().remove(entry);
+        
         // update weblog last modified date.  date updated by saveWebsite()
+        Date weblogModified = entry.getWebsite().getLastModified();
         if(entry.isPublished()) {
             roller.getWeblogManager().saveWeblog(entry.getWebsite());
         }
         
+        // update planet subscription of the weblog, if any.  this shares
+        // the transaction of the save, so a database error fails the save
+        planetSync.entrySaved(entry, weblogModified);
+        
         if(entry.isPublished()) {
             // Queue applicable pings for this update.
             roller.getAutopingManager().queueApplicableAutoPings(entry);
@@ -262,12 +280,17 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
 
         // remove entry
         this.strategy.remove(entry);
+        TransformedTextCache.getInstance().remove(entry);
         
         // update weblog last modified date.  date updated by saveWebsite()
+        Date weblogModified = weblog.getLastModified();
         if (entry.isPublished()) {
             roller.getWeblogManager().saveWeblog(weblog);
         }
         
+        // update planet subscription of the weblog, if any
+        planetSync.entryRemoved(entry, weblogModified);
+        
         // remove entry from cache mapping
         this.entryAnchorToIdMap.remove(entry.getWebsite().getHandle()+":"+entry.getAnchor());
     }
@@ -354,21 +377,100 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     /**
      * @inheritDoc
      */
+    public List<WeblogEntry> getPublishedWeblogEntriesAfter(Weblog weblog,
+            String afterId, int max) throws WebloggerException {
+
+        List<Object> params = new ArrayList<Object>();
+        int size = 0;
+        StringBuilder queryString = new StringBuilder();
+        queryString.append("SELECT e FROM WeblogEntry e WHERE ");
+
+        params.add(size++, PubStatus.PUBLISHED);
+        queryString.append("e.status = ?").append(size);
+
+        if (weblog != null) {
+            params.add(size++, weblog.getId());
+            queryString.append(" AND e.website.id = ?").append(size);
+        } else {
+            params.add(size++, Boolean.TRUE);
+            queryString.append(" AND e.website.visible = ?").append(size);
+        }
+
+        // seek past the previous chunk using the primary key, rather than
+        // an offset which would make the database skip every earlier row
+        if (afterId != null) {
+            params.add(size++, afterId);
+            queryString.append(" AND e.id > ?").append(size);
+        }
+
+        queryString.append(" ORDER BY e.id ASC");
+
+        TypedQuery<WeblogEntry> query = strategy.getDynamicQuery(queryString.toString(), WeblogEntry.class);
+        for (int i=0; i<params.size(); i++) {
+            query.setParameter(i+1, params.get(i));
+        }
+        query.setMaxResults(max);
+
+        return query.getResultList();
+    }
+
     public List<WeblogEntry> getWeblogEntries(WeblogEntrySearchCriteria wesc) throws WebloggerException {
 
+        List<Object> params = new ArrayList<Object>();
+        StringBuilder queryString = buildWeblogEntryQuery("e", wesc, params);
+
+        appendWeblogEntryOrder(queryString, wesc);
+        
+        TypedQuery<WeblogEntry> query = strategy.getDynamicQuery(queryString.toString(), WeblogEntry.class);
+        for (int i=0; i<params.size(); i++) {
+            query.setParameter(i+1, params.get(i));
+        }
+        setWeblogEntryRange(query, wesc);
+        
+        return query.getResultList();
+    }
+
+    private static void appendWeblogEntryOrder(StringBuilder queryString,
+            WeblogEntrySearchCriteria wesc) {
+        String order = isSortedAscending(wesc) ? "ASC " : "DESC ";
+        if (isSortedByUpdateTime(wesc)) {
+            queryString.append(" ORDER BY e.updateTime ").append(order);
+        } else {
+            // entries published at the same time are kept in a stable order
+            // so that seeking past one of them works
+            queryString.append(" ORDER BY e.pubTime ").append(order);
+            queryString.append(", e.id ").append(order);
+        }
+    }
+
+    private static void setWeblogEntryRange(Query query, WeblogEntrySearchCriteria wesc) {
+        if (wesc.getOffset() != 0) {
+            query.setFirstResult(wesc.getOffset());
+        }
+        if (wesc.getMaxResults() != -1) {
+            query.setMaxResults(wesc.getMaxResults());
+        }
+    }
+
+    /**
+     * Build a query selecting the given expression from the entries matching
+     * the criteria, up to but excluding the ORDER BY clause.
+     */
+    private StringBuilder buildWeblogEntryQuery(String select,
+            WeblogEntrySearchCriteria wesc, List<Object> params) throws WebloggerException {
+
         WeblogCategory cat = null;
         if (StringUtils.isNotEmpty(wesc.getCatName()) && wesc.getWeblog() != null) {
             cat = getWeblogCategoryByName(wesc.getWeblog(), wesc.getCatName());
         }
 
-        List<Object> params = new ArrayList<Object>();
         int size = 0;
         StringBuilder queryString = new StringBuilder();
         
         if (wesc.getTags() == null || wesc.getTags().size()==0) {
-            queryString.append("SELECT e FROM WeblogEntry e WHERE ");
+            queryString.append("SELECT ").append(select).append(" FROM WeblogEntry e WHERE ");
         } else {
-            queryString.append("SELECT e FROM WeblogEntry e JOIN e.tags t WHERE ");
+            queryString.append("SELECT ").append(select).append(" FROM WeblogEntry e JOIN e.tags t WHERE ");
             queryString.append("(");
             for (int i = 0; i < wesc.getTags().size(); i++) {
                 if (i != 0) {
@@ -428,33 +530,28 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
             queryString.append(") ");
         }
 
-        if (wesc.getSortBy() != null && wesc.getSortBy().equals(WeblogEntrySearchCriteria.SortBy.UPDATE_TIME)) {
-            queryString.append(" ORDER BY e.updateTime ");
-        } else {
-            queryString.append(" ORDER BY e.pubTime ");
-        }
-        
-        if (wesc.getSortOrder() != null && wesc.getSortOrder().equals(WeblogEntrySearchCriteria.SortOrder.ASCENDING)) {
-            queryString.append("ASC ");
-        } else {
-            queryString.append("DESC ");
+        if (wesc.getAfterPubTime() != null && wesc.getAfterId() != null && !isSortedByUpdateTime(wesc)) {
+            // seek past the given entry, in the same order as ORDER BY
+            String cmp = isSortedAscending(wesc) ? " > " : " < ";
+            params.add(size++, new Timestamp(wesc.getAfterPubTime().getTime()));
+            queryString.append(" AND ( e.pubTime").append(cmp).append("?").append(size);
+            queryString.append("    OR ( e.pubTime = ?").append(size);
+            params.add(size++, wesc.getAfterId());
+            queryString.append("        AND e.id").append(cmp).append("?").append(size);
+            queryString.append(")) ");
         }
-        
-        
-        TypedQuery<WeblogEntry> query = strategy.getDynamicQuery(queryString.toString(), WeblogEntry.class);
-        for (int i=0; i<params.size(); i++) {
-            query.setParameter(i+1, params.get(i));
-        }
-        
-        if (wesc.getOffset() != 0) {
-            query.setFirstResult(wesc.getOffset());
-        }
-        if (wesc.getMaxResults() != -1) {
-            query.setMaxResults(wesc.getMaxResults());
-        }
-        
-        return query.getResultList();
+
+        return queryString;
     }
+
+    private static boolean isSortedByUpdateTime(WeblogEntrySearchCriteria wesc) {
+        return WeblogEntrySearchCriteria.SortBy.UPDATE_TIME.equals(wesc.getSortBy());
+    }
+
+    private static boolean isSortedAscending(WeblogEntrySearchCriteria wesc) {
+        return WeblogEntrySearchCriteria.SortOrder.ASCENDING.equals(wesc.getSortOrder());
+    }
+
     
     /**
      * @inheritDoc
@@ -785,23 +882,83 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     public Map<Date, String> getWeblogEntryStringMap(WeblogEntrySearchCriteria wesc) throws WebloggerException {
         TreeMap<Date, String> map = new TreeMap<Date, String>(Collections.reverseOrder());
 
-        List<WeblogEntry> entries = getWeblogEntries(wesc);
+        // only the days are needed, so don't load the entries
+        SimpleDateFormat formatter = DateUtil.get8charDateFormat();
+        for (Date sDate : getWeblogEntryCountMap(wesc).keySet()) {
+            map.put(sDate, formatter.format(sDate));
+        }
+        return map;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    public Map<Date, Integer> getWeblogEntryCountMap(WeblogEntrySearchCriteria wesc) throws WebloggerException {
+        TreeMap<Date, Integer> map = new TreeMap<Date, Integer>(Collections.reverseOrder());
+
+        // select just the id and pubTime of each entry, the id is there so
+        // entries matching several tags are only counted once
+        List<Object> params = new ArrayList<Object>();
+        StringBuilder queryString = buildWeblogEntryQuery(
+                "e.id, e.pubTime, e.updateTime", wesc, params);
+
+        // a range of the entries is the same one getWeblogEntries() returns
+        boolean ranged = wesc.getOffset() != 0 || wesc.getMaxResults() != -1;
+        if (ranged) {
+            appendWeblogEntryOrder(queryString, wesc);
+        }
+
+        TypedQuery<Object[]> query = strategy.getDynamicQuery(queryString.toString(), Object[].class);
+        for (int i=0; i<params.size(); i++) {
+            query.setParameter(i+1, params.get(i));
+        }
+        if (ranged) {
+            setWeblogEntryRange(query, wesc);
+        }
 
         Calendar cal = Calendar.getInstance();
         if (wesc.getWeblog() != null) {
             cal.setTimeZone(wesc.getWeblog().getTimeZoneInstance());
         }
 
-        SimpleDateFormat formatter = DateUtil.get8charDateFormat();
-        for (WeblogEntry entry : entries) {
-            Date sDate = DateUtil.getNoonOfDay(entry.getPubTime(), cal);
-            if (map.get(sDate) == null) {
-                map.put(sDate, formatter.format(sDate));
+        Set<Object> seen = new HashSet<Object>();
+        for (Object[] row : query.getResultList()) {
+            if (!seen.add(row[0])) {
+                continue;
             }
+            Date sDate = DateUtil.getNoonOfDay((Date) row[1], cal);
+            Integer count = map.get(sDate);
+            map.put(sDate, count == null ? 1 : count + 1);
         }
         return map;
     }
 
+    /**
+     * @inheritDoc
+     */
+    public Date getEarliestPubTime(WeblogEntrySearchCriteria wesc) throws WebloggerException {
+        return getPubTime("MIN(e.pubTime)", wesc);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    public Date getLatestPubTime(WeblogEntrySearchCriteria wesc) throws WebloggerException {
+        return getPubTime("MAX(e.pubTime)", wesc);
+    }
+
+    private Date getPubTime(String aggregate, WeblogEntrySearchCriteria wesc) throws WebloggerException {
+        List<Object> params = new ArrayList<Object>();
+        StringBuilder queryString = buildWeblogEntryQuery(aggregate, wesc, params);
+
+        TypedQuery<Timestamp> query = strategy.getDynamicQuery(queryString.toString(), Timestamp.class);
+        for (int i=0; i<params.size(); i++) {
+            query.setParameter(i+1, params.get(i));
+        }
+        Timestamp pubTime = query.getSingleResult();
+        return pubTime == null ? null : new Date(pubTime.getTime());
+    }
+
     /**
      * @inheritDoc
      */
@@ -1275,6 +1432,70 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         }
     }
     
+    /**
+     * @inheritDoc
+     */
+    public void incrementHitCounts(Map<String, Long> hitsByHandle)
+    throws WebloggerException {
+        
+        // keep IN lists to a size every database accepts
+        List<String> handles = new ArrayList<String>(hitsByHandle.keySet());
+        for (int i = 0; i < handles.size(); i += MAX_IN_LIST) {
+            List<String> chunk = handles.subList(i, Math.min(handles.size(), i + MAX_IN_LIST));
+            incrementHitCounts(chunk, hitsByHandle);
+        }
+    }
+    
+    private void incrementHitCounts(List<String> handles, Map<String, Long> hitsByHandle)
+    throws WebloggerException {
+        
+        // find out which weblogs already have a hit count
+        TypedQuery<String> q = strategy.getNamedQuery(
+                "WeblogHitCount.getWeblogHandleByWeblogHandleIn", String.class);
+        q.setParameter(1, handles);
+        Set<String> existing = new HashSet<String>(q.getResultList());
+        
+        // group existing counts by amount, one bulk update per distinct amount
+        Map<Integer, List<String>> handlesByAmount = new HashMap<Integer, List<String>>();
+        List<String> missing = new ArrayList<String>();
+        for (String handle : handles) {
+            int amount = hitsByHandle.get(handle).intValue();
+            if (amount <= 0) {
+                continue;
+            }
+            if (existing.contains(handle)) {
+                List<String> sameAmount = handlesByAmount.get(amount);
+                if (sameAmount == null) {
+                    sameAmount = new ArrayList<String>();
+                    handlesByAmount.put(amount, sameAmount);
+                }
+                sameAmount.add(handle);
+            } else {
+                missing.add(handle);
+            }
+        }
+        
+        for (Map.Entry<Integer, List<String>> entry : handlesByAmount.entrySet()) {
+            Query update = strategy.getNamedUpdate(
+                    "WeblogHitCount.updateDailyHitCountIncrementByWeblogHandleIn");
+            update.setParameter(1, entry.getKey());
+            update.setParameter(2, entry.getValue());
+            update.executeUpdate();
+        }
+        
+        // create counts for weblogs getting their first hits
+        if (!missing.isEmpty()) {
+            TypedQuery<Weblog> wq = strategy.getNamedQuery("Weblog.getByHandleIn", Weblog.class);
+            wq.setParameter(1, missing);
+            for (Weblog weblog : wq.getResultList()) {
+                WeblogHitCount hitCount = new WeblogHitCount();
+                hitCount.setWeblog(weblog);
+                hitCount.setDailyHits(hitsByHandle.get(weblog.getHandle()).intValue());
+                strategy.store(hitCount);
+            }
+        }
+    }
+    
     /**
      * @inheritDoc
      */
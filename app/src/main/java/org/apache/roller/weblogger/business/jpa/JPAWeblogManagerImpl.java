@@ -34,7 +34,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -82,7 +81,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     private final JPAPersistenceStrategy strategy;
     
     // cached mapping of weblogHandles -> weblogIds
-    private Map<String,String> weblogHandleToIdMap = new Hashtable<String,String>();
+    private final EntityLookupCache lookupCache = EntityLookupCache.getInstance();
 
     @com.google.inject.Inject
     protected JPAWeblogManagerImpl(Weblogger roller, JPAPersistenceStrategy strat) {
@@ -111,7 +110,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         this.strategy.remove(weblog);
         
         // remove entry from cache mapping
-        this.weblogHandleToIdMap.remove(weblog.getHandle());
+        this.lookupCache.removeWeblog(weblog.getHandle());
     }
     
     /**
@@ -248,6 +247,10 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     public void saveTemplateRendition(CustomTemplateRendition rendition) throws WebloggerException {
         this.strategy.store(rendition);
 
+        // the template changes along with its renditions, so that parsed
+        // copies of it are replaced
+        rendition.getWeblogTemplate().setLastModified(new Date());
+
         // update weblog last modified date.  date updated by saveWeblog()
         roller.getWeblogManager().saveWeblog(rendition.getWeblogTemplate().getWeblog());
     }
@@ -362,18 +365,20 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         
         // check cache first
         // NOTE: if we ever allow changing handles then this needs updating
-        if(this.weblogHandleToIdMap.containsKey(handle)) {
+        String weblogId = this.lookupCache.getWeblogId(handle);
+        if (weblogId != null) {
             
-            Weblog weblog = this.getWeblog(this.weblogHandleToIdMap.get(handle));
-            if (weblog != null) {
+            Weblog weblog = this.getWeblog(weblogId);
+            if (weblog != null && handle.equals(weblog.getHandle())) {
                 // only return weblog if enabled status matches
+                log.debug("weblogHandleToId CACHE HIT - "+handle);
                 if(visible == null || visible.equals(weblog.getVisible())) {
-                    log.debug("weblogHandleToId CACHE HIT - "+handle);
                     return weblog;
                 }
+                return null;
             } else {
                 // mapping hit with lookup miss?  mapping must be old, remove it
-                this.weblogHandleToIdMap.remove(handle);
+                this.lookupCache.removeWeblog(handle);
             }
         }
         
@@ -389,7 +394,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         // add mapping to cache
         if(weblog != null) {
             log.debug("weblogHandleToId CACHE MISS - "+handle);
-            this.weblogHandleToIdMap.put(weblog.getHandle(), weblog.getId());
+            this.lookupCache.putWeblog(weblog);
         }
         
         if(weblog != null &&
@@ -51,6 +51,7 @@ import org.apache.roller.weblogger.business.search.IndexManager;
 import org.apache.roller.weblogger.business.search.IndexManagerImpl;
 import org.apache.roller.weblogger.business.themes.ThemeManager;
 import org.apache.roller.weblogger.business.themes.ThemeManagerImpl;
+import org.apache.roller.weblogger.planet.business.LocalSubscriptionSync;
 import org.apache.roller.weblogger.planet.business.WebloggerRomeFeedFetcher;
 
 
@@ -89,6 +90,7 @@ public class JPAWebloggerModule implements Module {
 		binder.bind(Planet.class).to(              JPAPlanetImpl.class);
         binder.bind(PlanetManager.class).to(       JPAPlanetManagerImpl.class);   
         binder.bind(FeedFetcher.class).to(         WebloggerRomeFeedFetcher.class);
+        binder.bind(LocalSubscriptionSync.class);
     }
     
 }
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.RollerPermission;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the outcome of permission checks, i.e. whether a user has a
+ * given permission, in a given weblog or globally.
+ *
+ * All decisions of a user are dropped together whenever any of the user's
+ * weblog permissions or roles change.  Rather than finding every cached
+ * decision of the user, the user is given a new generation which is part
+ * of the keys, so the old decisions are never looked up again and simply
+ * age out of the cache.  Decisions also expire after a short timeout, so
+ * changes made on other machines of a cluster are seen soon enough.
+ *
+ * Changes made through the user manager only count once they are committed,
+ * so they are queued per thread with removeOnCommit() and applied by the
+ * persistence strategy after its commit.  Until then decisions about the
+ * changed users aren't cached by the thread making the change.  Callers
+ * take the key before checking a permission and put the decision under that
+ * key, so a decision checked while a change commits goes to the generation
+ * before the change and is never looked up again.
+ *
+ * Hits and misses show up in the stats of the cache like for any other.
+ */
+public final class PermissionDecisionCache implements CacheHandler {
+
+    private static Log log = LogFactory.getLog(PermissionDecisionCache.class);
+
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.permissions";
+
+    // max number of users with a generation of their own, above which all
+    // of them are reset by starting a new epoch
+    private static final int MAX_GENERATIONS = 1000;
+
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+
+    // generations of users whose permissions changed, and of everyone
+    private final Map<String, Long> generations = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong lastGeneration = new AtomicLong();
+    private volatile long epoch = 0;
+
+    // users changed by the transaction of each thread, not yet committed
+    private final ThreadLocal<Set<String>> pending = new ThreadLocal<Set<String>>();
+
+    // reference to our singleton instance
+    private static PermissionDecisionCache singletonInstance = new PermissionDecisionCache();
+
+
+    private PermissionDecisionCache() {
+
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+
+        Map<String, String> cacheProps = new HashMap<String, String>();
+        cacheProps.put("id", CACHE_ID);
+        Enumeration allProps = WebloggerConfig.keys();
+        String prop = null;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+
+        log.info(cacheProps);
+
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+
+
+    public static PermissionDecisionCache getInstance() {
+        return singletonInstance;
+    }
+
+
+    /**
+     * Get the key to look up and put the decision about a permission under.
+     *
+     * @return the key, or null if the decision can't be cached
+     */
+    public String getKey(RollerPermission perm, User user) {
+
+        if (!cacheEnabled || user.getUserName() == null) {
+            return null;
+        }
+
+        Set<String> changed = pending.get();
+        if (changed != null && changed.contains(user.getUserName())) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append(epoch).append(':');
+        Long generation = generations.get(user.getUserName());
+        key.append(generation != null ? generation : 0).append(':');
+        key.append(user.getUserName()).append(':');
+        if (perm instanceof WeblogPermission) {
+            key.append("weblog/").append(((WeblogPermission) perm).getObjectId());
+        } else {
+            key.append("global");
+        }
+        key.append(':').append(perm.getActions());
+        return key.toString();
+    }
+
+
+    /**
+     * @return whether the user has the permission, or null if not cached
+     */
+    public Boolean get(String key) {
+
+        if (!cacheEnabled || key == null) {
+            return null;
+        }
+
+        Boolean decision = (Boolean) contentCache.get(key);
+        if (log.isDebugEnabled()) {
+            log.debug((decision != null ? "HIT " : "MISS ")+key);
+        }
+        return decision;
+    }
+
+
+    public void put(String key, boolean decision) {
+
+        if (!cacheEnabled || key == null) {
+            return;
+        }
+
+        contentCache.put(key, decision);
+    }
+
+
+    /**
+     * Drop all decisions of a user once the transaction of the current
+     * thread commits, after changing the user's weblog permissions or roles.
+     */
+    public void removeOnCommit(String userName) {
+
+        if (!cacheEnabled || userName == null) {
+            return;
+        }
+
+        Set<String> changed = pending.get();
+        if (changed == null) {
+            changed = new HashSet<String>();
+            pending.set(changed);
+        }
+        changed.add(userName);
+    }
+
+
+    /**
+     * The transaction of the current thread committed, drop the decisions
+     * of the users it changed.
+     */
+    public void committed() {
+
+        Set<String> changed = pending.get();
+        if (changed != null) {
+            pending.remove();
+            for (String userName : changed) {
+                remove(userName);
+            }
+        }
+    }
+
+
+    /**
+     * The transaction of the current thread rolled back, nothing changed.
+     */
+    public void rolledBack() {
+        pending.remove();
+    }
+
+
+    /**
+     * Drop all decisions of a user, after the user's weblog permissions or
+     * roles have changed.
+     */
+    public void remove(String userName) {
+
+        if (!cacheEnabled || userName == null) {
+            return;
+        }
+
+        if (generations.size() >= MAX_GENERATIONS) {
+            log.debug("Starting new epoch");
+            epoch = lastGeneration.incrementAndGet();
+            generations.clear();
+        }
+        generations.put(userName, lastGeneration.incrementAndGet());
+        log.debug("REMOVE "+userName);
+    }
+
+
+    public void clear() {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.clear();
+    }
+
+
+    /**
+     * A user has changed, possibly removed.
+     */
+    public void invalidate(User user) {
+        remove(user.getUserName());
+    }
+
+
+    public void invalidate(WeblogEntry entry) {
+        // ignored
+    }
+
+
+    public void invalidate(Weblog website) {
+        // ignored, permissions are revoked through the user manager
+    }
+
+
+    public void invalidate(WeblogBookmark bookmark) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogBookmarkFolder folder) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogEntryComment comment) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogCategory category) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogTemplate template) {
+        // ignored
+    }
+
+}
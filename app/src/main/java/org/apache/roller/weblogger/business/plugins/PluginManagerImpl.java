@@ -19,10 +19,13 @@
 package org.apache.roller.weblogger.business.plugins;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPlugin;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -47,6 +50,10 @@ public class PluginManagerImpl implements PluginManager {
     // Comment plugins
     private List<WeblogEntryCommentPlugin> commentPlugins = new ArrayList<WeblogEntryCommentPlugin>();
     
+    // initialized plugins keyed by weblog id, rebuilt when the weblog changes
+    private final Map<String, WeblogPlugins> weblogPlugins =
+            new ConcurrentHashMap<String, WeblogPlugins>();
+    
     
     /**
      * Creates a new instance of PluginManagerImpl
@@ -67,9 +74,31 @@ public class PluginManagerImpl implements PluginManager {
     
     
     /**
-     * Create and init plugins for processing entries in a specified website.
+     * Get the initialized plugins for processing entries in a specified
+     * website.  Plugins are created and initialized once per weblog, and
+     * again only after the weblog has changed.
      */
     public Map<String, WeblogEntryPlugin> getWeblogEntryPlugins(Weblog website) {
+        
+        if (website.getId() == null) {
+            return createWeblogEntryPlugins(website);
+        }
+        
+        WeblogPlugins cached = weblogPlugins.get(website.getId());
+        if (cached != null && cached.isFor(website)) {
+            return cached.plugins;
+        }
+        
+        cached = new WeblogPlugins(website, createWeblogEntryPlugins(website));
+        weblogPlugins.put(website.getId(), cached);
+        return cached.plugins;
+    }
+    
+    
+    /**
+     * Create and init plugins for processing entries in a specified website.
+     */
+    private Map<String, WeblogEntryPlugin> createWeblogEntryPlugins(Weblog website) {
         Map<String, WeblogEntryPlugin> ret = new LinkedHashMap<String, WeblogEntryPlugin>();
         for (Class pluginClass : PluginManagerImpl.mPagePlugins.values()) {
             try {
@@ -232,4 +261,25 @@ public class PluginManagerImpl implements PluginManager {
         // no op
     }
     
+    
+    /**
+     * Plugins initialized for a weblog as it was at a given time.
+     */
+    private static class WeblogPlugins {
+        
+        private final Date lastModified;
+        private final Map<String, WeblogEntryPlugin> plugins;
+        
+        WeblogPlugins(Weblog weblog, Map<String, WeblogEntryPlugin> plugins) {
+            this.lastModified = weblog.getLastModified();
+            this.plugins = Collections.unmodifiableMap(plugins);
+        }
+        
+        boolean isFor(Weblog weblog) {
+            return lastModified == null ? weblog.getLastModified() == null
+                    : weblog.getLastModified() != null
+                    && lastModified.getTime() == weblog.getLastModified().getTime();
+        }
+    }
+    
 }
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.plugins;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the text and summary of weblog entries after entry plugins
+ * have been applied.
+ *
+ * Rendered text is kept per entry along with the update time of the entry,
+ * the plugins it was rendered with and the source text, and is only handed
+ * out again while all of those still match.  So a stale copy is never
+ * returned, even for an entry which was changed without the cache being
+ * told about it.
+ */
+public final class TransformedTextCache implements CacheHandler {
+
+    private static Log log = LogFactory.getLog(TransformedTextCache.class);
+
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.transformedtext";
+
+    /** Part of the entry which was rendered. */
+    public static final String TEXT = "text";
+    public static final String SUMMARY = "summary";
+
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+
+    // reference to our singleton instance
+    private static TransformedTextCache singletonInstance = new TransformedTextCache();
+
+
+    private TransformedTextCache() {
+
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+
+        Map<String, String> cacheProps = new HashMap<String, String>();
+        cacheProps.put("id", CACHE_ID);
+        Enumeration allProps = WebloggerConfig.keys();
+        String prop = null;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+
+        log.info(cacheProps);
+
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+
+
+    public static TransformedTextCache getInstance() {
+        return singletonInstance;
+    }
+
+
+    /**
+     * Get the rendered text of an entry, if it was rendered from the same
+     * source text with the same plugins since the entry was last updated.
+     *
+     * @param entry  the entry being rendered
+     * @param part   TEXT or SUMMARY
+     * @param str    the source text
+     * @return the rendered text, or null if it has to be rendered again
+     */
+    public String get(WeblogEntry entry, String part, String str) {
+
+        if (!cacheEnabled || entry.getId() == null) {
+            return null;
+        }
+
+        String key = getKey(entry, part);
+        Rendered rendered = (Rendered) contentCache.get(key);
+        if (rendered != null && rendered.stamp.equals(getStamp(entry, str))) {
+            log.debug("HIT "+key);
+            return rendered.text;
+        }
+
+        log.debug("MISS "+key);
+        return null;
+    }
+
+
+    public void put(WeblogEntry entry, String part, String str, String text) {
+
+        if (!cacheEnabled || entry.getId() == null) {
+            return;
+        }
+
+        String key = getKey(entry, part);
+        contentCache.put(key, new Rendered(getStamp(entry, str), text));
+        log.debug("PUT "+key);
+    }
+
+
+    public void remove(WeblogEntry entry) {
+
+        if (!cacheEnabled || entry.getId() == null) {
+            return;
+        }
+
+        contentCache.remove(getKey(entry, TEXT));
+        contentCache.remove(getKey(entry, SUMMARY));
+        log.debug("REMOVE "+entry.getId());
+    }
+
+
+    public void clear() {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.clear();
+    }
+
+
+    private static String getKey(WeblogEntry entry, String part) {
+        return entry.getId() + ":" + part;
+    }
+
+
+    // everything the rendered text depends on, apart from the plugins'
+    // own configuration
+    private static String getStamp(WeblogEntry entry, String str) {
+        StringBuilder stamp = new StringBuilder();
+        stamp.append(entry.getUpdateTime() != null ? entry.getUpdateTime().getTime() : 0);
+        stamp.append(':').append(entry.getPlugins());
+        stamp.append(':').append(str.length());
+        stamp.append(':').append(str.hashCode());
+        return stamp.toString();
+    }
+
+
+    /**
+     * An entry has changed.
+     */
+    public void invalidate(WeblogEntry entry) {
+        remove(entry);
+    }
+
+
+    public void invalidate(Weblog website) {
+        // ignored, plugins are re-initialized when a weblog changes
+    }
+
+
+    public void invalidate(WeblogBookmark bookmark) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogBookmarkFolder folder) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogEntryComment comment) {
+        // ignored
+    }
+
+
+    public void invalidate(User user) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogCategory category) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogTemplate template) {
+        // ignored
+    }
+
+
+    /**
+     * Rendered text along with the stamp of what it was rendered from.
+     */
+    private static class Rendered {
+
+        private final String stamp;
+        private final String text;
+
+        Rendered(String stamp, String text) {
+            this.stamp = stamp;
+            this.text = text;
+        }
+    }
+
+}
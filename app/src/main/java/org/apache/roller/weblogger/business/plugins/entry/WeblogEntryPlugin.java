@@ -28,6 +28,10 @@ import org.apache.roller.weblogger.pojos.Weblog;
  *
  * Weblog entry plugins are used to make transformations to the entry text.
  * These plugins affect both the entry summary and entry body.
+ *
+ * Plugins are initialized once per weblog and the same instances are then
+ * used to render all of its entries, possibly by many threads at once, so
+ * render() should not keep any state between calls.
  */
 public interface WeblogEntryPlugin {
     
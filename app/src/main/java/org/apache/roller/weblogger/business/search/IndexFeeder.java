@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+
+
+/**
+ * Feeds documents to an IndexWriter from a pool of threads.
+ *
+ * IndexWriter analyzes and inverts documents on the thread that adds them,
+ * so adding from several threads spreads the expensive part of indexing over
+ * several cores.  At most maxPending documents are waiting at any time, so
+ * whoever builds the documents can't run arbitrarily far ahead.  With a
+ * single thread, documents are simply added on the calling thread.
+ */
+public class IndexFeeder {
+
+    private static final AtomicInteger feederCount = new AtomicInteger();
+
+    private final IndexWriter writer;
+    private final ExecutorService pool;
+    private final Semaphore pending;
+    private final int maxPending;
+
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+
+    /**
+     * @param writer     the writer to add documents to
+     * @param threads    number of threads adding documents
+     * @param maxPending max number of documents waiting to be added
+     */
+    public IndexFeeder(IndexWriter writer, int threads, int maxPending) {
+        this.writer = writer;
+        this.maxPending = Math.max(1, maxPending);
+        this.pending = new Semaphore(this.maxPending);
+
+        if (threads > 1) {
+            final String name = "Roller Weblogger Index Feeder " + feederCount.incrementAndGet();
+            this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else {
+            this.pool = null;
+        }
+    }
+
+
+    /**
+     * Add a document, replacing any document matching the given term.
+     *
+     * @param term term identifying documents to replace, or null to just add
+     * @param doc  the document
+     */
+    public void add(final Term term, final Document doc)
+            throws IOException, InterruptedException {
+
+        if (pool == null) {
+            write(term, doc);
+            return;
+        }
+
+        rethrowFailure();
+        pending.acquire();
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        write(term, doc);
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, new IOException(e));
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Wait until every document handed to add() has been added.
+     *
+     * @throws IOException the first error hit while adding documents
+     */
+    public void await() throws IOException, InterruptedException {
+        if (pool != null) {
+            pending.acquire(maxPending);
+            pending.release(maxPending);
+        }
+        rethrowFailure();
+    }
+
+
+    /**
+     * Stop the feeder threads.  Documents not yet added are dropped, so call
+     * await() first.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Number of documents added so far.
+     */
+    public long getAdded() {
+        return added.get();
+    }
+
+
+    private void write(Term term, Document doc) throws IOException {
+        if (term != null) {
+            writer.updateDocument(term, doc);
+        } else {
+            writer.addDocument(doc);
+        }
+        added.incrementAndGet();
+    }
+
+
+    private void rethrowFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+}
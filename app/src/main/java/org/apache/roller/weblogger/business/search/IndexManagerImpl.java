@@ -20,7 +20,11 @@ package org.apache.roller.weblogger.business.search;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.commons.logging.Log;
@@ -29,13 +33,16 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.business.Weblogger;
@@ -49,6 +56,8 @@ import org.apache.roller.weblogger.business.search.operations.WriteToIndexOperat
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 
 /**
  * Lucene implementation of IndexManager. This is the central entry point into
@@ -62,12 +71,15 @@ public class IndexManagerImpl implements IndexManager {
     // ~ Static fields/initializers
     // =============================================
 
-    private IndexReader reader;
     private final Weblogger roller;
 
     static Log mLogger = LogFactory.getFactory().getInstance(
             IndexManagerImpl.class);
 
+    // ids of the search caches, also the prefix of their config properties
+    public static final String SEARCH_QUERY_CACHE_ID = "cache.searchquery";
+    public static final String SEARCH_RESULTS_CACHE_ID = "cache.searchresults";
+
     // ~ Instance fields
     // ========================================================
 
@@ -75,6 +87,9 @@ public class IndexManagerImpl implements IndexManager {
 
     File indexConsistencyMarker;
 
+    // last entry id committed by an unfinished full rebuild
+    File rebuildCheckpoint;
+
     private boolean useRAMIndex = false;
 
     private RAMDirectory fRAMindex;
@@ -85,6 +100,18 @@ public class IndexManagerImpl implements IndexManager {
 
     private ReadWriteLock rwl = new ReentrantReadWriteLock();
 
+    // long lived writer, only used by the index operation queue's thread
+    private IndexWriter writer = null;
+
+    private final IndexOperationQueue indexQueue;
+
+    // near real time searchers over the writer, refreshed by the queue
+    private SearcherManager searcherManager = null;
+
+    // parsed search terms, and pages of hits keyed by index version
+    private final Cache searchQueryCache;
+    private final Cache searchResultsCache;
+
     // ~ Constructors
     // ===========================================================
 
@@ -117,6 +144,46 @@ public class IndexManagerImpl implements IndexManager {
 
         String test = indexDir + File.separator + ".index-inconsistent";
         indexConsistencyMarker = new File(test);
+        rebuildCheckpoint = new File(indexDir + File.separator + ".rebuild-checkpoint");
+
+        // all index writes go through one ordered queue
+        int queueSize = WebloggerConfig.getIntProperty("search.index.queueSize", 1000);
+        int batchSize = WebloggerConfig.getIntProperty("search.index.batchSize", 100);
+        int commitInterval = WebloggerConfig.getIntProperty("search.index.commitInterval", 5);
+        int refreshInterval = WebloggerConfig.getIntProperty("search.index.refreshInterval", 1);
+        this.indexQueue = new IndexOperationQueue(this, queueSize, batchSize,
+                commitInterval * (long) RollerConstants.SEC_IN_MS,
+                refreshInterval * (long) RollerConstants.SEC_IN_MS);
+
+        this.searchQueryCache = constructCache(SEARCH_QUERY_CACHE_ID);
+        this.searchResultsCache = constructCache(SEARCH_RESULTS_CACHE_ID);
+    }
+
+    /**
+     * Construct a cache configured by the cache.[id].* properties, or return
+     * null if that cache is disabled.
+     */
+    private static Cache constructCache(String cacheId) {
+        if (!WebloggerConfig.getBooleanProperty(cacheId + ".enabled", true)) {
+            mLogger.info("Search cache " + cacheId + " is disabled");
+            return null;
+        }
+
+        Map<String, String> cacheProps = new HashMap<String, String>();
+        cacheProps.put("id", cacheId);
+        Enumeration allProps = WebloggerConfig.keys();
+        while (allProps.hasMoreElements()) {
+            String prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if (prop.startsWith(cacheId + ".")) {
+                cacheProps.put(prop.substring(cacheId.length() + 1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+        mLogger.info(cacheProps);
+
+        return CacheManager.constructCache(null, cacheProps);
     }
 
     /**
@@ -128,15 +195,22 @@ public class IndexManagerImpl implements IndexManager {
         if (this.searchEnabled) {
 
             // 1. If inconsistency marker exists.
-            // Delete index
+            // Delete index, unless a full rebuild was interrupted, in which
+            // case we keep what it committed and carry on from there
             // 2. if we're using RAM index
             // load ram index wrapper around index
             //
+            String resumeAfterId = null;
             if (indexConsistencyMarker.exists()) {
-                getFSDirectory(true);
+                resumeAfterId = useRAMIndex ? null : getRebuildCheckpoint();
+                if (resumeAfterId == null) {
+                    getFSDirectory(true);
+                }
                 inconsistentAtStartup = true;
                 mLogger.debug("Index inconsistent: marker exists");
             } else {
+                // a checkpoint left behind by a rebuild that failed is stale
+                setRebuildCheckpoint(null);
                 try {
                     File makeIndexDir = new File(indexDir);
                     if (!makeIndexDir.exists()) {
@@ -170,7 +244,23 @@ public class IndexManagerImpl implements IndexManager {
                 }
             }
 
-            if (isInconsistentAtStartup()) {
+            IndexWriter indexWriter = getIndexWriter();
+            if (indexWriter != null) {
+                try {
+                    searcherManager = new SearcherManager(indexWriter, true, null);
+                } catch (IOException e) {
+                    mLogger.error("Error opening index searcher", e);
+                }
+            }
+
+            indexQueue.start();
+
+            if (isInconsistentAtStartup() && resumeAfterId != null) {
+                mLogger.info("Index rebuild was interrupted. Resuming after entry "
+                        + resumeAfterId + " in the background...");
+                scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller,
+                        this, null, resumeAfterId));
+            } else if (isInconsistentAtStartup()) {
                 mLogger.info("Index was inconsistent. Rebuilding index in the background...");
                 try {
                     rebuildWebsiteIndex();
@@ -205,21 +295,34 @@ public class IndexManagerImpl implements IndexManager {
     public void addEntryIndexOperation(WeblogEntry entry)
             throws WebloggerException {
         AddEntryOperation addEntry = new AddEntryOperation(roller, this, entry);
-        scheduleIndexOperation(addEntry);
+        scheduleEntryOperation(entry, addEntry);
     }
 
     public void addEntryReIndexOperation(WeblogEntry entry)
             throws WebloggerException {
         ReIndexEntryOperation reindex = new ReIndexEntryOperation(roller, this,
                 entry);
-        scheduleIndexOperation(reindex);
+        scheduleEntryOperation(entry, reindex);
     }
 
+    /**
+     * Queues the removal and, as before, waits until it has been applied so
+     * the entry no longer shows up in searches when this returns.
+     */
     public void removeEntryIndexOperation(WeblogEntry entry)
             throws WebloggerException {
         RemoveEntryOperation removeOp = new RemoveEntryOperation(roller, this,
                 entry);
-        executeIndexOperationNow(removeOp);
+        scheduleEntryOperation(entry, removeOp);
+        try {
+            if (this.searchEnabled) {
+                indexQueue.flush();
+            }
+        } catch (InterruptedException e) {
+            mLogger.error("Error executing operation", e);
+        } catch (IllegalStateException e) {
+            mLogger.error("Index operation dropped", e);
+        }
     }
 
     public ReadWriteLock getReadWriteLock() {
@@ -245,14 +348,34 @@ public class IndexManagerImpl implements IndexManager {
             if (this.searchEnabled) {
                 mLogger.debug("Starting scheduled index operation: "
                         + op.getClass().getName());
-                roller.getThreadManager().executeInBackground(op);
+                indexQueue.add(op);
             }
         } catch (InterruptedException e) {
             mLogger.error("Error executing operation", e);
+        } catch (IllegalStateException e) {
+            mLogger.error("Index operation dropped", e);
+        }
+    }
+
+    private void scheduleEntryOperation(WeblogEntry entry, final IndexOperation op) {
+        try {
+            // only if search is enabled
+            if (this.searchEnabled) {
+                mLogger.debug("Starting scheduled index operation: "
+                        + op.getClass().getName() + " for entry " + entry.getId());
+                indexQueue.addEntryOperation(entry.getId(), op);
+            }
+        } catch (InterruptedException e) {
+            mLogger.error("Error executing operation", e);
+        } catch (IllegalStateException e) {
+            mLogger.error("Index operation dropped", e);
         }
     }
 
     /**
+     * Write operations are applied by the index operation queue after
+     * everything queued before them, and this waits until they are committed.
+     * 
      * @param op
      */
     public void executeIndexOperationNow(final IndexOperation op) {
@@ -261,25 +384,162 @@ public class IndexManagerImpl implements IndexManager {
             if (this.searchEnabled) {
                 mLogger.debug("Executing index operation now: "
                         + op.getClass().getName());
-                roller.getThreadManager().executeInForeground(op);
+                if (op instanceof WriteToIndexOperation) {
+                    indexQueue.execute(op);
+                } else {
+                    // reads don't touch the writer, run them right here
+                    op.run();
+                }
             }
         } catch (InterruptedException e) {
             mLogger.error("Error executing operation", e);
+        } catch (IllegalStateException e) {
+            mLogger.error("Index operation dropped", e);
+        }
+    }
+
+    /**
+     * Get the long lived writer used by all write operations, opening it if
+     * needed.  Only the index operation queue's thread should write with it.
+     * 
+     * @return the index writer, or null if it could not be opened
+     */
+    public synchronized IndexWriter getIndexWriter() {
+        if (writer == null) {
+            try {
+                // Limit to 1000 tokens.
+                LimitTokenCountAnalyzer analyzer = new LimitTokenCountAnalyzer(
+                        IndexManagerImpl.getAnalyzer(), 1000);
+
+                IndexWriterConfig config = new IndexWriterConfig(
+                        FieldConstants.LUCENE_VERSION, analyzer);
+
+                writer = new IndexWriter(getIndexDirectory(), config);
+            } catch (IOException e) {
+                mLogger.error("ERROR creating writer", e);
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Commit the changes made through the index writer to disk.
+     */
+    synchronized void commit() {
+        if (writer != null) {
+            try {
+                writer.commit();
+            } catch (IOException e) {
+                mLogger.error("ERROR committing index changes", e);
+            }
+        }
+    }
+
+    /**
+     * Make changes made through the index writer visible to searches,
+     * reopening the searcher only if the index has changed.  Searchers
+     * already handed out keep their view until they are released.
+     */
+    void refreshSearcher() {
+        if (searcherManager != null) {
+            try {
+                searcherManager.maybeRefreshBlocking();
+            } catch (IOException e) {
+                mLogger.error("ERROR refreshing index searcher", e);
+            }
+        }
+    }
+
+    /**
+     * Get a searcher over the latest refreshed view of the index.  Every
+     * searcher acquired must be handed back with releaseSearcher().
+     * 
+     * @return the searcher, or null if the index isn't available
+     */
+    public IndexSearcher acquireSearcher() {
+        if (searcherManager != null) {
+            try {
+                return searcherManager.acquire();
+            } catch (AlreadyClosedException e) {
+                mLogger.debug("Index searcher already closed");
+            } catch (IOException e) {
+                mLogger.error("ERROR acquiring index searcher", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Release a searcher obtained from acquireSearcher(), its reader is
+     * closed once it is out of date and no longer used by any search.
+     */
+    public void releaseSearcher(IndexSearcher searcher) {
+        if (searcher != null && searcherManager != null) {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException e) {
+                mLogger.error("ERROR releasing index searcher", e);
+            }
         }
     }
 
-    public synchronized void resetSharedReader() {
-        reader = null;
+    /**
+     * Cache of parsed search terms, or null if disabled.
+     */
+    public Cache getSearchQueryCache() {
+        return searchQueryCache;
     }
 
-    public synchronized IndexReader getSharedIndexReader() {
-        if (reader == null) {
+    /**
+     * Cache of pages of search hits, or null if disabled.  Pages are keyed
+     * by the version of the index they were found in, so a refreshed
+     * searcher never sees pages from an older view of the index.
+     */
+    public Cache getSearchResultsCache() {
+        return searchResultsCache;
+    }
+
+    /**
+     * Get the id of the last entry committed by a full rebuild which didn't
+     * finish, or null if there is none.
+     */
+    public String getRebuildCheckpoint() {
+        if (rebuildCheckpoint.exists()) {
             try {
-                reader = DirectoryReader.open(getIndexDirectory());
+                String lastId = new String(Files.readAllBytes(
+                        rebuildCheckpoint.toPath()), "UTF-8").trim();
+                return lastId.length() > 0 ? lastId : null;
             } catch (IOException e) {
+                mLogger.warn("Unable to read rebuild checkpoint", e);
             }
         }
-        return reader;
+        return null;
+    }
+
+    /**
+     * Record the id of the last entry committed by a full rebuild, so it can
+     * be resumed after a crash, or clear the checkpoint when lastId is null.
+     */
+    public void setRebuildCheckpoint(String lastId) {
+        if (useRAMIndex) {
+            return;
+        }
+        try {
+            if (lastId == null) {
+                rebuildCheckpoint.delete();
+            } else {
+                Files.write(rebuildCheckpoint.toPath(), lastId.getBytes("UTF-8"));
+            }
+        } catch (IOException e) {
+            mLogger.warn("Unable to write rebuild checkpoint", e);
+        }
+    }
+
+    /**
+     * Queue depth, lag and throughput of the index operation queue.
+     */
+    public Map<String, Object> getIndexQueueStats() {
+        return indexQueue.getStats();
     }
 
     /**
@@ -393,18 +653,45 @@ public class IndexManagerImpl implements IndexManager {
     }
 
     public void shutdown() {
-        if (useRAMIndex) {
-            scheduleIndexOperation(getSaveIndexOperation());
-        } else {
-            indexConsistencyMarker.delete();
+        // apply whatever is still queued before closing the writer
+        boolean drained = false;
+        try {
+            drained = indexQueue.shutdown(RollerConstants.MIN_IN_MS);
+        } catch (InterruptedException e) {
+            mLogger.error("Interrupted while draining index queue", e);
         }
 
-        try {
-            if (reader != null) {
-                reader.close();
+        // the writer and searcher are still in use by a busy queue
+        if (drained) {
+            try {
+                if (searcherManager != null) {
+                    searcherManager.close();
+                }
+            } catch (IOException e) {
+                mLogger.error("Unable to close index searcher", e);
             }
-        } catch (IOException e) {
-            // won't happen, since it was
+
+            synchronized (this) {
+                try {
+                    if (writer != null) {
+                        writer.close();
+                        writer = null;
+                    }
+                } catch (IOException e) {
+                    mLogger.error("Unable to close IndexWriter", e);
+                }
+            }
+        } else {
+            mLogger.warn("Index writer still busy, leaving IndexWriter open");
+        }
+
+        if (useRAMIndex) {
+            getSaveIndexOperation().run();
+        } else if (drained) {
+            indexConsistencyMarker.delete();
+        } else {
+            // leave the marker so an unfinished rebuild resumes at startup
+            mLogger.warn("Index operations still pending at shutdown");
         }
     }
 
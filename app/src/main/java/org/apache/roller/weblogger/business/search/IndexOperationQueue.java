@@ -0,0 +1,422 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.business.search.operations.IndexOperation;
+
+
+/**
+ * Ordered, single threaded pipeline for index write operations.
+ *
+ * Operations are applied one at a time by a single worker thread in the order
+ * they were queued, so only one thread ever writes to the index.  Operations
+ * on individual entries are collected into batches keyed by entry id, where a
+ * later operation on an entry replaces any earlier one that hasn't been
+ * applied yet.  Changes are committed when the queue goes idle, after
+ * batchSize operations or after commitInterval, whichever comes first.
+ * Searches see changes before they are committed: the near real time
+ * searcher is refreshed when the queue goes idle or every refreshInterval.
+ *
+ * The queue is bounded, so callers block when the worker falls too far behind.
+ * Once the worker has stopped, for whatever reason, queueing operations fails
+ * with an IllegalStateException and callers waiting for operations which will
+ * never be applied are released with one.
+ */
+class IndexOperationQueue {
+
+    private static Log log = LogFactory.getLog(IndexOperationQueue.class);
+
+    private final IndexManagerImpl manager;
+    private final BlockingQueue<Task> queue;
+    private final int batchSize;
+    private final long commitInterval;
+    private final long refreshInterval;
+
+    // the entry batch still accepting operations, guarded by itself
+    private final Object batchLock = new Object();
+    private Task openBatch = null;
+
+    private Thread worker = null;
+
+    // set once the worker has stopped and nothing more will be applied
+    private volatile boolean stopped = false;
+
+    // task being applied, only touched by the worker
+    private Task current = null;
+
+    // uncommitted operations, only touched by the worker
+    private int uncommitted = 0;
+    private long lastCommit = System.currentTimeMillis();
+
+    // operations not yet visible to searches, only touched by the worker
+    private int unrefreshed = 0;
+    private long lastRefresh = System.currentTimeMillis();
+
+    // for metrics
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private volatile long lastLag = 0;
+
+
+    /**
+     * @param manager        index manager whose writer is committed
+     * @param capacity       max number of tasks waiting in the queue
+     * @param batchSize      max entries per batch and operations per commit
+     * @param commitInterval max time in millis between commits
+     * @param refreshInterval max time in millis before searches see changes
+     */
+    IndexOperationQueue(IndexManagerImpl manager, int capacity, int batchSize,
+            long commitInterval, long refreshInterval) {
+        this.manager = manager;
+        this.queue = new LinkedBlockingQueue<Task>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.commitInterval = Math.max(1, commitInterval);
+        this.refreshInterval = Math.max(1, refreshInterval);
+    }
+
+
+    /**
+     * Start the worker thread.
+     */
+    synchronized void start() {
+        if (worker == null) {
+            stopped = false;
+            worker = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, "Roller Weblogger Index Writer");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+
+    /**
+     * Apply everything already queued, commit and stop the worker thread.
+     *
+     * @return false if the worker was still busy when the timeout expired
+     */
+    synchronized boolean shutdown(long timeout) throws InterruptedException {
+        boolean done = true;
+        if (worker != null) {
+            synchronized (batchLock) {
+                openBatch = null;
+                if (!stopped) {
+                    queue.put(new Task(null, null));
+                }
+            }
+            worker.join(timeout);
+            done = !worker.isAlive();
+            worker = null;
+        }
+        return done;
+    }
+
+
+    /**
+     * Queue an operation on a single entry.  If the entry already has an
+     * operation waiting in the open batch, the new operation replaces it.
+     */
+    void addEntryOperation(String entryId, IndexOperation op)
+            throws InterruptedException {
+        synchronized (batchLock) {
+            if (openBatch != null && openBatch.entries.size() < batchSize) {
+                if (openBatch.entries.put(entryId, op) != null) {
+                    coalesced.incrementAndGet();
+                }
+                return;
+            }
+            Task batch = new Task(new LinkedHashMap<String, IndexOperation>(), null);
+            batch.entries.put(entryId, op);
+            openBatch = batch;
+            enqueue(batch);
+        }
+    }
+
+
+    /**
+     * Queue an operation, to be applied after everything queued before it.
+     */
+    void add(IndexOperation op) throws InterruptedException {
+        synchronized (batchLock) {
+            // later entry operations must not jump ahead of this one
+            openBatch = null;
+            enqueue(new Task(null, op));
+        }
+    }
+
+
+    /**
+     * Queue an operation and wait until it has been applied and committed.
+     *
+     * @throws IllegalStateException if the worker stopped before applying it
+     */
+    void execute(IndexOperation op) throws InterruptedException {
+        Task task;
+        synchronized (batchLock) {
+            openBatch = null;
+            task = new Task(null, op);
+            task.done = new CountDownLatch(1);
+            enqueue(task);
+        }
+        task.done.await();
+        if (task.abandoned) {
+            throw new IllegalStateException("Index writer stopped before applying operation");
+        }
+    }
+
+
+    /**
+     * Wait until everything queued so far has been applied and committed.
+     */
+    void flush() throws InterruptedException {
+        execute(null);
+    }
+
+
+    /**
+     * Queue depth, lag and throughput metrics.
+     */
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("queued", queued.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("applied", applied.get());
+        stats.put("failed", failed.get());
+        stats.put("commits", commits.get());
+        stats.put("refreshes", refreshes.get());
+        stats.put("depth", queue.size());
+        stats.put("lag", getLag());
+        return stats;
+    }
+
+
+    /**
+     * Age in millis of the oldest task waiting in the queue, or of the last
+     * task applied if the queue is empty.
+     */
+    long getLag() {
+        Task head = queue.peek();
+        if (head != null) {
+            return System.currentTimeMillis() - head.created;
+        }
+        return lastLag;
+    }
+
+
+    /**
+     * Commit changes made by the applied operations.
+     */
+    protected void commit() {
+        manager.commit();
+    }
+
+
+    /**
+     * Make changes made by the applied operations visible to searches.
+     */
+    protected void refresh() {
+        manager.refreshSearcher();
+    }
+
+
+    // must hold batchLock, so the queue order is the order of the calls
+    private void enqueue(Task task) throws InterruptedException {
+        if (stopped) {
+            throw new IllegalStateException("Index writer is not running");
+        }
+        queued.incrementAndGet();
+        queue.put(task);
+    }
+
+
+    private void work() {
+        try {
+            applyTasks();
+        } catch (Throwable t) {
+            log.error("Index writer failed, stopping", t);
+        } finally {
+            // release everyone waiting for tasks which will never be applied,
+            // first without the lock so that blocked callers get room, then
+            // with it so that nothing can be queued after the last drain
+            stopped = true;
+            if (current != null && current.done != null) {
+                current.abandoned = true;
+                current.done.countDown();
+            }
+            abandonQueuedTasks();
+            synchronized (batchLock) {
+                openBatch = null;
+                abandonQueuedTasks();
+            }
+        }
+    }
+
+
+    private void abandonQueuedTasks() {
+        Task task;
+        while ((task = queue.poll()) != null) {
+            if (task.done != null) {
+                task.abandoned = true;
+                task.done.countDown();
+            }
+        }
+    }
+
+
+    private void applyTasks() {
+        log.debug("Index writer started");
+        while (true) {
+            Task task;
+            try {
+                task = queue.poll(Math.min(commitInterval, refreshInterval),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // only the stop marker stops the writer
+                log.warn("Index writer interrupted, ignoring");
+                continue;
+            }
+
+            current = task;
+            if (task == null) {
+                // idle, make sure nothing stays unseen or uncommitted
+                refreshIfNeeded(true);
+                commitIfNeeded(true);
+                continue;
+            }
+
+            // a task with nothing to do is the stop marker
+            if (task.op == null && task.entries == null && task.done == null) {
+                refreshIfNeeded(true);
+                commitIfNeeded(true);
+                break;
+            }
+
+            if (task.entries != null) {
+                // stop the batch taking new operations before applying it
+                synchronized (batchLock) {
+                    if (openBatch == task) {
+                        openBatch = null;
+                    }
+                }
+            }
+
+            for (IndexOperation op : task.getOperations()) {
+                try {
+                    op.run();
+                    applied.incrementAndGet();
+                } catch (Throwable e) {
+                    failed.incrementAndGet();
+                    log.error("Error applying index operation "
+                            + op.getClass().getName(), e);
+                }
+                uncommitted++;
+                unrefreshed++;
+            }
+            lastLag = System.currentTimeMillis() - task.created;
+
+            boolean force = task.done != null || queue.isEmpty();
+            refreshIfNeeded(force);
+            commitIfNeeded(force);
+
+            if (task.done != null) {
+                task.done.countDown();
+            }
+            current = null;
+        }
+        log.debug("Index writer stopped");
+    }
+
+
+    private void commitIfNeeded(boolean force) {
+        long now = System.currentTimeMillis();
+        if (uncommitted > 0 && (force || uncommitted >= batchSize
+                || now - lastCommit >= commitInterval)) {
+            try {
+                commit();
+                commits.incrementAndGet();
+            } catch (Throwable e) {
+                log.error("Error committing index changes", e);
+            }
+            uncommitted = 0;
+            lastCommit = now;
+        }
+    }
+
+
+    private void refreshIfNeeded(boolean force) {
+        long now = System.currentTimeMillis();
+        if (unrefreshed > 0 && (force || now - lastRefresh >= refreshInterval)) {
+            try {
+                refresh();
+                refreshes.incrementAndGet();
+            } catch (Throwable e) {
+                log.error("Error refreshing index searcher", e);
+            }
+            unrefreshed = 0;
+            lastRefresh = now;
+        }
+    }
+
+
+    /**
+     * Either a single operation or a batch of entry operations.
+     */
+    private static class Task {
+
+        private final Map<String, IndexOperation> entries;
+        private final IndexOperation op;
+        private final long created = System.currentTimeMillis();
+        private CountDownLatch done = null;
+        private volatile boolean abandoned = false;
+
+        Task(Map<String, IndexOperation> entries, IndexOperation op) {
+            this.entries = entries;
+            this.op = op;
+        }
+
+        Collection<IndexOperation> getOperations() {
+            if (entries != null) {
+                return new ArrayList<IndexOperation>(entries.values());
+            } else if (op != null) {
+                return Collections.singletonList(op);
+            }
+            return Collections.emptyList();
+        }
+    }
+
+}
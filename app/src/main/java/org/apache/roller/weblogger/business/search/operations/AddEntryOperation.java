@@ -23,7 +23,9 @@ import java.io.IOException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.search.FieldConstants;
 import org.apache.roller.weblogger.business.search.IndexManagerImpl;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
@@ -71,10 +73,17 @@ public class AddEntryOperation extends WriteToIndexOperation {
             mLogger.error("Error getting weblogentry object", ex);
             return;
         }
+        if (this.data == null) {
+            // removed since this operation was queued
+            return;
+        }
         
         try {
             if (writer != null) {
-                writer.addDocument(getDocument(data));
+                // replace rather than add, in case an earlier operation on
+                // this entry was superseded before it was applied
+                Term term = new Term(FieldConstants.ID, data.getId());
+                writer.updateDocument(term, getDocument(data));
             }
         } catch (IOException e) {
             mLogger.error("Problems adding doc to index", e);
@@ -18,18 +18,15 @@
 /* Created on Jul 16, 2003 */
 package org.apache.roller.weblogger.business.search.operations;
 
-import java.io.IOException;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.roller.weblogger.business.search.FieldConstants;
 import org.apache.roller.weblogger.business.search.IndexManagerImpl;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -162,38 +159,19 @@ public abstract class IndexOperation implements Runnable {
     /**
      * Begin writing.
      * 
-     * @return the index writer
+     * @return the index manager's shared index writer
      */
     protected IndexWriter beginWriting() {
-        try {
-
-            // Limit to 1000 tokens.
-            LimitTokenCountAnalyzer analyzer = new LimitTokenCountAnalyzer(
-                    IndexManagerImpl.getAnalyzer(), 1000);
-
-            IndexWriterConfig config = new IndexWriterConfig(
-                    FieldConstants.LUCENE_VERSION, analyzer);
-
-            writer = new IndexWriter(manager.getIndexDirectory(), config);
-
-        } catch (IOException e) {
-            mLogger.error("ERROR creating writer", e);
-        }
-
+        writer = manager.getIndexWriter();
         return writer;
     }
 
     /**
-     * End writing.
+     * End writing.  The shared writer stays open, changes are committed by
+     * the index manager once the operation has been applied.
      */
     protected void endWriting() {
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                mLogger.error("ERROR closing writer", e);
-            }
-        }
+        writer = null;
     }
 
     /**
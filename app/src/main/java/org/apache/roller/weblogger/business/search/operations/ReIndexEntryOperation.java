@@ -78,6 +78,10 @@ public class ReIndexEntryOperation extends WriteToIndexOperation {
             mLogger.error("Error getting weblogentry object", ex);
             return;
         }
+        if (this.data == null) {
+            // removed since this operation was queued
+            return;
+        }
 
         IndexWriter writer = beginWriting();
         try {
@@ -33,14 +33,12 @@ public abstract class ReadFromIndexOperation extends IndexOperation {
             ReadFromIndexOperation.class);
     
     public final void run() {
+        // searchers see a consistent point in time view of the index, so
+        // reads don't need to lock out writes
         try {
-            manager.getReadWriteLock().readLock().lock();
             doRun();
-
         } catch (Exception e) {
-            mLogger.info("Error acquiring read lock on index", e);
-        } finally {
-            manager.getReadWriteLock().readLock().unlock();
+            mLogger.info("Error reading from index", e);
         }
     }
     
@@ -18,7 +18,6 @@
 /* Created on Jul 16, 2003 */
 package org.apache.roller.weblogger.business.search.operations;
 
-import java.text.MessageFormat;
 import java.util.Date;
 import java.util.List;
 
@@ -31,16 +30,24 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.search.FieldConstants;
+import org.apache.roller.weblogger.business.search.IndexFeeder;
 import org.apache.roller.weblogger.business.search.IndexManagerImpl;
 import org.apache.roller.weblogger.business.search.IndexUtil;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
-import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
-import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 
 /**
  * An index operation that rebuilds a given users index (or all indexes).
  * 
+ * Entries are read a chunk at a time in id order, and the database session
+ * is released after each chunk so that only one chunk of entries is ever in
+ * memory.  Documents are built on this thread, since the entries belong to
+ * its database session, and analyzed by a pool of feeder threads.  The index
+ * is committed after each chunk, and when rebuilding the whole site the last
+ * committed entry id is recorded so that the rebuild can be resumed from that
+ * point if the server goes down before it finishes.
+ * 
  * @author Mindaugas Idzelis (min@idzelis.com)
  */
 public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
@@ -56,6 +63,7 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
 
     private Weblog website;
     private Weblogger roller;
+    private String resumeAfterId;
 
     // ~ Constructors
     // ===========================================================
@@ -68,9 +76,24 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
      */
     public RebuildWebsiteIndexOperation(Weblogger roller, IndexManagerImpl mgr,
             Weblog website) {
+        this(roller, mgr, website, null);
+    }
+
+    /**
+     * Create a new operation that will continue an interrupted rebuild.
+     * 
+     * @param website
+     *            The website to rebuild the index for, or null for all users.
+     * @param resumeAfterId
+     *            Id of the last entry indexed by the interrupted rebuild, or
+     *            null to start from scratch.
+     */
+    public RebuildWebsiteIndexOperation(Weblogger roller, IndexManagerImpl mgr,
+            Weblog website, String resumeAfterId) {
         super(mgr);
         this.roller = roller;
         this.website = website;
+        this.resumeAfterId = resumeAfterId;
     }
 
     // ~ Methods
@@ -96,48 +119,84 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
             mLogger.debug("Reindexining entire site");
         }
 
+        int chunkSize = WebloggerConfig.getIntProperty(
+                "search.index.rebuild.chunkSize", 500);
+        int threads = WebloggerConfig.getIntProperty(
+                "search.index.rebuild.threads",
+                Runtime.getRuntime().availableProcessors());
+
         IndexWriter writer = beginWriting();
+        IndexFeeder feeder = null;
+        long indexed = 0;
 
         try {
             if (writer != null) {
 
-                // Delete Doc
-                Term tWebsite = null;
-                if (website != null) {
-                    tWebsite = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE,
-                            website.getHandle());
-                }
-                if (tWebsite != null) {
-                    writer.deleteDocuments(tWebsite);
-                } else {
-                    Term all = IndexUtil.getTerm(FieldConstants.CONSTANT,
-                            FieldConstants.CONSTANT_V);
-                    writer.deleteDocuments(all);
+                String lastId = resumeAfterId;
+                if (lastId == null) {
+                    // Delete Doc
+                    if (website != null) {
+                        Term tWebsite = IndexUtil.getTerm(
+                                FieldConstants.WEBSITE_HANDLE, website.getHandle());
+                        writer.deleteDocuments(tWebsite);
+                    } else {
+                        writer.deleteAll();
+                    }
                 }
 
                 // Add Doc
                 WeblogEntryManager weblogManager = roller
                         .getWeblogEntryManager();
-                WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-                wesc.setWeblog(website);
-                wesc.setStatus(PubStatus.PUBLISHED);
-                List<WeblogEntry> entries = weblogManager.getWeblogEntries(wesc);
-
-                mLogger.debug("Entries to index: " + entries.size());
-
-                for (WeblogEntry entry : entries) {
-                    writer.addDocument(getDocument(entry));
-                    mLogger.debug(MessageFormat.format(
-                            "Indexed entry {0}: {1}",
-                            entry.getPubTime(), entry.getAnchor()));
+                feeder = new IndexFeeder(writer, threads, chunkSize);
+
+                while (true) {
+                    List<WeblogEntry> entries = weblogManager
+                            .getPublishedWeblogEntriesAfter(website, lastId, chunkSize);
+                    if (entries.isEmpty()) {
+                        break;
+                    }
+
+                    for (WeblogEntry entry : entries) {
+                        // when resuming, entries after the checkpoint may
+                        // have been indexed since, so replace rather than add
+                        Term term = (resumeAfterId != null)
+                                ? new Term(FieldConstants.ID, entry.getId()) : null;
+                        feeder.add(term, getDocument(entry));
+                    }
+                    lastId = entries.get(entries.size() - 1).getId();
+                    indexed += entries.size();
+
+                    // release the database connection and the entries we
+                    // just loaded before moving on to the next chunk
+                    roller.release();
+
+                    feeder.await();
+                    writer.commit();
+                    if (website == null) {
+                        manager.setRebuildCheckpoint(lastId);
+                    }
+
+                    double secs = (System.currentTimeMillis() - start.getTime())
+                            / (double) RollerConstants.SEC_IN_MS;
+                    mLogger.info("Rebuilding index: " + indexed
+                            + " entries indexed (" + Math.round(indexed / Math.max(secs, 0.001))
+                            + " entries/sec), last entry " + lastId);
+
+                    if (entries.size() < chunkSize) {
+                        break;
+                    }
                 }
 
-                // release the database connection
-                roller.release();
+                if (website == null) {
+                    manager.setRebuildCheckpoint(null);
+                }
             }
         } catch (Exception e) {
             mLogger.error("ERROR adding/deleting doc to index", e);
         } finally {
+            if (feeder != null) {
+                feeder.close();
+            }
             endWriting();
             if (roller != null) {
                 roller.release();
@@ -149,7 +208,7 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
 
         if (website == null) {
             mLogger.info("Completed rebuilding index for all users in '"
-                    + length + "' secs");
+                    + length + "' secs, " + indexed + " entries indexed");
         } else {
             mLogger.info("Completed rebuilding index for website handle: '"
                     + website.getHandle() + "' in '" + length + "' seconds");
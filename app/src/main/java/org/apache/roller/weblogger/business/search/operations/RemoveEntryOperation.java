@@ -24,8 +24,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
-import org.apache.roller.weblogger.WebloggerException;
-import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.search.FieldConstants;
 import org.apache.roller.weblogger.business.search.IndexManagerImpl;
@@ -47,7 +45,7 @@ public class RemoveEntryOperation extends WriteToIndexOperation {
     // ~ Instance fields
     // ========================================================
 
-    private WeblogEntry data;
+    private String entryId;
     private Weblogger roller;
 
     // ~ Constructors
@@ -57,7 +55,7 @@ public class RemoveEntryOperation extends WriteToIndexOperation {
             WeblogEntry data) {
         super(mgr);
         this.roller = roller;
-        this.data = data;
+        this.entryId = data.getId();
     }
 
     // ~ Methods
@@ -65,21 +63,12 @@ public class RemoveEntryOperation extends WriteToIndexOperation {
 
     public void doRun() {
 
-        // since this operation can be run on a separate thread we must treat
-        // the weblog object passed in as a detached object which is proned to
-        // lazy initialization problems, so requery for the object now
-        try {
-            WeblogEntryManager wMgr = roller.getWeblogEntryManager();
-            this.data = wMgr.getWeblogEntry(this.data.getId());
-        } catch (WebloggerException ex) {
-            mLogger.error("Error getting weblogentry object", ex);
-            return;
-        }
-
+        // only the id is needed, the entry may already be gone from the
+        // database by the time this operation is applied
         IndexWriter writer = beginWriting();
         try {
             if (writer != null) {
-                Term term = new Term(FieldConstants.ID, data.getId());
+                Term term = new Term(FieldConstants.ID, entryId);
                 writer.deleteDocuments(term);
             }
         } catch (IOException e) {
@@ -22,6 +22,8 @@ import java.io.IOException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
@@ -30,14 +32,16 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopDocs;
 import org.apache.roller.weblogger.business.search.FieldConstants;
 import org.apache.roller.weblogger.business.search.IndexManager;
 import org.apache.roller.weblogger.business.search.IndexManagerImpl;
 import org.apache.roller.weblogger.business.search.IndexUtil;
+import org.apache.roller.weblogger.util.cache.Cache;
 
 /**
  * An operation that searches the index.
@@ -59,11 +63,19 @@ public class SearchOperation extends ReadFromIndexOperation {
     private static Sort SORTER = new Sort(new SortField(
             FieldConstants.PUBLISHED, SortField.Type.STRING, true));
 
+    private static final int DEFAULT_LIMIT = 500;
+
+    // analyzers are thread safe, so one is shared by all query parsers
+    private static final Analyzer ANALYZER = IndexManagerImpl.getAnalyzer();
+
     // ~ Instance fields
     // ========================================================
 
     private IndexSearcher searcher;
-    private TopFieldDocs searchresults;
+    private ScoreDoc[] hits;
+    private int totalHits = -1;
+    private int offset = 0;
+    private int limit = DEFAULT_LIMIT;
 
     private String term;
     private String websiteHandle;
@@ -90,70 +102,197 @@ public class SearchOperation extends ReadFromIndexOperation {
         this.term = term;
     }
 
+    /**
+     * Sets the index of the first hit to return, for paging through results.
+     */
+    public void setOffset(int offset) {
+        this.offset = Math.max(0, offset);
+    }
+
+    /**
+     * Sets the max number of hits to return.
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
     /*
      * (non-Javadoc)
      * 
      * @see java.lang.Runnable#run()
      */
     public void doRun() {
-        final int docLimit = 500;
-        searchresults = null;
-        searcher = null;
+        hits = null;
+        totalHits = -1;
+        release();
 
         try {
-            IndexReader reader = manager.getSharedIndexReader();
-            searcher = new IndexSearcher(reader);
+            searcher = manager.acquireSearcher();
+            if (searcher == null) {
+                parseError = "Search index not available";
+                return;
+            }
+
+            // pages are only valid for the view of the index they came from
+            String pageKey = getPageKey(getIndexVersion(searcher));
+
+            ResultPage page = getCachedPage(pageKey, offset, limit);
+            if (page == null) {
+                Query query = getQuery();
+                page = searchPage(pageKey, query);
+                putCachedPage(pageKey, offset, limit, page);
+            } else {
+                mLogger.debug("HIT " + pageKey);
+            }
+
+            hits = page.hits;
+            totalHits = page.totalHits;
+
+        } catch (IOException e) {
+            mLogger.error("Error searching index", e);
+            parseError = e.getMessage();
 
+        } catch (ParseException e) {
+            // who cares?
+            parseError = e.getMessage();
+        }
+        // the searcher stays acquired so that hits can be loaded, until
+        // the caller calls release()
+    }
+
+    /**
+     * Build the full query, reusing the parsed form of the search term.
+     */
+    private Query getQuery() throws ParseException {
+
+        Query query = null;
+        Cache queryCache = manager.getSearchQueryCache();
+        if (queryCache != null) {
+            query = (Query) queryCache.get(term);
+        }
+
+        if (query == null) {
             MultiFieldQueryParser multiParser = new MultiFieldQueryParser(
-                    FieldConstants.LUCENE_VERSION, SEARCH_FIELDS,
-                    IndexManagerImpl.getAnalyzer());
+                    FieldConstants.LUCENE_VERSION, SEARCH_FIELDS, ANALYZER);
 
             // Make it an AND by default. Comment this out for an or (default)
             multiParser.setDefaultOperator(MultiFieldQueryParser.Operator.AND);
 
             // Create a query object out of our term
-            Query query = multiParser.parse(term);
-
-            Term tUsername = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE,
-                    websiteHandle);
+            query = multiParser.parse(term);
 
-            if (tUsername != null) {
-                BooleanQuery bQuery = new BooleanQuery();
-                bQuery.add(query, BooleanClause.Occur.MUST);
-                bQuery.add(new TermQuery(tUsername), BooleanClause.Occur.MUST);
-                query = bQuery;
+            // parsed queries are never modified, so they can be shared
+            if (queryCache != null) {
+                queryCache.put(term, query);
             }
+        }
 
-            if (category != null) {
-                Term tCategory = new Term(FieldConstants.CATEGORY, category.toLowerCase());
-                BooleanQuery bQuery = new BooleanQuery();
-                bQuery.add(query, BooleanClause.Occur.MUST);
-                bQuery.add(new TermQuery(tCategory), BooleanClause.Occur.MUST);
-                query = bQuery;
-            }
+        Term tUsername = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE,
+                websiteHandle);
 
-            Term tLocale = IndexUtil.getTerm(FieldConstants.LOCALE,
-                    locale);
+        if (tUsername != null) {
+            BooleanQuery bQuery = new BooleanQuery();
+            bQuery.add(query, BooleanClause.Occur.MUST);
+            bQuery.add(new TermQuery(tUsername), BooleanClause.Occur.MUST);
+            query = bQuery;
+        }
 
-            if (tLocale != null) {
-                BooleanQuery bQuery = new BooleanQuery();
-                bQuery.add(query, BooleanClause.Occur.MUST);
-                bQuery.add(new TermQuery(tLocale), BooleanClause.Occur.MUST);
-                query = bQuery;
+        if (category != null) {
+            Term tCategory = new Term(FieldConstants.CATEGORY, category.toLowerCase());
+            BooleanQuery bQuery = new BooleanQuery();
+            bQuery.add(query, BooleanClause.Occur.MUST);
+            bQuery.add(new TermQuery(tCategory), BooleanClause.Occur.MUST);
+            query = bQuery;
+        }
+
+        Term tLocale = IndexUtil.getTerm(FieldConstants.LOCALE,
+                locale);
+
+        if (tLocale != null) {
+            BooleanQuery bQuery = new BooleanQuery();
+            bQuery.add(query, BooleanClause.Occur.MUST);
+            bQuery.add(new TermQuery(tLocale), BooleanClause.Occur.MUST);
+            query = bQuery;
+        }
+
+        return query;
+    }
+
+    /**
+     * Search for the requested page of hits.  If the page before it is
+     * cached, search after its last hit instead of collecting every hit up to
+     * the requested offset.
+     */
+    private ResultPage searchPage(String pageKey, Query query)
+            throws IOException {
+
+        if (offset >= limit) {
+            ResultPage previous = getCachedPage(pageKey, offset - limit, limit);
+            if (previous != null && previous.hits.length == limit) {
+                TopDocs docs = searcher.searchAfter(
+                        previous.hits[limit - 1], query, null/* Filter */,
+                        limit, SORTER);
+                return new ResultPage(docs.totalHits, docs.scoreDocs);
             }
+        }
 
-            searchresults = searcher.search(query, null/* Filter */, docLimit,
-                    SORTER);
+        TopDocs docs = searcher.search(query, null/* Filter */,
+                offset + limit, SORTER);
+        ScoreDoc[] all = docs.scoreDocs;
+        ScoreDoc[] page;
+        if (offset >= all.length) {
+            page = new ScoreDoc[0];
+        } else {
+            page = new ScoreDoc[Math.min(limit, all.length - offset)];
+            System.arraycopy(all, offset, page, 0, page.length);
+        }
+        return new ResultPage(docs.totalHits, page);
+    }
 
-        } catch (IOException e) {
-            mLogger.error("Error searching index", e);
-            parseError = e.getMessage();
+    private String getPageKey(long indexVersion) {
+        // the term goes last as it is the only part that may contain '|'
+        return indexVersion + "|" + websiteHandle + "|" + category + "|"
+                + locale + "|" + term;
+    }
 
-        } catch (ParseException e) {
-            // who cares?
-            parseError = e.getMessage();
+    private ResultPage getCachedPage(String pageKey, int pageOffset, int pageLimit) {
+        Cache resultsCache = manager.getSearchResultsCache();
+        if (resultsCache == null) {
+            return null;
+        }
+        return (ResultPage) resultsCache.get(pageOffset + ":" + pageLimit + ":" + pageKey);
+    }
+
+    private void putCachedPage(String pageKey, int pageOffset, int pageLimit,
+            ResultPage page) {
+        Cache resultsCache = manager.getSearchResultsCache();
+        if (resultsCache != null) {
+            resultsCache.put(pageOffset + ":" + pageLimit + ":" + pageKey, page);
+        }
+    }
+
+    /**
+     * Version of the index view a searcher sees, which changes whenever the
+     * searcher is refreshed after the index has changed.
+     */
+    private static long getIndexVersion(IndexSearcher searcher) {
+        IndexReader reader = searcher.getIndexReader();
+        if (reader instanceof DirectoryReader) {
+            return ((DirectoryReader) reader).getVersion();
+        }
+        // can't tell, so never share pages across searchers
+        return System.identityHashCode(reader);
+    }
+
+    /**
+     * Release the searcher acquired by this search.  Documents can't be
+     * loaded from the results once this has been called.
+     */
+    public void release() {
+        if (searcher != null) {
+            manager.releaseSearcher(searcher);
+            searcher = null;
         }
-        // don't need to close the reader, since we didn't do any writing!
     }
 
     /**
@@ -176,24 +315,22 @@ public class SearchOperation extends ReadFromIndexOperation {
     }
 
     /**
-     * Gets the results.
+     * Gets the hits in the requested page of results, sorted by publication
+     * time, newest first.
      * 
-     * @return the results
+     * @return the hits, or null if the search failed
      */
-    public TopFieldDocs getResults() {
-        return searchresults;
+    public ScoreDoc[] getHits() {
+        return hits;
     }
 
     /**
-     * Gets the results count.
+     * Gets the results count, the total number of hits for the search.
      * 
-     * @return the results count
+     * @return the results count, or -1 if the search failed
      */
     public int getResultsCount() {
-        if (searchresults == null) {
-            return -1;
-        }
-        return searchresults.totalHits;
+        return totalHits;
     }
 
     /**
@@ -235,4 +372,19 @@ public class SearchOperation extends ReadFromIndexOperation {
         this.locale = locale;
     }
 
+
+    /**
+     * One page of hits and the total number of hits for the search.
+     */
+    private static class ResultPage {
+
+        private final int totalHits;
+        private final ScoreDoc[] hits;
+
+        ResultPage(int totalHits, ScoreDoc[] hits) {
+            this.totalHits = totalHits;
+            this.hits = hits;
+        }
+    }
+
 }
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.config;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
+
+
+/**
+ * An immutable copy of the runtime config properties.
+ *
+ * Lookups are plain map reads, and int values are parsed only once per
+ * snapshot.  Changes are made by creating a new snapshot with with().
+ */
+public final class RuntimeConfigSnapshot {
+
+    private static Log log = LogFactory.getLog(RuntimeConfigSnapshot.class);
+
+    private final Map<String, String> values;
+    private final long created = System.currentTimeMillis();
+
+    // parsed int values, filled in as they are asked for
+    private final ConcurrentMap<String, Integer> intValues =
+            new ConcurrentHashMap<String, Integer>();
+
+
+    private RuntimeConfigSnapshot(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+
+    /**
+     * Snapshot of the given properties.
+     */
+    public static RuntimeConfigSnapshot of(Collection<RuntimeConfigProperty> props) {
+        return new RuntimeConfigSnapshot(new HashMap<String, String>())
+                .with(props);
+    }
+
+
+    /**
+     * Copy of this snapshot with the given properties added or replaced.
+     */
+    public RuntimeConfigSnapshot with(Collection<RuntimeConfigProperty> props) {
+        Map<String, String> copy = new HashMap<String, String>(values);
+        for (RuntimeConfigProperty prop : props) {
+            copy.put(prop.getName(), prop.getValue());
+        }
+        return new RuntimeConfigSnapshot(copy);
+    }
+
+
+    /**
+     * Get a property value, or null if there is no such property.
+     */
+    public String getProperty(String name) {
+        return values.get(name);
+    }
+
+
+    /**
+     * Get a property as a boolean, false if there is no such property.
+     */
+    public boolean getBooleanProperty(String name) {
+        return Boolean.valueOf(values.get(name));
+    }
+
+
+    /**
+     * Get a property as an int, -1 if there is no such property or it is
+     * not a number.
+     */
+    public int getIntProperty(String name) {
+        Integer intval = intValues.get(name);
+        if (intval == null) {
+            intval = -1;
+            String value = values.get(name);
+            if (value != null) {
+                try {
+                    intval = Integer.parseInt(value);
+                } catch(NumberFormatException e) {
+                    log.warn("Trouble converting to int: "+name, e);
+                }
+            }
+            intValues.put(name, intval);
+        }
+        return intval;
+    }
+
+
+    /**
+     * Age of this snapshot in millis.
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - created;
+    }
+
+
+    /**
+     * All property values, keyed by name.
+     */
+    public Map<String, String> getProperties() {
+        return values;
+    }
+
+}
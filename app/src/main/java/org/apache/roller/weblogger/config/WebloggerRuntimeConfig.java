@@ -21,6 +21,9 @@ package org.apache.roller.weblogger.config;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -46,6 +49,16 @@ public final class WebloggerRuntimeConfig {
     private static String RUNTIME_CONFIG = "/org/apache/roller/weblogger/config/runtimeConfigDefs.xml";
     private static RuntimeConfigDefs configDefs = null;
     
+    // in-memory copy of the properties, and how long in millis it may be
+    // used before it is reloaded, 0 to only update it when properties are saved
+    private static volatile RuntimeConfigSnapshot snapshot = null;
+    private static final long SNAPSHOT_MAX_AGE =
+            WebloggerConfig.getIntProperty("cache.runtimeconfig.maxAge", 0) * 1000L;
+    
+    // properties saved by the transaction of each thread, not yet committed
+    private static final ThreadLocal<Map<String, RuntimeConfigProperty>> pending =
+            new ThreadLocal<Map<String, RuntimeConfigProperty>>();
+    
     // special case for our context urls
     private static String relativeContextURL = null;
     private static String absoluteContextURL = null;
@@ -63,14 +76,9 @@ public final class WebloggerRuntimeConfig {
         
         String value = null;
         
-        try {
-            PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
-            RuntimeConfigProperty prop = pmgr.getProperty(name);
-            if(prop != null) {
-                value = prop.getValue();
-            }
-        } catch(Exception e) {
-            log.warn("Trouble accessing property: "+name, e);
+        RuntimeConfigSnapshot props = getSnapshot();
+        if(props != null) {
+            value = props.getProperty(name);
         }
         
         log.debug("fetched property ["+name+"="+value+"]");
@@ -84,14 +92,9 @@ public final class WebloggerRuntimeConfig {
      **/
     public static boolean getBooleanProperty(String name) {
         
-        // get the value first, then convert
-        String value = WebloggerRuntimeConfig.getProperty(name);
+        RuntimeConfigSnapshot props = getSnapshot();
         
-        if (value == null) {
-            return false;
-        }
-
-        return Boolean.valueOf(value);
+        return (props != null && props.getBooleanProperty(name));
     }
     
     
@@ -100,21 +103,100 @@ public final class WebloggerRuntimeConfig {
      **/
     public static int getIntProperty(String name) {
         
-        // get the value first, then convert
-        String value = WebloggerRuntimeConfig.getProperty(name);
+        RuntimeConfigSnapshot props = getSnapshot();
+        
+        return (props != null) ? props.getIntProperty(name) : -1;
+    }
+    
+    
+    /**
+     * Replace the in-memory copy of the properties, called by the
+     * PropertiesManager once it has loaded all of them.
+     */
+    public static synchronized void setProperties(Collection<RuntimeConfigProperty> props) {
+        snapshot = RuntimeConfigSnapshot.of(props);
+    }
+    
+    
+    /**
+     * Update the in-memory copy of the properties once the transaction of
+     * the current thread commits, called by the PropertiesManager whenever
+     * properties are saved.  Saved values which are rolled back never show.
+     */
+    public static void updatePropertiesOnCommit(Collection<RuntimeConfigProperty> props) {
+        
+        Map<String, RuntimeConfigProperty> saved = pending.get();
+        if(saved == null) {
+            saved = new LinkedHashMap<String, RuntimeConfigProperty>();
+            pending.set(saved);
+        }
+        for(RuntimeConfigProperty prop : props) {
+            saved.put(prop.getName(), prop);
+        }
+    }
+    
+    
+    /**
+     * The transaction of the current thread committed, update the in-memory
+     * copy with the properties it saved.
+     */
+    public static void committed() {
+        
+        Map<String, RuntimeConfigProperty> saved = pending.get();
+        if(saved != null) {
+            pending.remove();
+            updateProperties(saved.values());
+        }
+    }
+    
+    
+    /**
+     * The transaction of the current thread rolled back, nothing changed.
+     */
+    public static void rolledBack() {
+        pending.remove();
+    }
+    
+    
+    private static synchronized void updateProperties(Collection<RuntimeConfigProperty> props) {
         
-        if (value == null) {
-            return -1;
+        // with no copy yet, the next lookup loads all properties anyway
+        if(snapshot != null) {
+            snapshot = snapshot.with(props);
+        }
+    }
+    
+    
+    /**
+     * Get the in-memory copy of the properties, loading it from the
+     * PropertiesManager if there is none yet or it is older than maxAge.
+     */
+    private static RuntimeConfigSnapshot getSnapshot() {
+        
+        RuntimeConfigSnapshot props = snapshot;
+        if(props == null || (SNAPSHOT_MAX_AGE > 0 && props.getAge() > SNAPSHOT_MAX_AGE)) {
+            props = loadSnapshot(props);
+        }
+        return props;
+    }
+    
+    
+    private static synchronized RuntimeConfigSnapshot loadSnapshot(RuntimeConfigSnapshot stale) {
+        
+        // somebody else got here first
+        if(snapshot != stale) {
+            return snapshot;
         }
         
-        int intval = -1;
         try {
-            intval = Integer.parseInt(value);
+            PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
+            snapshot = RuntimeConfigSnapshot.of(pmgr.getProperties().values());
+            log.debug("loaded runtime config properties");
         } catch(Exception e) {
-            log.warn("Trouble converting to int: "+name, e);
+            log.warn("Trouble accessing runtime config properties", e);
         }
         
-        return intval;
+        return snapshot;
     }
     
     
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.planet.business;
+
+import java.util.Date;
+import java.util.Map;
+import javax.persistence.PersistenceException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.RollerException;
+import org.apache.roller.planet.business.PlanetManager;
+import org.apache.roller.planet.pojos.Subscription;
+import org.apache.roller.planet.pojos.SubscriptionEntry;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.plugins.PluginManager;
+import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPlugin;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+
+
+/**
+ * Keeps the planet subscriptions of local weblogs in sync as their entries
+ * are saved and removed.
+ *
+ * Local subscriptions have feed urls of the style ... weblogger:<blog handle>.
+ * Instead of the feed updater pulling and rendering the latest entries of a
+ * weblog again every time the weblog changes, only the entry which changed
+ * is written to the subscription.  A subscription which was up to date
+ * before the change is marked as up to date after it too, so the next
+ * refresh skips it.  Anything else changing the weblog, like a change of
+ * settings, still leads to a full pull on the next refresh.
+ *
+ * Planet entries of local weblogs carry the id of their weblog entry as guid,
+ * so they are still matched when the permalink of an entry changes.
+ *
+ * Syncing shares the transaction of the entry being saved, so database
+ * errors fail the save along with it.  An entry which can't be rendered is
+ * skipped, without changing anything.
+ */
+@com.google.inject.Singleton
+public class LocalSubscriptionSync {
+
+    private static Log log = LogFactory.getLog(LocalSubscriptionSync.class);
+
+    /** Prefix of the feed urls of local subscriptions. */
+    public static final String FEED_PREFIX = "weblogger:";
+
+    private final Weblogger roller;
+    private final boolean enabled;
+
+
+    @com.google.inject.Inject
+    public LocalSubscriptionSync(Weblogger roller) {
+        this(roller, WebloggerConfig.getBooleanProperty("planet.aggregator.enabled"));
+    }
+
+
+    public LocalSubscriptionSync(Weblogger roller, boolean enabled) {
+        this.roller = roller;
+        this.enabled = enabled;
+    }
+
+
+    /**
+     * Update the local subscription of a weblog after one of its entries was
+     * saved.  Published entries are added or updated, others removed.
+     *
+     * @param entry          the saved entry
+     * @param weblogModified last modified time of the weblog before the save
+     */
+    public void entrySaved(WeblogEntry entry, Date weblogModified)
+            throws WebloggerException {
+
+        Subscription sub = getSubscription(entry.getWebsite());
+        if (sub == null) {
+            return;
+        }
+
+        // render the entry before changing anything, so a failing plugin
+        // only skips the sync and the next refresh does a full pull
+        SubscriptionEntry fresh = null;
+        if (entry.isPublished()) {
+            try {
+                fresh = buildEntry(entry, roller.getPluginManager(),
+                        roller.getPluginManager().getWeblogEntryPlugins(entry.getWebsite()));
+            } catch (PersistenceException ex) {
+                throw ex;
+            } catch (RuntimeException ex) {
+                log.error("Error rendering entry, local subscription not synced - "
+                        + sub.getFeedURL(), ex);
+                return;
+            }
+        }
+
+        SubscriptionEntry existing = getEntry(sub, entry);
+        if (fresh != null) {
+            if (existing != null) {
+                // entries are hashed by permalink, so take it out of the set
+                sub.getEntries().remove(existing);
+                existing.setGuid(fresh.getGuid());
+                existing.setPermalink(fresh.getPermalink());
+                existing.setTitle(fresh.getTitle());
+                existing.setAuthor(fresh.getAuthor());
+                existing.setPubTime(fresh.getPubTime());
+                existing.setText(fresh.getText());
+                existing.setCategoriesString(fresh.getCategoriesString());
+                sub.getEntries().add(existing);
+            } else {
+                sub.addEntry(fresh);
+                trimEntries(sub);
+            }
+            log.debug("Synced entry to local subscription - " + sub.getFeedURL());
+
+        } else if (existing != null) {
+            removeEntry(sub, existing);
+        }
+
+        saveSubscription(sub, entry.getWebsite(), weblogModified);
+    }
+
+
+    /**
+     * Update the local subscription of a weblog after one of its entries was
+     * removed.
+     *
+     * @param entry          the removed entry
+     * @param weblogModified last modified time of the weblog before the removal
+     */
+    public void entryRemoved(WeblogEntry entry, Date weblogModified)
+            throws WebloggerException {
+
+        Subscription sub = getSubscription(entry.getWebsite());
+        if (sub == null) {
+            return;
+        }
+
+        SubscriptionEntry existing = getEntry(sub, entry);
+        if (existing != null) {
+            removeEntry(sub, existing);
+        }
+
+        saveSubscription(sub, entry.getWebsite(), weblogModified);
+    }
+
+
+    /**
+     * Build a planet entry from a weblog entry, rendered with the given
+     * entry plugins.
+     */
+    public static SubscriptionEntry buildEntry(WeblogEntry rollerEntry,
+            PluginManager ppmgr, Map<String, WeblogEntryPlugin> plugins) {
+
+        SubscriptionEntry entry = new SubscriptionEntry();
+        String content;
+        if (!StringUtils.isEmpty(rollerEntry.getText())) {
+            content = rollerEntry.getText();
+        } else {
+            content = rollerEntry.getSummary();
+        }
+        content = ppmgr.applyWeblogEntryPlugins(plugins, rollerEntry, content);
+
+        entry.setAuthor(rollerEntry.getCreator().getScreenName());
+        entry.setTitle(rollerEntry.getTitle());
+        entry.setPubTime(rollerEntry.getPubTime());
+        entry.setText(content);
+        entry.setGuid(FEED_PREFIX + rollerEntry.getId());
+        entry.setPermalink(rollerEntry.getPermalink());
+        entry.setCategoriesString(rollerEntry.getCategory().getName());
+
+        return entry;
+    }
+
+
+    // the local subscription of a weblog, null if there is none
+    private Subscription getSubscription(Weblog weblog) throws WebloggerException {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            return roller.getPlanetManager().getSubscription(FEED_PREFIX + weblog.getHandle());
+        } catch (RollerException ex) {
+            throw new WebloggerException("Error looking up local subscription - "
+                    + weblog.getHandle(), ex);
+        }
+    }
+
+
+    // the planet entry of a weblog entry, by guid or else by the permalink
+    // of entries pulled before they had one
+    private SubscriptionEntry getEntry(Subscription sub, WeblogEntry rollerEntry) {
+        String guid = FEED_PREFIX + rollerEntry.getId();
+        SubscriptionEntry byPermalink = null;
+        for (SubscriptionEntry entry : sub.getEntries()) {
+            if (guid.equals(entry.getGuid())) {
+                return entry;
+            }
+            if (entry.getGuid() == null
+                    && entry.getPermalink().equals(rollerEntry.getPermalink())) {
+                byPermalink = entry;
+            }
+        }
+        return byPermalink;
+    }
+
+
+    private void removeEntry(Subscription sub, SubscriptionEntry entry)
+            throws WebloggerException {
+        sub.getEntries().remove(entry);
+        try {
+            roller.getPlanetManager().deleteEntry(entry);
+        } catch (RollerException ex) {
+            throw new WebloggerException("Error removing local subscription entry", ex);
+        }
+        log.debug("Removed entry from local subscription - " + sub.getFeedURL());
+    }
+
+
+    // keep no more entries than a full pull of the weblog would get
+    private void trimEntries(Subscription sub) throws WebloggerException {
+        int max = WebloggerRuntimeConfig.getIntProperty("site.newsfeeds.defaultEntries");
+        while (max > 0 && sub.getEntries().size() > max) {
+            SubscriptionEntry oldest = null;
+            for (SubscriptionEntry entry : sub.getEntries()) {
+                if (oldest == null || entry.getPubTime().before(oldest.getPubTime())) {
+                    oldest = entry;
+                }
+            }
+            removeEntry(sub, oldest);
+        }
+    }
+
+
+    private void saveSubscription(Subscription sub, Weblog weblog, Date weblogModified)
+            throws WebloggerException {
+
+        // still up to date if it was before this change
+        if (sub.getLastUpdated() != null && weblogModified != null
+                && !weblogModified.after(sub.getLastUpdated())
+                && weblog.getLastModified() != null) {
+            sub.setLastUpdated(weblog.getLastModified());
+        }
+
+        try {
+            PlanetManager pmgr = roller.getPlanetManager();
+            pmgr.saveSubscription(sub);
+        } catch (RollerException ex) {
+            throw new WebloggerException("Error saving local subscription - "
+                    + sub.getFeedURL(), ex);
+        }
+    }
+
+}
@@ -21,15 +21,14 @@ package org.apache.roller.weblogger.planet.business;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.planet.business.fetcher.FetcherException;
 import org.apache.roller.planet.business.fetcher.RomeFeedFetcher;
 import org.apache.roller.planet.pojos.Subscription;
-import org.apache.roller.planet.pojos.SubscriptionEntry;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.plugins.PluginManager;
+import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPlugin;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
@@ -58,6 +57,19 @@ public class WebloggerRomeFeedFetcher extends RomeFeedFetcher {
     }
     
     
+    @Override
+    public Subscription fetchSubscription(Subscription sub)
+            throws FetcherException {
+        
+        // local feeds are checked against the last modified time of the weblog
+        if(sub != null && sub.getFeedURL() != null
+                && sub.getFeedURL().startsWith(LocalSubscriptionSync.FEED_PREFIX)) {
+            return fetchSubscription(sub.getFeedURL(), sub.getLastUpdated());
+        }
+        return super.fetchSubscription(sub);
+    }
+    
+    
     @Override
     public Subscription fetchSubscription(String feedURL, Date lastModified)
             throws FetcherException {
@@ -132,25 +144,9 @@ public class WebloggerRomeFeedFetcher extends RomeFeedFetcher {
 
             // Populate subscription object with new entries
             PluginManager ppmgr = WebloggerFactory.getWeblogger().getPluginManager();
-            Map pagePlugins = ppmgr.getWeblogEntryPlugins(localWeblog);
+            Map<String, WeblogEntryPlugin> pagePlugins = ppmgr.getWeblogEntryPlugins(localWeblog);
             for ( WeblogEntry rollerEntry : entries ) {
-                SubscriptionEntry entry = new SubscriptionEntry();
-                String content = "";
-                if (!StringUtils.isEmpty(rollerEntry.getText())) {
-                    content = rollerEntry.getText();
-                } else {
-                    content = rollerEntry.getSummary();
-                }
-                content = ppmgr.applyWeblogEntryPlugins(pagePlugins, rollerEntry, content);
-                
-                entry.setAuthor(rollerEntry.getCreator().getScreenName());
-                entry.setTitle(rollerEntry.getTitle());
-                entry.setPubTime(rollerEntry.getPubTime());
-                entry.setText(content);
-                entry.setPermalink(rollerEntry.getPermalink());
-                entry.setCategoriesString(rollerEntry.getCategory().getName());
-                
-                newSub.addEntry(entry);
+                newSub.addEntry(LocalSubscriptionSync.buildEntry(rollerEntry, ppmgr, pagePlugins));
             }
             
         } catch (WebloggerException ex) {
@@ -49,6 +49,7 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.UserManager;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.plugins.TransformedTextCache;
 import org.apache.roller.weblogger.business.plugins.entry.WeblogEntryPlugin;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
@@ -909,14 +910,14 @@ public class WeblogEntry implements Serializable {
      * Get entry text, transformed by plugins enabled for entry.
      */
     public String getTransformedText() {
-        return render(getText());
+        return render(getText(), TransformedTextCache.TEXT);
     }
 
     /**
      * Get entry summary, transformed by plugins enabled for entry.
      */
     public String getTransformedSummary() {
-        return render(getSummary());
+        return render(getSummary(), TransformedTextCache.SUMMARY);
     }
 
     /**
@@ -953,8 +954,23 @@ public class WeblogEntry implements Serializable {
     
     /**
      * Transform string based on plugins enabled for this weblog entry.
+     * Results are cached, so plugins only run again once the entry changes.
      */
-    private String render(String str) {
+    private String render(String str, String part) {
+        if (str == null) {
+            return null;
+        }
+        TransformedTextCache cache = TransformedTextCache.getInstance();
+        String ret = cache.get(this, part, str);
+        if (ret == null) {
+            ret = applyPlugins(str);
+            cache.put(this, part, str, ret);
+        }
+        return ret;
+    }
+    
+    
+    private String applyPlugins(String str) {
         String ret = str;
         mLogger.debug("Applying page plugins to string");
         Map<String, WeblogEntryPlugin> inPlugins = getWebsite().getInitializedPlugins();
@@ -53,6 +53,11 @@ public class WeblogEntrySearchCriteria {
     // Offset into results for paging
     private int offset = 0;
 
+    // Seek cursor for paging, only entries sorted after the entry with this
+    // pubTime and id are returned.  Only used when sorting by pubTime.
+    private Date afterPubTime;
+    private String afterId;
+
     private int maxResults = -1;
 
     public Weblog getWeblog() {
@@ -159,4 +164,24 @@ public class WeblogEntrySearchCriteria {
         this.maxResults = maxResults;
     }
 
+
+    public Date getAfterPubTime() {
+        return afterPubTime;
+    }
+
+    public String getAfterId() {
+        return afterId;
+    }
+
+    /**
+     * Page by seeking past the last entry of the previous page instead of
+     * skipping an offset, so that later pages cost no more than the first.
+     *
+     * @param pubTime pubTime of the last entry of the previous page
+     * @param id      id of the last entry of the previous page
+     */
+    public void setAfter(Date pubTime, String id) {
+        this.afterPubTime = pubTime;
+        this.afterId = id;
+    }
 }
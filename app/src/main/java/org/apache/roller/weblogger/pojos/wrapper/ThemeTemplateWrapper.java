@@ -77,4 +77,15 @@ public final class ThemeTemplateWrapper {
         return this.pojo.isNavbar();
     }
     
+    
+    /**
+     * this is a special method to access the original pojo.
+     * we don't really want to do this, but it's necessary
+     * because some parts of the rendering process still need the
+     * orginal pojo object.
+     */
+    public ThemeTemplate getPojo() {
+        return this.pojo;
+    }
+    
 }
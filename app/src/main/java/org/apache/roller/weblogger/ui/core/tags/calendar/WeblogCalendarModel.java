@@ -23,7 +23,6 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
@@ -34,11 +33,11 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
-import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
+import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogCalendarCache;
 import org.apache.roller.util.DateUtil;
 
 
@@ -59,6 +58,7 @@ public class WeblogCalendarModel implements CalendarModel {
     protected Date              prevMonth = null;
     protected Date              nextMonth = null;
     protected WeblogPageRequest pageRequest = null;
+    protected CalendarMonth     calendarMonth = null;
     
     
     public WeblogCalendarModel(WeblogPageRequest pRequest, String catArgument) {
@@ -101,78 +101,90 @@ public class WeblogCalendarModel implements CalendarModel {
         Date startDate = DateUtil.getStartOfMonth(month,cal);
         Date endDate = DateUtil.getEndOfMonth(month,cal);
         
-        // Determine previous non-empty month
-        // Get entries before startDate, using category restriction limit 1
-        // Use entry's date as previous month
-        try {
-            WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
-            WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-            wesc.setWeblog(weblog);
-            // since we need an entry.pubTime < startDate, but the method uses endDate
-            wesc.setEndDate(new Date(startDate.getTime()-1));
-            wesc.setCatName(cat);
-            wesc.setStatus(PubStatus.PUBLISHED);
-            wesc.setSortOrder(WeblogEntrySearchCriteria.SortOrder.DESCENDING);
-            wesc.setLocale(locale);
-            wesc.setMaxResults(1);
-            List prevEntries = mgr.getWeblogEntries(wesc);
-
-            if (prevEntries.size() > 0) {
-                WeblogEntry prevEntry = (WeblogEntry)prevEntries.get(0);
-                prevMonth = DateUtil.getStartOfMonth(new Date(prevEntry.getPubTime().getTime()),getCalendar());
-            }
-        } catch (WebloggerException e) {
-            log.error("ERROR determining previous non-empty month");
+        // Fix for ROL-840 Don't include future entries
+        Date now = new Date();
+        boolean currentMonth = endDate.after(now);
+        if (currentMonth) {
+        	endDate = now;
         }
         
-        // Determine next non-empty month
-        // Get entries after endDate, using category restriction limit 1
-        // Use entry's date as next month
-        try {
+        // calendar data for this month is cached along with the weblog's
+        // other months, until one of its entries changes
+        String key = format6chars(startDate, getCalendar()) + "|" + cat + "|" + locale
+                + (currentMonth ? "|current" : "");
+        Map<String, Object> months = WeblogCalendarCache.getInstance().getMonths(weblog);
+        calendarMonth = (months != null) ? (CalendarMonth) months.get(key) : null;
+        if (calendarMonth == null) {
+            calendarMonth = new CalendarMonth();
+            
             WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
-            WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-            wesc.setWeblog(weblog);
-            // since we need an entry.pubTime > endDate, but the method uses startDate
-            wesc.setStartDate(new Date(startDate.getTime()-1));
-            wesc.setCatName(cat);
-            wesc.setStatus(PubStatus.PUBLISHED);
-            wesc.setSortOrder(WeblogEntrySearchCriteria.SortOrder.ASCENDING);
-            wesc.setLocale(locale);
-            wesc.setMaxResults(1);
-            List nextEntries = mgr.getWeblogEntries(wesc);
-            if (nextEntries.size() > 0) {
-                WeblogEntry nextEntry = (WeblogEntry)nextEntries.get(0);
-                nextMonth = DateUtil.getStartOfMonth(new Date(nextEntry.getPubTime().getTime()),getCalendar());
+            
+            // Determine previous non-empty month
+            // Use latest pubTime before startDate as previous month
+            try {
+                Date prevPubTime = mgr.getLatestPubTime(newSearchCriteria(
+                        null, new Date(startDate.getTime()-1), cat));
+                if (prevPubTime != null) {
+                    calendarMonth.prevMonth = DateUtil.getStartOfMonth(prevPubTime, getCalendar());
+                }
+            } catch (WebloggerException e) {
+                log.error("ERROR determining previous non-empty month");
+            }
+            
+            // Determine next non-empty month
+            // Use earliest pubTime after endDate as next month, there is
+            // none as long as we're showing the current month
+            if (!currentMonth) {
+                try {
+                    Date nextPubTime = mgr.getEarliestPubTime(newSearchCriteria(
+                            new Date(endDate.getTime()+1), null, cat));
+                    if (nextPubTime != null) {
+                        calendarMonth.nextMonth = DateUtil.getStartOfMonth(nextPubTime, getCalendar());
+                    }
+                } catch (WebloggerException e) {
+                    log.error("ERROR determining next non-empty month");
+                }
+            }
+            
+            if (months != null) {
+                months.put(key, calendarMonth);
             }
-        } catch (WebloggerException e) {
-            log.error("ERROR determining next non-empty month");
-        }  
-        
-        // Fix for ROL-840 Don't include future entries
-        Date now = new Date();
-        if (endDate.after(now)) {
-        	endDate = now;
-        	nextMonth = null;
         }
+        prevMonth = calendarMonth.prevMonth;
+        nextMonth = calendarMonth.nextMonth;
         
         loadWeblogEntries(startDate, endDate, cat);
     }
     
     protected void loadWeblogEntries(Date startDate, Date endDate, String catName) {
-        try {
-            WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
-            WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-            wesc.setWeblog(weblog);
-            wesc.setStartDate(startDate);
-            wesc.setEndDate(endDate);
-            wesc.setCatName(catName);
-            wesc.setStatus(PubStatus.PUBLISHED);
-            wesc.setLocale(locale);
-            monthMap = mgr.getWeblogEntryStringMap(wesc);
-        } catch (WebloggerException e) {
-            log.error(e);
-            monthMap = new HashMap<Date, String>();
+        Map<Date, String> days = calendarMonth.days;
+        if (days == null) {
+            try {
+                // just the days with entries, the entries aren't needed
+                WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+                days = mgr.getWeblogEntryStringMap(newSearchCriteria(startDate, endDate, catName));
+                calendarMonth.days = days;
+            } catch (WebloggerException e) {
+                log.error(e);
+                days = new HashMap<Date, String>();
+            }
         }
+        monthMap = days;
+    }
+    
+    /**
+     * Criteria for the published entries of this calendar's weblog and
+     * locale within the given dates.
+     */
+    protected WeblogEntrySearchCriteria newSearchCriteria(Date startDate, Date endDate, String catName) {
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(weblog);
+        wesc.setStartDate(startDate);
+        wesc.setEndDate(endDate);
+        wesc.setCatName(catName);
+        wesc.setStatus(PubStatus.PUBLISHED);
+        wesc.setLocale(locale);
+        return wesc;
     }
 
     public void setDay(String month) throws Exception {
@@ -314,4 +326,18 @@ public class WeblogCalendarModel implements CalendarModel {
     	return url;
     }
     
+    
+    /**
+     * Calendar data for one month of a weblog, as cached in the
+     * WeblogCalendarCache.
+     */
+    protected static class CalendarMonth {
+        
+        private volatile Date prevMonth = null;
+        private volatile Date nextMonth = null;
+        
+        // days with entries, loaded when first needed
+        private volatile Map<Date, String> days = null;
+    }
+    
 }
@@ -25,9 +25,9 @@ import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 
 /**
  * Model which provides access to application config data like site
- * config properties.
+ * config properties.  Keeps no state, so one instance serves all requests.
  */
-public class ConfigModel implements Model {
+public class ConfigModel implements SharedModel {
     
     /** Template context name to be used for model */
     public String getModelName() {
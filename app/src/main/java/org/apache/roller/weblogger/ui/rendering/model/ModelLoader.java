@@ -18,7 +18,13 @@
 
 package org.apache.roller.weblogger.ui.rendering.model;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
@@ -27,11 +33,22 @@ import org.apache.roller.weblogger.util.Utilities;
 
 /**
  * Helps with model loading process.
+ *
+ * The lists of models come from a few config properties, so each list is
+ * resolved to its model classes and constructors only once and kept in a
+ * registry, after which loading models for a request costs no class lookup
+ * or string splitting.  Lists with a model that can't be resolved are not
+ * registered, so the error is reported on every load as before.
  */
 public class ModelLoader {
     
     private static Log log = LogFactory.getLog(ModelLoader.class);
     
+    // resolved model types, keyed by comma-separated list of model classes
+    private static final Map<String, List<ModelType>> registry =
+            new ConcurrentHashMap<String, List<ModelType>>();
+    
+    
     /**
      * Convenience method to load a comma-separated list of page models.
      *
@@ -42,41 +59,132 @@ public class ModelLoader {
                                    Map initData, boolean fail) 
             throws WebloggerException {
         
+        for (ModelType modelType : getModelTypes(modelsString, fail)) {
+            try {
+                Model pageModel = modelType.getModel(initData);
+                modelMap.put(pageModel.getModelName(), pageModel);
+            } catch (WebloggerException re) {
+                if(fail) {
+                    throw re;
+                } else {
+                    log.warn("Error initializing model: " + modelType.getClassName());
+                }
+            } catch (InstantiationException ie) {
+                if(fail) {
+                    throw new WebloggerException("Error instantiating model: " + modelType.getClassName(), ie);
+                } else {
+                    log.warn("Error instantiating model: " + modelType.getClassName());
+                }
+            } catch (InvocationTargetException ite) {
+                if(fail) {
+                    throw new WebloggerException("Error instantiating model: " + modelType.getClassName(), ite.getCause());
+                } else {
+                    log.warn("Error instantiating model: " + modelType.getClassName());
+                }
+            } catch (IllegalAccessException iae) {
+                if(fail) {
+                    throw new WebloggerException("Error accessing model: " + modelType.getClassName(), iae);
+                } else {
+                    log.warn("Error accessing model: " + modelType.getClassName());
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Get the model types of a comma-separated list of models, resolving
+     * them the first time the list is used.
+     */
+    private static List<ModelType> getModelTypes(String modelsString, boolean fail)
+            throws WebloggerException {
+        
+        if (modelsString == null) {
+            return Collections.emptyList();
+        }
+        
+        List<ModelType> modelTypes = registry.get(modelsString);
+        if (modelTypes != null) {
+            return modelTypes;
+        }
+        
+        modelTypes = new ArrayList<ModelType>();
+        boolean resolved = true;
         String[] models = Utilities.stringToStringArray(modelsString, ",");
         if (models != null) {
             for (String model : models) {
                 try {
-                    Class modelClass = Class.forName(model);
-                    Model pageModel = (Model) modelClass.newInstance();
-                    pageModel.init(initData);
-                    modelMap.put(pageModel.getModelName(), pageModel);
-                } catch (WebloggerException re) {
-                    if(fail) {
-                        throw re;
-                    } else {
-                        log.warn("Error initializing model: " + model);
-                    }
+                    modelTypes.add(new ModelType(model));
                 } catch (ClassNotFoundException cnfe) {
+                    resolved = false;
                     if(fail) {
                         throw new WebloggerException("Error finding model: " + model, cnfe);
                     } else {
                         log.warn("Error finding model: " + model);
                     }
-                } catch (InstantiationException ie) {
+                } catch (NoSuchMethodException nsme) {
+                    resolved = false;
                     if(fail) {
-                        throw new WebloggerException("Error instantiating model: " + model, ie);
+                        throw new WebloggerException("Error instantiating model: " + model, nsme);
                     } else {
                         log.warn("Error instantiating model: " + model);
                     }
-                } catch (IllegalAccessException iae) {
-                    if(fail) {
-                        throw new WebloggerException("Error accessing model: " + model, iae);
-                    } else {
-                        log.warn("Error accessing model: " + model);
-                    }
                 }
             }
         }
+        
+        modelTypes = Collections.unmodifiableList(modelTypes);
+        if (resolved) {
+            registry.put(modelsString, modelTypes);
+        }
+        return modelTypes;
+    }
+    
+    
+    /**
+     * A resolved model class, with the constructor used to create models
+     * and, for a shared model, the one instance of it.
+     */
+    private static class ModelType {
+        
+        private final String className;
+        private final Constructor<? extends Model> constructor;
+        private final boolean shared;
+        private volatile Model sharedModel = null;
+        
+        ModelType(String className) throws ClassNotFoundException, NoSuchMethodException {
+            Class<? extends Model> modelClass = Class.forName(className).asSubclass(Model.class);
+            this.className = className;
+            this.constructor = modelClass.getConstructor();
+            this.shared = SharedModel.class.isAssignableFrom(modelClass);
+        }
+        
+        String getClassName() {
+            return className;
+        }
+        
+        Model getModel(Map initData) throws WebloggerException,
+                InstantiationException, IllegalAccessException, InvocationTargetException {
+            
+            if (!shared) {
+                return newModel(initData);
+            }
+            
+            // a race here only initializes a shared model more than once
+            Model model = sharedModel;
+            if (model == null) {
+                model = newModel(initData);
+                sharedModel = model;
+            }
+            return model;
+        }
+        
+        private Model newModel(Map initData) throws WebloggerException,
+                InstantiationException, IllegalAccessException, InvocationTargetException {
+            Model model = constructor.newInstance();
+            model.init(initData);
+            return model;
+        }
     }
     
 }
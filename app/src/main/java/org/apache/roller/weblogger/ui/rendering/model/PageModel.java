@@ -41,6 +41,7 @@ import org.apache.roller.weblogger.ui.rendering.pagers.WeblogEntriesPermalinkPag
 import org.apache.roller.weblogger.ui.rendering.util.WeblogEntryCommentForm;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogRequest;
+import org.apache.roller.weblogger.ui.rendering.velocity.RollerVelocity;
 
 
 /**
@@ -203,6 +204,16 @@ public class PageModel implements Model {
 	}
 
 
+    /**
+     * Name under which a template of the weblog is parsed for this page,
+     * for use with #parse.  The same versioned name is used by every render
+     * path, so an edited template is never served from a stale parse.
+     */
+    public String getTemplateName(ThemeTemplateWrapper template) {
+        return RollerVelocity.getTemplateName(template.getPojo(), deviceType);
+    }
+
+
     /**
      * A map of entries representing this page. The collection is grouped by 
      * days of entries.  Each value is a list of entry objects keyed by the 
@@ -296,7 +307,8 @@ public class PageModel implements Model {
                     pageRequest.getWeblogDate(),
                     cat,
                     tags,
-                    pageRequest.getPageNum());
+                    pageRequest.getPageNum(),
+                    pageRequest.getPageAfter());
         }
     }
         
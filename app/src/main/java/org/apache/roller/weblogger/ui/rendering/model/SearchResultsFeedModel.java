@@ -31,7 +31,6 @@ import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopFieldDocs;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
@@ -144,17 +143,35 @@ public class SearchResultsFeedModel implements Model {
 			search.setCategory(feedRequest.getWeblogCategoryName());
 		}
 
+		// only fetch the requested page of hits
+		this.offset = feedRequest.getPage() * this.entryCount;
+		this.limit = this.entryCount;
+		search.setOffset(this.offset);
+		search.setLimit(this.limit);
+
 		// execute search
 		indexMgr.executeIndexOperationNow(search);
 
-		if (search.getResultsCount() > -1) {
+		// past the last page, show the first one instead
+		if (this.offset > 0 && search.getResultsCount() > 0
+				&& search.getHits().length == 0) {
+			search.release();
+			this.offset = 0;
+			search.setOffset(this.offset);
+			indexMgr.executeIndexOperationNow(search);
+		}
+
+		try {
+			if (search.getResultsCount() > -1) {
 
-			TopFieldDocs docs = search.getResults();
-			ScoreDoc[] hitsArr = docs.scoreDocs;
-			this.hits = search.getResultsCount();
+				ScoreDoc[] hitsArr = search.getHits();
+				this.hits = search.getResultsCount();
 
-			// Convert the Hits into WeblogEntryData instances.
-			convertHitsToEntries(hitsArr, search);
+				// Convert the Hits into WeblogEntryData instances.
+				convertHitsToEntries(hitsArr, search);
+			}
+		} finally {
+			search.release();
 		}
 
 		// search completed, setup pager based on results
@@ -180,18 +197,6 @@ public class SearchResultsFeedModel implements Model {
 	private void convertHitsToEntries(ScoreDoc[] hits, SearchOperation search)
 			throws WebloggerException {
 
-		// determine offset
-		this.offset = feedRequest.getPage() * this.entryCount;
-		if (this.offset >= hits.length) {
-			this.offset = 0;
-		}
-
-		// determine limit
-		this.limit = this.entryCount;
-		if (this.offset + this.limit > hits.length) {
-			this.limit = hits.length - this.offset;
-		}
-
 		try {
 			TreeSet<String> categorySet = new TreeSet<String>();
 			Weblogger roller = WebloggerFactory.getWeblogger();
@@ -201,7 +206,7 @@ public class SearchResultsFeedModel implements Model {
 			Document doc;
 			String handle;
 			Timestamp now = new Timestamp(new Date().getTime());
-			for (int i = offset; i < offset + limit; i++) {
+			for (int i = 0; i < hits.length; i++) {
 				doc = search.getSearcher().doc(hits[i].doc);
 				handle = doc.getField(FieldConstants.WEBSITE_HANDLE)
 						.stringValue();
@@ -31,7 +31,6 @@ import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopFieldDocs;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.URLStrategy;
@@ -125,23 +124,41 @@ public class SearchResultsModel extends PageModel {
 			search.setLocale(searchRequest.getLocale());
 		}
 
+		// only fetch the requested page of hits
+		this.offset = searchRequest.getPageNum() * RESULTS_PER_PAGE;
+		this.limit = RESULTS_PER_PAGE;
+		search.setOffset(this.offset);
+		search.setLimit(this.limit);
+
 		// execute search
 		indexMgr.executeIndexOperationNow(search);
 
-		if (search.getResultsCount() == -1) {
-			// this means there has been a parsing (or IO) error
-			this.errorMessage = I18nMessages.getMessages(
-					searchRequest.getLocaleInstance()).getString(
-					"error.searchProblem");
-		} else {
+		// past the last page, show the first one instead
+		if (this.offset > 0 && search.getResultsCount() > 0
+				&& search.getHits().length == 0) {
+			search.release();
+			this.offset = 0;
+			search.setOffset(this.offset);
+			indexMgr.executeIndexOperationNow(search);
+		}
+
+		try {
+			if (search.getResultsCount() == -1) {
+				// this means there has been a parsing (or IO) error
+				this.errorMessage = I18nMessages.getMessages(
+						searchRequest.getLocaleInstance()).getString(
+						"error.searchProblem");
+			} else {
 
-			TopFieldDocs docs = search.getResults();
-			ScoreDoc[] hitsArr = docs.scoreDocs;
-			this.hits = search.getResultsCount();
+				ScoreDoc[] hitsArr = search.getHits();
+				this.hits = search.getResultsCount();
 
-			// Convert the Hits into WeblogEntryData instances.
-			convertHitsToEntries(hitsArr, search);
+				// Convert the Hits into WeblogEntryData instances.
+				convertHitsToEntries(hitsArr, search);
 
+			}
+		} finally {
+			search.release();
 		}
 
 		// search completed, setup pager based on results
@@ -179,18 +196,6 @@ public class SearchResultsModel extends PageModel {
 	private void convertHitsToEntries(ScoreDoc[] hits, SearchOperation search)
 			throws WebloggerException {
 
-		// determine offset
-		this.offset = searchRequest.getPageNum() * RESULTS_PER_PAGE;
-		if (this.offset >= hits.length) {
-			this.offset = 0;
-		}
-
-		// determine limit
-		this.limit = RESULTS_PER_PAGE;
-		if (this.offset + this.limit > hits.length) {
-			this.limit = hits.length - this.offset;
-		}
-
 		try {
 			TreeSet<String> categorySet = new TreeSet<String>();
 			Weblogger roller = WebloggerFactory.getWeblogger();
@@ -200,7 +205,7 @@ public class SearchResultsModel extends PageModel {
 			Document doc;
 			String handle;
 			Timestamp now = new Timestamp(new Date().getTime());
-			for (int i = offset; i < offset + limit; i++) {
+			for (int i = 0; i < hits.length; i++) {
 				doc = search.getSearcher().doc(hits[i].doc);
 				handle = doc.getField(FieldConstants.WEBSITE_HANDLE)
 						.stringValue();
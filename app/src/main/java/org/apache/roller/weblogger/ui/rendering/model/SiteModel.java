@@ -52,6 +52,7 @@ import org.apache.roller.weblogger.ui.rendering.pagers.WeblogsPager;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogRequest;
+import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideDependencies;
 
 
 /**
@@ -67,6 +68,7 @@ public class SiteModel implements Model {
     private List tags = new ArrayList();
     private String pageLink = null;
     private int pageNum = 0;
+    private String pageAfter = null;
     
     private URLStrategy urlStrategy = null;
     
@@ -87,6 +89,7 @@ public class SiteModel implements Model {
             ThemeTemplate weblogPage = ((WeblogPageRequest)weblogRequest).getWeblogPage();
             pageLink = (weblogPage != null) ? weblogPage.getLink() : null;
             pageNum = ((WeblogPageRequest)weblogRequest).getPageNum();
+            pageAfter = ((WeblogPageRequest)weblogRequest).getPageAfter();
             tags = ((WeblogPageRequest)weblogRequest).getTags();
         } else if (weblogRequest instanceof WeblogFeedRequest) {
             this.feedRequest = (WeblogFeedRequest) weblogRequest;
@@ -112,6 +115,7 @@ public class SiteModel implements Model {
      * @param length    Max number of results to return
      */
     public Pager getWeblogEntriesPager(int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
         
         String pagerUrl;
         
@@ -133,6 +137,7 @@ public class SiteModel implements Model {
             weblogRequest.getLocale(),
             sinceDays,
             pageNum, 
+            pageAfter,
             length);
     }
     
@@ -170,6 +175,7 @@ public class SiteModel implements Model {
      * @param length      Max number of results to return
      */   
     public Pager getWeblogEntriesPager(WeblogWrapper queryWeblog, User user, String cat, int sinceDays, int length) {
+        SiteWideDependencies.recordWeblog(queryWeblog.getHandle());
         
         String pagerUrl;
         if (feedRequest != null) {
@@ -190,6 +196,7 @@ public class SiteModel implements Model {
             weblogRequest.getLocale(),
             sinceDays,
             pageNum, 
+            pageAfter,
             length);
     }    
     
@@ -201,6 +208,7 @@ public class SiteModel implements Model {
      * @param len      Max number of results to return
      */
     public Pager getCommentsPager(int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.COMMENTS);
         
         String pagerUrl;
         if (feedRequest != null) {
@@ -226,6 +234,7 @@ public class SiteModel implements Model {
     
     /* Get pager of users whose names begin with specified letter */
     public Pager getUsersByLetterPager(String letter, int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
         
         String pagerUrl;
         if (feedRequest != null) {
@@ -255,6 +264,7 @@ public class SiteModel implements Model {
     
     /** Get pager of weblogs whose handles begin with specified letter */
     public Pager getWeblogsByLetterPager(String letter, int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.WEBLOGS);
         
         String pagerUrl = urlStrategy.getWeblogPageURL(weblog, 
                 weblogRequest.getLocale(), pageLink, 
@@ -282,6 +292,7 @@ public class SiteModel implements Model {
      * names start with each letter.
      */
     public Map getUserNameLetterMap() {
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
         Map results = new HashMap();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -300,6 +311,7 @@ public class SiteModel implements Model {
      * names start with each letter.
      */
     public Map getWeblogHandleLetterMap() {
+        SiteWideDependencies.record(SiteWideDependencies.WEBLOGS);
         Map results = new HashMap();
         try {            
             results = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogHandleLetterMap();
@@ -314,6 +326,7 @@ public class SiteModel implements Model {
      * Return list of weblogs that user belongs to.
      */
     public List getUsersWeblogs(String userName) {
+        SiteWideDependencies.record(SiteWideDependencies.WEBLOGS);
         List results = new ArrayList();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -334,6 +347,7 @@ public class SiteModel implements Model {
      * Return list of users that belong to website.
      */
     public List getWeblogsUsers(String handle) {
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
         List results = new ArrayList();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -353,6 +367,7 @@ public class SiteModel implements Model {
     
     /** Get User object by username */
     public UserWrapper getUser(String username) {
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
         UserWrapper wrappedUser = null;
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -368,6 +383,7 @@ public class SiteModel implements Model {
     
     /** Get Website object by handle */
     public WeblogWrapper getWeblog(String handle) {
+        SiteWideDependencies.recordWeblog(handle);
         WeblogWrapper wrappedWebsite = null;
         try {            
             Weblog website = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogByHandle(handle);
@@ -388,6 +404,7 @@ public class SiteModel implements Model {
      * @param len      Max number of results to return
      */
     public List<WeblogWrapper> getNewWeblogs(int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.WEBLOGS);
         List<WeblogWrapper> results = new ArrayList<WeblogWrapper>();
         Calendar cal = Calendar.getInstance();
         cal.setTime(new Date());
@@ -412,6 +429,7 @@ public class SiteModel implements Model {
      * @param len      Max number of results to return
      */
     public List<UserWrapper> getNewUsers(int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
         List<UserWrapper> results = new ArrayList<UserWrapper>();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -434,6 +452,8 @@ public class SiteModel implements Model {
      */
     public List<StatCount> getHotWeblogs(int sinceDays, int length) {
         
+        SiteWideDependencies.record(SiteWideDependencies.WEBLOGS);
+        
         List<StatCount> results = new ArrayList<StatCount>();
         try {
             WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
@@ -465,6 +485,7 @@ public class SiteModel implements Model {
      * @param length   Max number of results to return
      */
     public List getMostCommentedWeblogs(int sinceDays , int length) {
+        SiteWideDependencies.record(SiteWideDependencies.COMMENTS);
         List results = new ArrayList();
         Calendar cal = Calendar.getInstance();
         cal.setTime(new Date());
@@ -489,6 +510,7 @@ public class SiteModel implements Model {
      */
     public List getMostCommentedWeblogEntries(
             List cats, int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.COMMENTS);
         List results = new ArrayList();
         Calendar cal = Calendar.getInstance();
         cal.setTime(new Date());
@@ -510,6 +532,7 @@ public class SiteModel implements Model {
      * @param length    Max number of results to return
      */
     public List<WeblogEntryWrapper> getPinnedWeblogEntries(int length) {
+        SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
         List<WeblogEntryWrapper> results = new ArrayList<WeblogEntryWrapper>();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -531,6 +554,7 @@ public class SiteModel implements Model {
      * @return
      */
     public List<TagStat> getPopularTags(int sinceDays, int length) {
+        SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
         List results = new ArrayList();
         Date startDate = null;
         if(sinceDays > 0) {
@@ -552,6 +576,7 @@ public class SiteModel implements Model {
     
     
     public long getCommentCount() {
+        SiteWideDependencies.record(SiteWideDependencies.COMMENTS);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -565,6 +590,7 @@ public class SiteModel implements Model {
     
     
     public long getEntryCount() {
+        SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -578,6 +604,7 @@ public class SiteModel implements Model {
     
     
     public long getWeblogCount() {
+        SiteWideDependencies.record(SiteWideDependencies.WEBLOGS);
         long count = 0;
         try {
             count = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogCount();            
@@ -589,6 +616,7 @@ public class SiteModel implements Model {
     
     
     public long getUserCount() {
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -59,6 +59,10 @@ public abstract class AbstractPager implements Pager {
             int nextPage = page + 1;
             Map params = new HashMap();
             params.put("page", ""+nextPage);
+            String token = getNextPageToken();
+            if (token != null) {
+                params.put(EntryPageCursor.PARAM, URLUtilities.encode(token));
+            }
             return createURL(url, params);
         }
         return null;
@@ -97,6 +101,15 @@ public abstract class AbstractPager implements Pager {
     }
     
     
+    /**
+     * Token letting the next page seek past the items of this one, or null
+     * if the next page is found by offset.
+     */
+    protected String getNextPageToken() {
+        return null;
+    }
+    
+    
     protected String createURL(String url, Map params) {
         
         return url + URLUtilities.getQueryString(params);
@@ -58,6 +58,11 @@ public abstract class AbstractWeblogEntriesPager implements WeblogEntriesPager {
     int page = 0;
     int length = 0;
     
+    // token of the entry this page starts after, and of this page's last
+    // entry, see EntryPageCursor
+    String pageAfter = null;
+    String nextPageToken = null;
+    
     
     public AbstractWeblogEntriesPager(
             URLStrategy        strat,
@@ -128,7 +133,9 @@ public abstract class AbstractWeblogEntriesPager implements WeblogEntriesPager {
     
     public String getNextLink() {
         if (hasMoreEntries()) {
-            return createURL(page, 1, weblog, locale, pageLink, entryAnchor, dateString, catName, tags);
+            return EntryPageCursor.addToURL(
+                    createURL(page, 1, weblog, locale, pageLink, entryAnchor, dateString, catName, tags),
+                    nextPageToken);
         }
         return null;
     }
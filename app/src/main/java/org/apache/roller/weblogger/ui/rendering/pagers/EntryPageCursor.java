@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.pagers;
+
+import java.util.Date;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+import org.apache.roller.weblogger.util.URLUtilities;
+
+
+/**
+ * Next page tokens for entry pagers.
+ *
+ * A token identifies the last entry of a page by its pubTime and id, in the
+ * form [pubTime millis]-[id].  It is passed back in the "after" request
+ * param, and the next page is then found by seeking past that entry instead
+ * of skipping over all the entries of the earlier pages.
+ */
+public final class EntryPageCursor {
+
+    /** Request param carrying the token. */
+    public static final String PARAM = "after";
+
+
+    private EntryPageCursor() {
+        // utility class
+    }
+
+
+    /**
+     * Token for the page following the given entry.
+     */
+    public static String toToken(WeblogEntry lastEntry) {
+        if (lastEntry == null || lastEntry.getPubTime() == null || lastEntry.getId() == null) {
+            return null;
+        }
+        return lastEntry.getPubTime().getTime() + "-" + lastEntry.getId();
+    }
+
+
+    /**
+     * Set the seek cursor of the criteria from a token.
+     *
+     * @return false if the token is missing or malformed, in which case the
+     *         caller should fall back to paging by offset
+     */
+    public static boolean apply(String token, WeblogEntrySearchCriteria wesc) {
+        if (StringUtils.isEmpty(token)) {
+            return false;
+        }
+        int dash = token.indexOf('-');
+        if (dash <= 0 || dash == token.length() - 1) {
+            return false;
+        }
+        try {
+            long pubTime = Long.parseLong(token.substring(0, dash));
+            wesc.setAfter(new Date(pubTime), token.substring(dash + 1));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Add the token to a pager url.
+     */
+    public static String addToURL(String url, String token) {
+        if (url == null || token == null) {
+            return url;
+        }
+        return url + (url.indexOf('?') == -1 ? "?" : "&")
+                + PARAM + "=" + URLUtilities.encode(token);
+    }
+
+}
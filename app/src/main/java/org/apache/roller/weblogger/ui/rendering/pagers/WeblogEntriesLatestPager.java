@@ -59,7 +59,27 @@ public class WeblogEntriesLatestPager extends AbstractWeblogEntriesPager {
             List               tags,
             int                page) {
         
+        this(strat, weblog, locale, pageLink, entryAnchor, dateString, catName, tags, page, null);
+    }
+    
+    
+    /**
+     * @param pageAfter next page token from the previous page, see EntryPageCursor
+     */
+    public WeblogEntriesLatestPager(
+            URLStrategy        strat,
+            Weblog             weblog,
+            String             locale,
+            String             pageLink,
+            String             entryAnchor,
+            String             dateString,
+            String             catName,
+            List               tags,
+            int                page,
+            String             pageAfter) {
+        
         super(strat, weblog, locale, pageLink, entryAnchor, dateString, catName, tags, page);
+        this.pageAfter = pageAfter;
         
         // initialize the pager collection
         getEntries();
@@ -78,7 +98,9 @@ public class WeblogEntriesLatestPager extends AbstractWeblogEntriesPager {
                 wesc.setTags(tags);
                 wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
                 wesc.setLocale(locale);
-                wesc.setOffset(offset);
+                if (!EntryPageCursor.apply(pageAfter, wesc)) {
+                    wesc.setOffset(offset);
+                }
                 wesc.setMaxResults(length+1);
                 Map<Date, List<WeblogEntry>> mmap = WebloggerFactory.getWeblogger().getWeblogEntryManager().getWeblogEntryObjectMap(wesc);
 
@@ -91,6 +113,7 @@ public class WeblogEntriesLatestPager extends AbstractWeblogEntriesPager {
                     for (int i=0; i < unwrapped.size(); i++) {
                         if (count++ < length) {
                             wrapped.add(i,WeblogEntryWrapper.wrap(unwrapped.get(i), urlStrategy));
+                            nextPageToken = EntryPageCursor.toToken(unwrapped.get(i));
                         } else {
                             more = true;
                         }
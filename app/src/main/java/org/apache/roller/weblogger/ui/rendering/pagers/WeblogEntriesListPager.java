@@ -56,6 +56,11 @@ public class WeblogEntriesListPager extends AbstractPager {
     // are there more entries?
     private boolean more = false;
     
+    // token of the entry this page starts after, and of this page's last
+    // entry, see EntryPageCursor
+    private String pageAfter = null;
+    private String nextPageToken = null;
+    
     // most recent update time of current set of entries
     private Date lastUpdated = null;    
     
@@ -72,7 +77,29 @@ public class WeblogEntriesListPager extends AbstractPager {
             int            pageNum,
             int            length) {
         
+        this(strat, baseUrl, queryWeblog, queryUser, queryCat, queryTags,
+                locale, sinceDays, pageNum, null, length);
+    }
+    
+    
+    /**
+     * @param pageAfter next page token from the previous page, see EntryPageCursor
+     */
+    public WeblogEntriesListPager(
+            URLStrategy    strat,
+            String         baseUrl,
+            Weblog         queryWeblog,
+            User           queryUser,
+            String         queryCat,
+            List<String>   queryTags,
+            String         locale,
+            int            sinceDays,
+            int            pageNum,
+            String         pageAfter,
+            int            length) {
+        
         super(strat, baseUrl, pageNum);
+        this.pageAfter = pageAfter;
         
         // store the data
         this.queryWeblog = queryWeblog;
@@ -113,7 +140,9 @@ public class WeblogEntriesListPager extends AbstractPager {
                 wesc.setTags(queryTags);
                 wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
                 wesc.setLocale(locale);
-                wesc.setOffset(offset);
+                if (!EntryPageCursor.apply(pageAfter, wesc)) {
+                    wesc.setOffset(offset);
+                }
                 wesc.setMaxResults(length+1);
                 List<WeblogEntry> rawEntries = WebloggerFactory.getWeblogger()
                         .getWeblogEntryManager().getWeblogEntries(wesc);
@@ -123,6 +152,7 @@ public class WeblogEntriesListPager extends AbstractPager {
                 for (WeblogEntry entry : rawEntries) {
                     if (count++ < length) {
                         results.add(WeblogEntryWrapper.wrap(entry, urlStrategy));
+                        nextPageToken = EntryPageCursor.toToken(entry);
                     }
                 }
                 if (rawEntries.size() > length) {
@@ -143,6 +173,11 @@ public class WeblogEntriesListPager extends AbstractPager {
     public boolean hasMoreItems() {
         return more;
     }
+    
+    
+    protected String getNextPageToken() {
+        return nextPageToken;
+    }
 
     /** Get last updated time from items in pager */
     public Date getLastUpdated() {
@@ -46,7 +46,9 @@ import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
 import org.apache.roller.weblogger.ui.rendering.model.SearchResultsFeedModel;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
+import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideDependencies;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogFeedCache;
+import org.apache.roller.weblogger.ui.rendering.util.CachedContentUtil;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 
 
@@ -83,6 +85,20 @@ public class FeedServlet extends HttpServlet {
      */
     public void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        try {
+            renderFeed(request, response);
+        } finally {
+            // don't leave a recording behind for the next request on this
+            // thread, whichever way rendering ended
+            SiteWideDependencies.clear();
+        }
+    }
+
+    /**
+     * Render a weblog feed, taken from the cache if possible.
+     */
+    private void renderFeed(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
 
         log.debug("Entering");
 
@@ -167,8 +183,7 @@ public class FeedServlet extends HttpServlet {
         if (cachedContent != null) {
             log.debug("HIT " + cacheKey);
 
-            response.setContentLength(cachedContent.getContent().length);
-            response.getOutputStream().write(cachedContent.getContent());
+            CachedContentUtil.sendCachedContent(request, response, cachedContent);
             return;
 
         } else {
@@ -255,6 +270,15 @@ public class FeedServlet extends HttpServlet {
             // Load special models for site-wide blog
 
             if (siteWide) {
+                // track what the site models query so the site-wide cache
+                // can invalidate this feed selectively
+                SiteWideDependencies.startRecording();
+                // pages filtered by category or tags change along with entries
+                // from any weblog, whatever the models query
+                if (feedRequest.getWeblogCategoryName() != null
+                        || (feedRequest.getTags() != null && !feedRequest.getTags().isEmpty())) {
+                    SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
+                }
                 String siteModels = WebloggerConfig
                         .getProperty("rendering.siteModels");
                 ModelLoader.loadModels(siteModels, model, initData, true);
@@ -265,6 +289,7 @@ public class FeedServlet extends HttpServlet {
                     && feedRequest.getTerm() != null) {
                 ModelLoader.loadModels(SearchResultsFeedModel.class.getName(),
                         model, initData, true);
+                SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
             }
 
         } catch (WebloggerException ex) {
@@ -327,13 +352,13 @@ public class FeedServlet extends HttpServlet {
 
         // flush rendered content to response
         log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        CachedContentUtil.sendContent(request, response, rendererOutput);
 
         // cache rendered content. only cache if user is not logged in?
         log.debug("PUT " + cacheKey);
         if (isSiteWide) {
-            siteWideCache.put(cacheKey, rendererOutput);
+            siteWideCache.put(cacheKey, rendererOutput,
+                    SiteWideDependencies.stopRecording());
         } else {
             weblogFeedCache.put(cacheKey, rendererOutput);
         }
@@ -40,11 +40,13 @@ import org.apache.roller.weblogger.ui.core.RollerContext;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.util.CachedContentUtil;
 import org.apache.roller.weblogger.ui.rendering.util.InvalidRequestException;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogEntryCommentForm;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
+import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideDependencies;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogPageCache;
 import org.apache.roller.weblogger.util.BlacklistChecker;
 import org.apache.roller.weblogger.util.I18nMessages;
@@ -76,6 +78,9 @@ public class PageServlet extends HttpServlet {
     private boolean excludeOwnerPages = false;
     private WeblogPageCache weblogPageCache = null;
     private SiteWideCache siteWideCache = null;
+    // for streaming pages as they are rendered
+    private boolean streaming = false;
+    private int streamingCacheMaxSize = 0;
 
     // Development theme reloading
     Boolean themeReload = false;
@@ -98,6 +103,13 @@ public class PageServlet extends HttpServlet {
         // get a reference to the site wide cache
         this.siteWideCache = SiteWideCache.getInstance();
 
+        this.streaming = WebloggerConfig
+                .getBooleanProperty("rendering.streaming.enabled");
+        this.streamingCacheMaxSize = WebloggerConfig.getIntProperty(
+                "rendering.streaming.cacheMaxSize", RollerConstants.ONE_MB_IN_BYTES);
+
+        log.info("Streaming pages enabled = " + this.streaming);
+
         // see if built-in referrer spam check is enabled
         this.processReferrers = WebloggerConfig
                 .getBooleanProperty("site.blacklist.enable.referrers");
@@ -130,6 +142,20 @@ public class PageServlet extends HttpServlet {
      */
     public void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        try {
+            renderPage(request, response);
+        } finally {
+            // don't leave a recording behind for the next request on this
+            // thread, whichever way rendering ended
+            SiteWideDependencies.clear();
+        }
+    }
+
+    /**
+     * Render a weblog page, taken from the cache if possible.
+     */
+    private void renderPage(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
 
         log.debug("Entering");
 
@@ -250,9 +276,8 @@ public class PageServlet extends HttpServlet {
                     this.processHit(weblog);
                 }
 
-                response.setContentLength(cachedContent.getContent().length);
                 response.setContentType(cachedContent.getContentType());
-                response.getOutputStream().write(cachedContent.getContent());
+                CachedContentUtil.sendCachedContent(request, response, cachedContent);
                 return;
             } else {
                 log.debug("MISS " + cacheKey);
@@ -462,6 +487,15 @@ public class PageServlet extends HttpServlet {
             ModelLoader.loadModels(pageModels, model, initData, true);
             // Load special models for site-wide blog
             if (WebloggerRuntimeConfig.isSiteWideWeblog(weblog.getHandle())) {
+                // track what the site models query so the site-wide cache
+                // can invalidate this page selectively
+                SiteWideDependencies.startRecording();
+                // pages filtered by category or tags change along with entries
+                // from any weblog, whatever the models query
+                if (pageRequest.getWeblogCategoryName() != null
+                        || (pageRequest.getTags() != null && !pageRequest.getTags().isEmpty())) {
+                    SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
+                }
                 String siteModels = WebloggerConfig
                         .getProperty("rendering.siteModels");
                 ModelLoader.loadModels(siteModels, model, initData, true);
@@ -494,42 +528,63 @@ public class PageServlet extends HttpServlet {
             return;
         }
 
-        // render content
-        CachedContent rendererOutput = new CachedContent(
-                RollerConstants.TWENTYFOUR_KB_IN_BYTES, contentType);
+        // render content, either streamed to the client while a copy is kept
+        // for the cache, or in full first so that it can be sent with an
+        // entity tag and compressed.  pages are always rendered in full for
+        // clients revalidating a copy, so they may still get a 304.
+        boolean streamed = this.streaming
+                && request.getHeader("If-None-Match") == null;
+        CachedContent rendererOutput;
+        if (streamed) {
+            response.setContentType(contentType);
+            CachedContentUtil.setVaryHeader(response);
+            rendererOutput = new CachedContent(
+                    RollerConstants.TWENTYFOUR_KB_IN_BYTES, contentType,
+                    response.getOutputStream(), this.streamingCacheMaxSize);
+        } else {
+            rendererOutput = new CachedContent(
+                    RollerConstants.TWENTYFOUR_KB_IN_BYTES, contentType);
+        }
         try {
             log.debug("Doing rendering");
             renderer.render(model, rendererOutput.getCachedWriter());
 
-            // flush rendered output and close
-            rendererOutput.flush();
+            // close rendered output, which flushes it
             rendererOutput.close();
         } catch (Exception e) {
             // bummer, error during rendering
             log.error("Error during rendering for page " + page.getId(), e);
 
-            if (!response.isCommitted()) {
-                response.reset();
+            // part of a streamed page may have gone out already, in which
+            // case all we can do is stop and leave the page out of the cache
+            if (response.isCommitted()) {
+                return;
             }
+            response.reset();
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
 
         // post rendering process
         // flush rendered content to response
-        log.debug("Flushing response output");
-        response.setContentType(contentType);
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        if (!streamed) {
+            log.debug("Flushing response output");
+            response.setContentType(contentType);
+            CachedContentUtil.sendContent(request, response, rendererOutput);
+        }
 
         // cache rendered content. only cache if user is not logged in?
-        if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
+        if (rendererOutput.isTruncated()) {
+            log.debug("SKIPPED " + cacheKey + ", larger than "
+                    + this.streamingCacheMaxSize + " bytes");
+        } else if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
                 && request.getAttribute("skipCache") == null) {
             log.debug("PUT " + cacheKey);
 
             // put it in the right cache
             if (isSiteWide) {
-                siteWideCache.put(cacheKey, rendererOutput);
+                siteWideCache.put(cacheKey, rendererOutput,
+                        SiteWideDependencies.stopRecording());
             } else {
                 weblogPageCache.put(cacheKey, rendererOutput);
             }
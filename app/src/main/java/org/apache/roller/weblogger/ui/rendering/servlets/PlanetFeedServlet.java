@@ -46,6 +46,7 @@ import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository.De
 import org.apache.roller.weblogger.ui.rendering.model.UtilitiesModel;
 import org.apache.roller.weblogger.ui.rendering.util.cache.PlanetCache;
 import org.apache.roller.weblogger.ui.rendering.util.PlanetRequest;
+import org.apache.roller.weblogger.ui.rendering.util.CachedContentUtil;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.util.cache.CachedContent;
 
@@ -122,8 +123,7 @@ public class PlanetFeedServlet extends HttpServlet {
                 + this.generateKey(planetRequest);
         CachedContent entry = (CachedContent) planetCache.get(cacheKey);
         if (entry != null) {
-            response.setContentLength(entry.getContent().length);
-            response.getOutputStream().write(entry.getContent());
+            CachedContentUtil.sendCachedContent(request, response, entry);
             return;
         }
 
@@ -234,8 +234,7 @@ public class PlanetFeedServlet extends HttpServlet {
         // post rendering process
         // flush rendered content to response
         log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        CachedContentUtil.sendContent(request, response, rendererOutput);
 
         // cache rendered content.
         this.planetCache.put(cacheKey, rendererOutput);
@@ -285,8 +285,8 @@ public class PreviewServlet extends HttpServlet {
         // flush rendered content to response
         log.debug("Flushing response output");
         response.setContentType(contentType);
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        response.setContentLength(rendererOutput.getContentLength());
+        rendererOutput.writeTo(response.getOutputStream());
         
         log.debug("Exiting");
     }
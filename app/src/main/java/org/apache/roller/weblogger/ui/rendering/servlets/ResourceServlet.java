@@ -39,6 +39,7 @@ import org.apache.roller.weblogger.pojos.MediaFile;
 import org.apache.roller.weblogger.pojos.ThemeResource;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogTheme;
+import org.apache.roller.weblogger.ui.rendering.util.ETagHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogResourceRequest;
 
@@ -99,17 +100,19 @@ public class ResourceServlet extends HttpServlet {
                 + "]");
 
         long resourceLastMod = 0;
-        InputStream resourceStream = null;
+        long resourceLength = 0;
+        ThemeResource themeResource = null;
+        MediaFile mediaFile = null;
 
         // first see if resource comes from weblog's shared theme
         try {
             WeblogTheme weblogTheme = weblog.getTheme();
             if (weblogTheme != null) {
-                ThemeResource resource = weblogTheme
+                themeResource = weblogTheme
                         .getResource(resourceRequest.getResourcePath());
-                if (resource != null) {
-                    resourceLastMod = resource.getLastModified();
-                    resourceStream = resource.getInputStream();
+                if (themeResource != null) {
+                    resourceLastMod = themeResource.getLastModified();
+                    resourceLength = themeResource.getLength();
                 }
             }
         } catch (Exception ex) {
@@ -122,14 +125,14 @@ public class ResourceServlet extends HttpServlet {
         }
 
         // if not from theme then see if resource is in weblog's upload dir
-        if (resourceStream == null) {
+        if (themeResource == null) {
             try {
                 MediaFileManager mmgr = WebloggerFactory.getWeblogger()
                         .getMediaFileManager();
-                MediaFile mf = mmgr.getMediaFileByOriginalPath(weblog,
+                mediaFile = mmgr.getMediaFileByOriginalPath(weblog,
                         resourceRequest.getResourcePath());
-                resourceLastMod = mf.getLastModified();
-                resourceStream = mf.getInputStream();
+                resourceLastMod = mediaFile.getLastModified();
+                resourceLength = mediaFile.getLength();
 
             } catch (Exception ex) {
                 // still not found? then we don't have it, 404.
@@ -142,14 +145,33 @@ public class ResourceServlet extends HttpServlet {
             }
         }
 
-        // Respond with 304 Not Modified if it is not modified.
-        if (ModDateHeaderUtil.respondIfNotModified(request, response,
-                resourceLastMod, resourceRequest.getDeviceType())) {
+        // Respond with 304 Not Modified if it is not modified. This is done
+        // before the resource is opened, and the entity tag is built from
+        // the resource's modification time and length, so revalidations
+        // never read the resource
+        String eTag = "\"" + Long.toHexString(resourceLastMod) + "-"
+                + Long.toHexString(resourceLength) + "\"";
+        if (ETagHeaderUtil.respondIfNoneMatch(request, response, eTag)) {
+            return;
+        } else if (request.getHeader("If-None-Match") == null
+                && ModDateHeaderUtil.respondIfNotModified(request, response,
+                        resourceLastMod, resourceRequest.getDeviceType())) {
             return;
         } else {
             // set last-modified date
             ModDateHeaderUtil.setLastModifiedHeader(response, resourceLastMod,
                     resourceRequest.getDeviceType());
+            ETagHeaderUtil.setETagHeader(response, eTag);
+        }
+
+        InputStream resourceStream = (themeResource != null) ? themeResource
+                .getInputStream() : mediaFile.getInputStream();
+        if (resourceStream == null) {
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
 
         // set the content type based on whatever is in our web.xml mime defs
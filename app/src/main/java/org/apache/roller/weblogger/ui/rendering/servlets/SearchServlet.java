@@ -266,8 +266,8 @@ public class SearchServlet extends HttpServlet {
 
         // flush rendered content to response
         log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        response.setContentLength(rendererOutput.getContentLength());
+        rendererOutput.writeTo(response.getOutputStream());
 
         log.debug("Exiting");
     }
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+
+/**
+ * Utility class to localize the logic for sending cached content to a client.
+ */
+public final class CachedContentUtil {
+
+	/**
+	 * Instantiates a new cached content util.
+	 */
+	private CachedContentUtil() {
+	}
+
+	/**
+	 * Send content taken from a cache to the client, as with sendContent(),
+	 * and record whether it went out compressed in the cache stats.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param content
+	 *            the cached content
+	 */
+	public static void sendCachedContent(HttpServletRequest request,
+			HttpServletResponse response, CachedContent content)
+			throws IOException {
+
+		boolean compressed = sendContent(request, response, content);
+		CacheManager.recordResponse(compressed);
+	}
+
+	/**
+	 * Send rendered content to the client. If the request has an
+	 * If-None-Match header matching the content's entity tag then a 304 is
+	 * sent without a body. Otherwise, if the content has a gzip compressed
+	 * variant and the client accepts gzip encoding then the compressed bytes
+	 * are sent as is, else the content is sent uncompressed.
+	 * <p/>
+	 * The content type is expected to be set on the response already.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param content
+	 *            the closed content
+	 * 
+	 * @return true if the compressed variant was selected, false otherwise.
+	 */
+	public static boolean sendContent(HttpServletRequest request,
+			HttpServletResponse response, CachedContent content)
+			throws IOException {
+
+		boolean compressed = content.hasCompressedContent()
+				&& acceptsGzip(request);
+		String eTag = compressed ? content.getCompressedETag() : content
+				.getETag();
+
+		setVaryHeader(response);
+		if (ETagHeaderUtil.respondIfNoneMatch(request, response, eTag,
+				content.getETag(), content.getCompressedETag())) {
+			return compressed;
+		}
+
+		ETagHeaderUtil.setETagHeader(response, eTag);
+		if (compressed) {
+			response.setHeader("Content-Encoding", "gzip");
+			response.setContentLength(content.getCompressedContentLength());
+			content.writeCompressedTo(response.getOutputStream());
+		} else {
+			response.setContentLength(content.getContentLength());
+			content.writeTo(response.getOutputStream());
+		}
+
+		return compressed;
+	}
+
+	/**
+	 * Set the Vary header for content which may be sent either compressed or
+	 * uncompressed, so that shared caches keep the variants apart.
+	 * 
+	 * @param response
+	 *            the response
+	 */
+	public static void setVaryHeader(HttpServletResponse response) {
+		response.addHeader("Vary", "Accept-Encoding");
+	}
+
+	/**
+	 * Determine if the client accepts gzip content encoding.
+	 * 
+	 * @param request
+	 *            the request
+	 * 
+	 * @return true if gzip is listed in the Accept-Encoding header and not
+	 *         explicitly refused with a quality value of zero.
+	 */
+	public static boolean acceptsGzip(HttpServletRequest request) {
+
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			String name = parts[0].trim().toLowerCase();
+			if (!"gzip".equals(name) && !"x-gzip".equals(name)
+					&& !"*".equals(name)) {
+				continue;
+			}
+			for (int i = 1; i < parts.length; i++) {
+				String param = parts[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						if (Float.parseFloat(param.substring(2)) <= 0) {
+							return false;
+						}
+					} catch (NumberFormatException ex) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		return false;
+	}
+
+}
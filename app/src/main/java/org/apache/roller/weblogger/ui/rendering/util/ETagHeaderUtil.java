@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility class to localize the entity tag header-related logic.
+ */
+public final class ETagHeaderUtil {
+
+	private static Log log = LogFactory.getLog(ETagHeaderUtil.class);
+
+	/**
+	 * Instantiates a new etag header util.
+	 */
+	private ETagHeaderUtil() {
+	}
+
+	/**
+	 * Sets the HTTP response status to 304 (NOT MODIFIED) if the request
+	 * contains an If-None-Match header matching any of the given entity tags.
+	 * Returns true if the response status was set, false if not.
+	 * <p/>
+	 * Matching uses the weak comparison function, which is what RFC 7232
+	 * requires for If-None-Match.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param eTag
+	 *            the entity tag of the current representation, which is sent
+	 *            back with the 304 response
+	 * @param otherETags
+	 *            entity tags of other current representations of the same
+	 *            content, e.g. a compressed variant
+	 * 
+	 * @return true if a response status was sent, false otherwise.
+	 */
+	public static boolean respondIfNoneMatch(HttpServletRequest request,
+			HttpServletResponse response, String eTag, String... otherETags) {
+
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch == null || eTag == null) {
+			return false;
+		}
+
+		boolean matched = matches(ifNoneMatch, eTag);
+		for (int i = 0; !matched && i < otherETags.length; i++) {
+			matched = otherETags[i] != null
+					&& matches(ifNoneMatch, otherETags[i]);
+		}
+
+		if (matched) {
+			if (log.isDebugEnabled()) {
+				log.debug("NOT MODIFIED (etag) " + request.getRequestURL());
+			}
+
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			setETagHeader(response, eTag);
+		}
+
+		return matched;
+	}
+
+	/**
+	 * Set the ETag header.
+	 * 
+	 * @param response
+	 *            the response
+	 * @param eTag
+	 *            the quoted entity tag
+	 */
+	public static void setETagHeader(HttpServletResponse response, String eTag) {
+		if (eTag != null) {
+			response.setHeader("ETag", eTag);
+		}
+	}
+
+	/**
+	 * Determine if an If-None-Match header value matches an entity tag.
+	 * 
+	 * @param ifNoneMatch
+	 *            the If-None-Match header value, a list of entity tags or *
+	 * @param eTag
+	 *            the quoted entity tag
+	 * 
+	 * @return true if the header lists the entity tag or is a wildcard
+	 */
+	public static boolean matches(String ifNoneMatch, String eTag) {
+
+		String opaqueTag = stripWeak(eTag);
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if ("*".equals(candidate)
+					|| opaqueTag.equals(stripWeak(candidate))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripWeak(String eTag) {
+		return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+	}
+
+}
@@ -29,6 +29,7 @@ import org.apache.roller.weblogger.pojos.ThemeTemplate;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.ui.rendering.pagers.EntryPageCursor;
 import org.apache.roller.weblogger.util.URLUtilities;
 import org.apache.roller.weblogger.util.Utilities;
 
@@ -59,6 +60,7 @@ public class WeblogPageRequest extends WeblogRequest {
     private String weblogDate = null;
     private List tags = null;
     private int pageNum = 0;
+    private String pageAfter = null;
     private Map customParams = new HashMap();
 
     // heavyweight attributes
@@ -245,6 +247,11 @@ public class WeblogPageRequest extends WeblogRequest {
             }
         }
 
+        // next page token, see EntryPageCursor
+        if (request.getParameter(EntryPageCursor.PARAM) != null) {
+            this.pageAfter = request.getParameter(EntryPageCursor.PARAM);
+        }
+
         // build customParams Map, we remove built-in params because we only
         // want this map to represent params defined by the template author
         customParams = new HashMap(request.getParameterMap());
@@ -253,6 +260,7 @@ public class WeblogPageRequest extends WeblogRequest {
         customParams.remove("date");
         customParams.remove("cat");
         customParams.remove("page");
+        customParams.remove(EntryPageCursor.PARAM);
         customParams.remove("tags");
 
         if (log.isDebugEnabled()) {
@@ -263,6 +271,7 @@ public class WeblogPageRequest extends WeblogRequest {
             log.debug("tags = " + this.tags);
             log.debug("weblogPage = " + this.weblogPageName);
             log.debug("pageNum = " + this.pageNum);
+            log.debug("pageAfter = " + this.pageAfter);
         }
     }
 
@@ -324,6 +333,14 @@ public class WeblogPageRequest extends WeblogRequest {
         this.pageNum = pageNum;
     }
 
+    public String getPageAfter() {
+        return pageAfter;
+    }
+
+    public void setPageAfter(String pageAfter) {
+        this.pageAfter = pageAfter;
+    }
+
     public Map getCustomParams() {
         return customParams;
     }
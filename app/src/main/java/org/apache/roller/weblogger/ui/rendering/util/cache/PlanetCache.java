@@ -29,6 +29,7 @@ import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.ui.rendering.util.PlanetRequest;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
 
 
@@ -47,6 +48,12 @@ public final class PlanetCache {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // move rendered content off the java heap when it is cached
+    private boolean offHeap = false;
+    
+    // keep a gzip compressed variant of rendered content when it is cached
+    private boolean gzip = false;
+    
     // keep a cached version of last expired time
     private ExpiringCacheEntry lastUpdateTime = null;
     private long timeout = RollerConstants.FIFTEEN_MIN_IN_MS;
@@ -72,6 +79,9 @@ public final class PlanetCache {
             }
         }
         
+        offHeap = "true".equals(cacheProps.get("offHeap"));
+        gzip = "true".equals(cacheProps.get("gzip"));
+        
         log.info("Planet cache = "+cacheProps);
         
         if (cacheEnabled) {
@@ -120,6 +130,10 @@ public final class PlanetCache {
             return;
         }
         
+        if (value instanceof CachedContent) {
+            ((CachedContent) value).prepareForCaching(gzip, offHeap);
+        }
+        
         contentCache.put(key, value);
         log.debug("PUT "+key);
     }
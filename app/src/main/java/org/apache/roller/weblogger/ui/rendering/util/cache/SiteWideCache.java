@@ -20,12 +20,16 @@ package org.apache.roller.weblogger.ui.rendering.util.cache;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -45,11 +49,18 @@ import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheHandler;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
 
 
 /**
  * Cache for site-wide weblog content.
+ *
+ * Each cached item is stored along with the dependencies recorded by
+ * SiteWideDependencies while it was rendered, and a reverse index from each
+ * dependency to the keys that depend on it lets invalidation evict only the
+ * affected items.  Content of the site-wide weblog itself is a dependency of
+ * every item, so changes to that weblog still flush the whole cache.
  */
 public final class SiteWideCache implements CacheHandler {
     
@@ -63,8 +74,26 @@ public final class SiteWideCache implements CacheHandler {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // move rendered content off the java heap when it is cached
+    private boolean offHeap = false;
+    
+    // keep a gzip compressed variant of rendered content when it is cached
+    private boolean gzip = false;
+    
     // keep a cached version of last expired time
     private ExpiringCacheEntry lastUpdateTime = null;
+    
+    // reverse index of dependency -> keys of cached items depending on it
+    private final ConcurrentMap<String, Set<String>> dependents =
+            new ConcurrentHashMap<String, Set<String>>();
+    
+    // dependencies of each cached item, used to unindex items
+    private final ConcurrentMap<String, Set<String>> dependencies =
+            new ConcurrentHashMap<String, Set<String>>();
+    
+    // cap on indexed keys, since keys evicted by the cache itself linger in
+    // the index until they are invalidated or replaced
+    private int indexLimit = 1000;
 
     // reference to our singleton instance
     private static SiteWideCache singletonInstance = new SiteWideCache();
@@ -88,6 +117,14 @@ public final class SiteWideCache implements CacheHandler {
             }
         }
         
+        offHeap = "true".equals(cacheProps.get("offHeap"));
+        try {
+            indexLimit = Integer.parseInt(cacheProps.get("size")) * 4;
+        } catch(Exception e) {
+            // ignored
+        }
+        gzip = "true".equals(cacheProps.get("gzip"));
+        
         log.info(cacheProps);
         
         if(cacheEnabled) {
@@ -121,14 +158,56 @@ public final class SiteWideCache implements CacheHandler {
     }
     
     
+    /**
+     * Cache an item without knowing its dependencies, so that any
+     * invalidation at all will evict it.
+     */
     public void put(String key, Object value) {
+        put(key, value, Collections.singleton(SiteWideDependencies.ANY));
+    }
+    
+    
+    /**
+     * Cache an item which will be evicted when any of the given
+     * dependencies, or the site-wide weblog, are invalidated.
+     */
+    public void put(String key, Object value, Set<String> itemDependencies) {
         
         if (!cacheEnabled) {
             return;
         }
         
+        if (value instanceof CachedContent) {
+            ((CachedContent) value).prepareForCaching(gzip, offHeap);
+        }
+        
+        if (dependencies.size() >= indexLimit) {
+            log.debug("dependency index full, clearing");
+            clear();
+        }
+        
+        Set<String> deps = new HashSet<String>(itemDependencies);
+        String siteHandle = WebloggerRuntimeConfig.getProperty("site.frontpage.weblog.handle");
+        if (siteHandle != null) {
+            deps.add(SiteWideDependencies.weblog(siteHandle));
+        }
+        
+        unindex(key);
+        for (String dep : deps) {
+            Set<String> keys = dependents.get(dep);
+            if (keys == null) {
+                Set<String> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                keys = dependents.putIfAbsent(dep, newKeys);
+                if (keys == null) {
+                    keys = newKeys;
+                }
+            }
+            keys.add(key);
+        }
+        dependencies.put(key, deps);
+        
         contentCache.put(key, value);
-        log.debug("PUT "+key);
+        log.debug("PUT "+key+" "+deps);
     }
 
     
@@ -139,6 +218,7 @@ public final class SiteWideCache implements CacheHandler {
         }
         
         contentCache.remove(key);
+        unindex(key);
         log.debug("REMOVE "+key);
     }
     
@@ -150,11 +230,57 @@ public final class SiteWideCache implements CacheHandler {
         }
         
         contentCache.clear();
+        dependents.clear();
+        dependencies.clear();
         this.lastUpdateTime = null;
         log.debug("CLEAR");
     }
     
     
+    /**
+     * Evict all cached items which depend on any of the given dependencies,
+     * or which were cached without known dependencies.
+     */
+    public void invalidate(String... changed) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        for (String dep : changed) {
+            evictDependents(dep);
+        }
+        evictDependents(SiteWideDependencies.ANY);
+        
+        this.lastUpdateTime = null;
+    }
+    
+    
+    private void evictDependents(String dep) {
+        Set<String> keys = dependents.remove(dep);
+        if (keys != null) {
+            for (String key : keys) {
+                contentCache.remove(key);
+                unindex(key);
+                log.debug("INVALIDATE "+key+" on "+dep);
+            }
+        }
+    }
+    
+    
+    private void unindex(String key) {
+        Set<String> deps = dependencies.remove(key);
+        if (deps != null) {
+            for (String dep : deps) {
+                Set<String> keys = dependents.get(dep);
+                if (keys != null) {
+                    keys.remove(key);
+                }
+            }
+        }
+    }
+    
+    
     public Date getLastModified() {
         
         Date lastModified = null;
@@ -248,6 +374,9 @@ public final class SiteWideCache implements CacheHandler {
         // add page number when applicable
         if(pageRequest.getWeblogAnchor() == null) {
             key.append("/page=").append(pageRequest.getPageNum());
+            if(pageRequest.getPageAfter() != null) {
+                key.append("/after=").append(pageRequest.getPageAfter());
+            }
         }
         
         // add login state
@@ -327,15 +456,13 @@ public final class SiteWideCache implements CacheHandler {
     
     /**
      * A weblog entry has changed.
+     *
+     * We can't tell whether the entry just left or entered the published
+     * state, so site-wide entry listings are always invalidated.
      */
     public void invalidate(WeblogEntry entry) {
-        
-        if (!cacheEnabled) {
-            return;
-        }
-        
-        this.contentCache.clear();
-        this.lastUpdateTime = null;
+        invalidate(SiteWideDependencies.weblog(entry.getWebsite().getHandle()),
+                SiteWideDependencies.ENTRIES);
     }
     
     
@@ -343,13 +470,8 @@ public final class SiteWideCache implements CacheHandler {
      * A weblog has changed.
      */
     public void invalidate(Weblog website) {
-        
-        if (!cacheEnabled) {
-            return;
-        }
-        
-        this.contentCache.clear();
-        this.lastUpdateTime = null;
+        invalidate(SiteWideDependencies.weblog(website.getHandle()),
+                SiteWideDependencies.WEBLOGS, SiteWideDependencies.ENTRIES);
     }
     
     
@@ -357,9 +479,7 @@ public final class SiteWideCache implements CacheHandler {
      * A bookmark has changed.
      */
     public void invalidate(WeblogBookmark bookmark) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(bookmark.getWebsite().getHandle())) {
-            invalidate(bookmark.getWebsite());
-        }
+        invalidate(SiteWideDependencies.weblog(bookmark.getWebsite().getHandle()));
     }
     
     
@@ -367,9 +487,7 @@ public final class SiteWideCache implements CacheHandler {
      * A folder has changed.
      */
     public void invalidate(WeblogBookmarkFolder folder) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(folder.getWeblog().getHandle())) {
-            invalidate(folder.getWeblog());
-        }
+        invalidate(SiteWideDependencies.weblog(folder.getWeblog().getHandle()));
     }
     
     
@@ -377,9 +495,8 @@ public final class SiteWideCache implements CacheHandler {
      * A comment has changed.
      */
     public void invalidate(WeblogEntryComment comment) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(comment.getWeblogEntry().getWebsite().getHandle())) {
-            invalidate(comment.getWeblogEntry().getWebsite());
-        }
+        invalidate(SiteWideDependencies.weblog(comment.getWeblogEntry().getWebsite().getHandle()),
+                SiteWideDependencies.COMMENTS);
     }
     
     
@@ -387,7 +504,7 @@ public final class SiteWideCache implements CacheHandler {
      * A user profile has changed.
      */
     public void invalidate(User user) {
-        // ignored
+        invalidate(SiteWideDependencies.USERS);
     }
     
     
@@ -395,9 +512,8 @@ public final class SiteWideCache implements CacheHandler {
      * A category has changed.
      */
     public void invalidate(WeblogCategory category) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(category.getWeblog().getHandle())) {
-            invalidate(category.getWeblog());
-        }
+        invalidate(SiteWideDependencies.weblog(category.getWeblog().getHandle()),
+                SiteWideDependencies.ENTRIES);
     }
     
     
@@ -405,9 +521,7 @@ public final class SiteWideCache implements CacheHandler {
      * A weblog template has changed.
      */
     public void invalidate(WeblogTemplate template) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(template.getWeblog().getHandle())) {
-            invalidate(template.getWeblog());
-        }
+        invalidate(SiteWideDependencies.weblog(template.getWeblog().getHandle()));
     }
     
     
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Records what a piece of site-wide content was built from while it is
+ * being rendered, so that SiteWideCache can later invalidate only the
+ * content affected by a change instead of clearing the whole cache.
+ *
+ * Recording is per thread.  The rendering servlets call startRecording()
+ * before loading models and collect the dependencies with stopRecording()
+ * when the content is cached, and clear() once the request is done;
+ * models call the record methods as they run queries.  Recording calls
+ * made while no recording is active are no-ops.
+ */
+public final class SiteWideDependencies {
+    
+    // content listing entries from all weblogs
+    public static final String ENTRIES = "entries";
+    
+    // content listing comments from all weblogs
+    public static final String COMMENTS = "comments";
+    
+    // content listing weblogs
+    public static final String WEBLOGS = "weblogs";
+    
+    // content listing users
+    public static final String USERS = "users";
+    
+    // content which must be invalidated by any change at all
+    public static final String ANY = "*";
+    
+    private static final ThreadLocal<Set<String>> recorded = new ThreadLocal<Set<String>>();
+    
+    
+    // a non-instantiable class
+    private SiteWideDependencies() {}
+    
+    
+    /**
+     * Start recording dependencies for the current thread, discarding
+     * anything left over from an earlier recording.
+     */
+    public static void startRecording() {
+        recorded.set(new HashSet<String>());
+    }
+    
+    
+    /**
+     * Stop recording for the current thread and return what was recorded,
+     * or a set containing just ANY if no recording was active.
+     */
+    public static Set<String> stopRecording() {
+        Set<String> dependencies = recorded.get();
+        recorded.remove();
+        if (dependencies == null) {
+            return Collections.singleton(ANY);
+        }
+        return dependencies;
+    }
+    
+    
+    /**
+     * Discard any recording of the current thread.  The rendering servlets
+     * call this once a request is done, however it ended.
+     */
+    public static void clear() {
+        recorded.remove();
+    }
+    
+    
+    /**
+     * Record a dependency of the content currently being rendered.
+     */
+    public static void record(String dependency) {
+        Set<String> dependencies = recorded.get();
+        if (dependencies != null) {
+            dependencies.add(dependency);
+        }
+    }
+    
+    
+    /**
+     * Record that the content currently being rendered shows data from the
+     * given weblog.
+     */
+    public static void recordWeblog(String handle) {
+        record(weblog(handle));
+    }
+    
+    
+    /**
+     * The dependency name for content from the given weblog.
+     */
+    public static String weblog(String handle) {
+        return "weblog:" + handle;
+    }
+    
+}
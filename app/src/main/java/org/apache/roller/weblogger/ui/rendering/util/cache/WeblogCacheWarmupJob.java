@@ -102,6 +102,9 @@ public class WeblogCacheWarmupJob implements Job {
         WeblogFeedCache feedCache = WeblogFeedCache.getInstance();
         long start = System.currentTimeMillis();
         
+        // same models for all weblogs
+        String feedModels = WebloggerConfig.getProperty("rendering.feedModels");
+        
         for (String weblogHandle : weblogs) {
             log.debug("doing weblog "+weblogHandle);
             
@@ -121,7 +124,6 @@ public class WeblogCacheWarmupJob implements Job {
                 initData.put("weblogRequest", feedRequest);
                 
                 // Load models for feeds
-                String feedModels = WebloggerConfig.getProperty("rendering.feedModels");
                 ModelLoader.loadModels(feedModels, modelMap, initData, true);
                 
                 // TODO: re-enable custom models when they are actually used
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the data behind weblog calendars, i.e. which days of a month
+ * have entries and which are the previous and next months with entries.
+ *
+ * Months are cached per weblog, and all months of a weblog are dropped as
+ * soon as one of its entries or categories changes.
+ */
+public final class WeblogCalendarCache implements CacheHandler {
+
+    private static Log log = LogFactory.getLog(WeblogCalendarCache.class);
+
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.weblogcalendar";
+
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+
+    // max number of months kept for a single weblog
+    private int monthsPerWeblog = 24;
+
+    // reference to our singleton instance
+    private static WeblogCalendarCache singletonInstance = new WeblogCalendarCache();
+
+
+    private WeblogCalendarCache() {
+
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+
+        Map<String, String> cacheProps = new HashMap<String, String>();
+        cacheProps.put("id", CACHE_ID);
+        Enumeration allProps = WebloggerConfig.keys();
+        String prop = null;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+
+        try {
+            monthsPerWeblog = Integer.parseInt(cacheProps.get("monthsPerWeblog"));
+        } catch(Exception e) {
+            // ignored
+        }
+
+        log.info(cacheProps);
+
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+
+
+    public static WeblogCalendarCache getInstance() {
+        return singletonInstance;
+    }
+
+
+    /**
+     * Get the cached months of a weblog, keyed by whatever the caller uses
+     * to identify a month.
+     *
+     * The same map should be used to look up a month and to put it once it
+     * has been loaded.  If the weblog is invalidated in between, the month
+     * goes into a map which is no longer cached and so is simply dropped.
+     *
+     * @return the months of the weblog, or null if caching is disabled
+     */
+    public Map<String, Object> getMonths(Weblog weblog) {
+
+        if (!cacheEnabled) {
+            return null;
+        }
+
+        String key = weblog.getHandle();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> months = (Map<String, Object>) contentCache.get(key);
+        if (months == null) {
+            log.debug("MISS "+key);
+            months = new BoundedMonths(monthsPerWeblog);
+            contentCache.put(key, months);
+        } else {
+            log.debug("HIT "+key);
+        }
+
+        return months;
+    }
+
+
+    public void remove(Weblog weblog) {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.remove(weblog.getHandle());
+        log.debug("REMOVE "+weblog.getHandle());
+    }
+
+
+    public void clear() {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.clear();
+    }
+
+
+    /**
+     * An entry has changed, published or not.
+     */
+    public void invalidate(WeblogEntry entry) {
+        remove(entry.getWebsite());
+    }
+
+
+    /**
+     * A weblog has changed, possibly its time zone.
+     */
+    public void invalidate(Weblog website) {
+        remove(website);
+    }
+
+
+    /**
+     * A category has changed.
+     */
+    public void invalidate(WeblogCategory category) {
+        remove(category.getWeblog());
+    }
+
+
+    public void invalidate(WeblogBookmark bookmark) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogBookmarkFolder folder) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogEntryComment comment) {
+        // ignored
+    }
+
+
+    public void invalidate(User user) {
+        // ignored
+    }
+
+
+    public void invalidate(WeblogTemplate template) {
+        // ignored
+    }
+
+
+    /**
+     * Months of a single weblog, emptied when more than max are added.
+     */
+    private static class BoundedMonths extends ConcurrentHashMap<String, Object> {
+
+        private final int max;
+
+        BoundedMonths(int max) {
+            this.max = Math.max(1, max);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            if (size() >= max) {
+                clear();
+            }
+            return super.put(key, value);
+        }
+    }
+
+}
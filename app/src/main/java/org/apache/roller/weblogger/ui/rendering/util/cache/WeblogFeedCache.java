@@ -32,6 +32,7 @@ import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 
 
@@ -50,6 +51,12 @@ public final class WeblogFeedCache {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // move rendered content off the java heap when it is cached
+    private boolean offHeap = false;
+    
+    // keep a gzip compressed variant of rendered content when it is cached
+    private boolean gzip = false;
+    
     // reference to our singleton instance
     private static WeblogFeedCache singletonInstance = new WeblogFeedCache();
     
@@ -72,6 +79,9 @@ public final class WeblogFeedCache {
             }
         }
         
+        offHeap = "true".equals(cacheProps.get("offHeap"));
+        gzip = "true".equals(cacheProps.get("gzip"));
+        
         log.info(cacheProps);
         
         if(cacheEnabled) {
@@ -120,6 +130,10 @@ public final class WeblogFeedCache {
             return;
         }
         
+        if (value instanceof CachedContent) {
+            ((CachedContent) value).prepareForCaching(gzip, offHeap);
+        }
+        
         contentCache.put(key, new LazyExpiringCacheEntry(value));
         log.debug("PUT "+key);
     }
@@ -32,6 +32,7 @@ import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 
 
@@ -50,6 +51,12 @@ public final class WeblogPageCache {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // move rendered content off the java heap when it is cached
+    private boolean offHeap = false;
+    
+    // keep a gzip compressed variant of rendered content when it is cached
+    private boolean gzip = false;
+    
     // reference to our singleton instance
     private static WeblogPageCache singletonInstance = new WeblogPageCache();
     
@@ -72,6 +79,9 @@ public final class WeblogPageCache {
             }
         }
         
+        offHeap = "true".equals(cacheProps.get("offHeap"));
+        gzip = "true".equals(cacheProps.get("gzip"));
+        
         log.info(cacheProps);
         
         if (cacheEnabled) {
@@ -120,6 +130,10 @@ public final class WeblogPageCache {
             return;
         }
         
+        if (value instanceof CachedContent) {
+            ((CachedContent) value).prepareForCaching(gzip, offHeap);
+        }
+        
         contentCache.put(key, new LazyExpiringCacheEntry(value));
         log.debug("PUT "+key);
     }
@@ -221,6 +235,9 @@ public final class WeblogPageCache {
         // add page number when applicable
         if(pageRequest.getWeblogAnchor() == null) {
             key.append("/page=").append(pageRequest.getPageNum());
+            if(pageRequest.getPageAfter() != null) {
+                key.append("/after=").append(pageRequest.getPageAfter());
+            }
         }
         
         // add login state
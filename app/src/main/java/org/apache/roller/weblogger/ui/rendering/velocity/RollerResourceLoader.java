@@ -110,22 +110,41 @@ public class RollerResourceLoader extends ResourceLoader {
 	}
 
 	/**
-	 * Files loaded by this resource loader are not reloadable here, as they are
-	 * stored in custom themes and there is no way velocity can trigger a
-	 * reload.
+	 * Templates named with their last modified time never change, any other
+	 * template has changed once its last modified time in the database is
+	 * different from when it was loaded.
 	 * 
 	 * @see org.apache.velocity.runtime.resource.loader.ResourceLoader#isSourceModified(org.apache.velocity.runtime.resource.Resource)
 	 */
 	public boolean isSourceModified(Resource resource) {
-		return false;
+		if (RollerVelocity.getTemplateVersion(resource.getName()) >= 0) {
+			return false;
+		}
+		return getLastModified(resource) != resource.getLastModified();
 	}
 
 	/**
-	 * Defaults to return 0.
+	 * Last modified time of the template, as given in its name or else from
+	 * the database.  Returns 0 if the template can't be found.
 	 * 
 	 * @see org.apache.velocity.runtime.resource.loader.ResourceLoader#getLastModified(org.apache.velocity.runtime.resource.Resource)
 	 */
 	public long getLastModified(Resource resource) {
+		String name = resource.getName();
+		long version = RollerVelocity.getTemplateVersion(name);
+		if (version >= 0) {
+			return version;
+		}
+
+		try {
+			WeblogTemplate page = WebloggerFactory.getWeblogger()
+					.getWeblogManager().getTemplate(name.split("\\|")[0]);
+			if (page != null && page.getLastModified() != null) {
+				return page.getLastModified().getTime();
+			}
+		} catch (Exception ex) {
+			logger.debug("Error checking last modified time of " + name, ex);
+		}
 		return 0;
 	}
 
@@ -24,6 +24,8 @@ import java.util.Properties;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.TemplateRendition;
+import org.apache.roller.weblogger.pojos.TemplateRendition.RenditionType;
 import org.apache.roller.weblogger.ui.core.RollerContext;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
 import org.apache.velocity.Template;
@@ -130,4 +132,65 @@ public class RollerVelocity {
 			MobileDeviceRepository.DeviceType deviceType, String encoding) {
         return velocityEngine.getTemplate(name + "|" + deviceType, encoding);
     }
+    
+    /**
+     * Convenience static method for looking up the current version of a
+     * Roller template.
+     * @throws org.apache.velocity.exception.ResourceNotFoundException,
+     *       org.apache.velocity.exception.ParseErrorException
+     */
+    public static Template getTemplate(org.apache.roller.weblogger.pojos.Template template,
+			MobileDeviceRepository.DeviceType deviceType, String encoding) {
+        return velocityEngine.getTemplate(getTemplateName(template, deviceType), encoding);
+    }
+    
+    
+    /**
+     * Name of a Roller template for the resource loaders, of the form
+     * <id>|<deviceType>|<last modified time>|<hash of the template code>.
+     *
+     * Templates are cached by name, so with the version in the name an edited
+     * template is loaded and parsed again right away, while unchanged ones
+     * are never checked.  The hash tells apart edits within the precision of
+     * the stored last modified time, which is a second on some databases.
+     * Without a last modified time, or if the code can't be read, the name
+     * is just <id>|<deviceType> and the loaders check for changes instead.
+     */
+    public static String getTemplateName(org.apache.roller.weblogger.pojos.Template template,
+			MobileDeviceRepository.DeviceType deviceType) {
+        String name = template.getId() + "|" + deviceType;
+        if (template.getLastModified() == null) {
+            return name;
+        }
+        String code = "";
+        try {
+            TemplateRendition rendition = template.getTemplateRendition(
+                    RenditionType.valueOf(deviceType.name().toUpperCase()));
+            if (rendition != null && rendition.getTemplate() != null) {
+                code = rendition.getTemplate();
+            }
+        } catch (Exception ex) {
+            log.debug("Error reading code of template " + template.getId(), ex);
+            return name;
+        }
+        return name + "|" + template.getLastModified().getTime()
+                + "|" + Integer.toHexString(code.hashCode());
+    }
+    
+    
+    /**
+     * Last modified time of a template as given in its name.
+     *
+     * @return the time, or -1 if the name doesn't include one
+     */
+    public static long getTemplateVersion(String name) {
+        String[] parts = name.split("\\|");
+        if (parts.length > 2) {
+            try {
+                return Long.parseLong(parts[2]);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return -1;
+    }
 }
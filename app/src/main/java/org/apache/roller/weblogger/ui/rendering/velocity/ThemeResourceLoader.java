@@ -131,20 +131,47 @@ public class ThemeResourceLoader extends ResourceLoader {
     }
 
     /**
-     * Files loaded by this resource loader are not reloadable here, as they are
-     * stored in shared themes and there is no way velocity can trigger a
-     * reload.
+     * Templates named with their last modified time never change, any other
+     * template has changed once the last modified time of the template in
+     * its theme is different from when it was loaded, which only happens
+     * when themes are reloaded.
      * 
      * @see org.apache.velocity.runtime.resource.loader.ResourceLoader#isSourceModified(org.apache.velocity.runtime.resource.Resource)
      */
     public boolean isSourceModified(Resource resource) {
-        return false;
+        if (RollerVelocity.getTemplateVersion(resource.getName()) >= 0) {
+            return false;
+        }
+        return getLastModified(resource) != resource.getLastModified();
     }
 
     /**
+     * Last modified time of the template, as given in its name or else from
+     * its theme.  Returns 0 if the template can't be found.
+     * 
      * @see org.apache.velocity.runtime.resource.loader.ResourceLoader#getLastModified(org.apache.velocity.runtime.resource.Resource)
      */
     public long getLastModified(Resource resource) {
+        String name = resource.getName();
+        long version = RollerVelocity.getTemplateVersion(name);
+        if (version >= 0) {
+            return version;
+        }
+
+        // theme templates name are <theme>:<template>|<deviceType>
+        String[] split = name.split("\\|")[0].split(":", 2);
+        if (split.length < 2) {
+            return 0;
+        }
+        try {
+            Theme theme = WebloggerFactory.getWeblogger().getThemeManager().getTheme(split[0]);
+            ThemeTemplate template = theme.getTemplateByName(split[1]);
+            if (template != null && template.getLastModified() != null) {
+                return template.getLastModified().getTime();
+            }
+        } catch (Exception ex) {
+            logger.debug("Error checking last modified time of " + name, ex);
+        }
         return 0;
     }
 
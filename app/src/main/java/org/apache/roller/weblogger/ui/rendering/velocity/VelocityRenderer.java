@@ -39,20 +39,23 @@ import org.apache.velocity.exception.VelocityException;
 
 /**
  * Renderer that renders using the Velocity template engine.
+ *
+ * A renderer holds on to the parsed template it renders, and is safe to use
+ * by many threads at once, so it can be reused until the template changes.
  */
 public class VelocityRenderer implements Renderer {
 
     private static Log log = LogFactory.getLog(VelocityRenderer.class);
 
     // the original template we are supposed to render
-    private Template renderTemplate = null;
-    private MobileDeviceRepository.DeviceType deviceType = null;
+    private final Template renderTemplate;
+    private final MobileDeviceRepository.DeviceType deviceType;
 
     // the velocity templates
     private org.apache.velocity.Template velocityTemplate = null;
     private org.apache.velocity.Template velocityDecorator = null;
 
-    // a possible exception
+    // a possible exception from loading the template
     private Exception velocityException = null;
 
     public VelocityRenderer(Template template,
@@ -65,7 +68,7 @@ public class VelocityRenderer implements Renderer {
         try {
             // make sure that we can locate the template
             // if we can't then this will throw an exception
-            velocityTemplate = RollerVelocity.getTemplate(template.getId(),
+            velocityTemplate = RollerVelocity.getTemplate(template,
                     deviceType, "UTF-8");
 
         } catch (ResourceNotFoundException ex) {
@@ -129,7 +132,7 @@ public class VelocityRenderer implements Renderer {
             if (velocityException != null) {
 
                 // Render exception
-                renderException(model, out, null);
+                renderException(model, out, velocityException, velocityTemplate);
 
                 // and we're done
                 return;
@@ -175,28 +178,19 @@ public class VelocityRenderer implements Renderer {
 
             // in the case of a parsing error including a page we want to render
             // an error on the page instead so the user knows what was wrong
-            velocityException = ex;
-
-            // need to lookup parse error template
-            renderException(model, out, "error-parse.vm");
+            renderException(model, out, ex, null);
 
         } catch (MethodInvocationException ex) {
 
             // in the case of a parsing error including a page we want to render
             // an error on the page instead so the user knows what was wrong
-            velocityException = ex;
-
-            // need to lookup parse error template
-            renderException(model, out, "error-parse.vm");
+            renderException(model, out, ex, null);
 
         } catch (VelocityException ex) {
 
             // in the case of a parsing error including a macro we want to
             // render an error page instead so the user knows what was wrong
-            velocityException = ex;
-
-            // need to lookup parse error template
-            renderException(model, out, "error-parse.vm");
+            renderException(model, out, ex, null);
 
         } catch (Exception ex) {
             // wrap and rethrow so caller can deal with it
@@ -211,31 +205,34 @@ public class VelocityRenderer implements Renderer {
      *            the model
      * @param out
      *            the out
+     * @param exception
+     *            the exception to show
      * @param template
-     *            the template. Null if using existing template name
+     *            the template. Null to use the parse error template
      * 
      * @throws RenderingException
      *             the rendering exception
      */
     private void renderException(Map<String, Object> model, Writer out,
-            String template) throws RenderingException {
+            Exception exception, org.apache.velocity.Template template)
+            throws RenderingException {
 
         try {
 
-            if (template != null) {
-                // need to lookup error page template
-                velocityTemplate = RollerVelocity.getTemplate(template,
+            if (template == null) {
+                // need to lookup parse error template
+                template = RollerVelocity.getTemplate("error-parse.vm",
                         deviceType);
             }
 
             Context ctx = new VelocityContext(model);
-            ctx.put("exception", velocityException);
+            ctx.put("exception", exception);
             ctx.put("exceptionSource", renderTemplate.getId());
             ctx.put("exceptionDevice", deviceType);
             ctx.put("utils", new UtilitiesModel());
 
             // render output to Writer
-            velocityTemplate.merge(ctx, out);
+            template.merge(ctx, out);
 
         } catch (Exception e) {
             // wrap and rethrow so caller can deal with it
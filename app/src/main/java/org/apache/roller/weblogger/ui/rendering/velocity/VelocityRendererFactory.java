@@ -18,9 +18,13 @@
 
 package org.apache.roller.weblogger.ui.rendering.velocity;
 
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.Template;
 import org.apache.roller.weblogger.pojos.TemplateRendition;
 import org.apache.roller.weblogger.pojos.TemplateRendition.RenditionType;
@@ -28,14 +32,57 @@ import org.apache.roller.weblogger.pojos.TemplateRendition.TemplateLanguage;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererFactory;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 
 
 /**
  * RendererFactory for Velocity, creates VelocityRenderers.
+ *
+ * Renderers are cached by template and device type, along with the last
+ * modified time of the template they were created for, and handed out
+ * again until the template changes.
  */
 public class VelocityRendererFactory implements RendererFactory {
     private static Log log = LogFactory.getLog(VelocityRendererFactory.class);
     
+    // a unique identifier for the renderer cache, this is used as the prefix
+    // for roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.velocityrenderer";
+    
+    private Cache rendererCache = null;
+    
+    
+    public VelocityRendererFactory() {
+        
+        // nothing is cached while developing themes, as with templates
+        if (!WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled")
+                || WebloggerConfig.getBooleanProperty("themes.reload.mode")) {
+            log.warn("Caching has been DISABLED");
+            return;
+        }
+        
+        Map<String, String> cacheProps = new HashMap<String, String>();
+        cacheProps.put("id", CACHE_ID);
+        Enumeration allProps = WebloggerConfig.keys();
+        String prop = null;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+            
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+        
+        log.info(cacheProps);
+        
+        // templates are versioned, so there is nothing to invalidate
+        rendererCache = CacheManager.constructCache(null, cacheProps);
+    }
+    
+    
     public Renderer getRenderer(Template template, 
 			MobileDeviceRepository.DeviceType deviceType) {
         Renderer renderer = null;
@@ -57,6 +104,18 @@ public class VelocityRendererFactory implements RendererFactory {
         }
         
         if (TemplateLanguage.VELOCITY.equals(tr.getTemplateLanguage())) {
+            
+            // check cache first
+            String key = RollerVelocity.getTemplateName(template, deviceType);
+            if (rendererCache != null) {
+                renderer = (Renderer) rendererCache.get(key);
+                if (renderer != null) {
+                    log.debug("HIT "+key);
+                    return renderer;
+                }
+                log.debug("MISS "+key);
+            }
+            
             // standard velocity template
             try {
                renderer = new VelocityRenderer(template, deviceType);
@@ -65,7 +124,11 @@ public class VelocityRendererFactory implements RendererFactory {
                 // some kind of exception so we don't have a renderer
                 // we do catching/logging in VelocityRenderer constructor
                 return null;
-            }            
+            }
+            
+            if (rendererCache != null) {
+                rendererCache.put(key, renderer);
+            }
         }
         return renderer;
     }
@@ -17,10 +17,6 @@
 */
 package org.apache.roller.weblogger.util;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
-
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
@@ -66,15 +62,9 @@ public final class BlacklistChecker {
      */
     public static boolean checkReferrer(Weblog website, String referrerURL) {
         if (WebloggerConfig.getBooleanProperty("site.blacklist.enable.referrers")) {
-            List<String> stringRules = new ArrayList<String>();
-            List<Pattern> regexRules = new ArrayList<Pattern>();
-            Blacklist.populateSpamRules(
-                website.getBlacklist(), stringRules, regexRules, null);
-            if (WebloggerRuntimeConfig.getProperty("spam.blacklist") != null) {
-                Blacklist.populateSpamRules(
-                    WebloggerRuntimeConfig.getProperty("spam.blacklist"), stringRules, regexRules, null);
-            }
-            return Blacklist.matchesRulesOnly(referrerURL, stringRules, regexRules);
+            BlacklistRules rules = BlacklistRules.forText(
+                website.getBlacklist(), WebloggerRuntimeConfig.getProperty("spam.blacklist"));
+            return referrerURL != null && rules.matches(referrerURL);
         }
         return false;
     }
@@ -85,17 +75,14 @@ public final class BlacklistChecker {
      */
     private static boolean testComment(WeblogEntryComment c) {
         boolean ret = false;
-        List<String> stringRules = new ArrayList<String>();
-        List<Pattern> regexRules = new ArrayList<Pattern>();
         Weblog website = c.getWeblogEntry().getWebsite();
-        Blacklist.populateSpamRules(
-            website.getBlacklist(), stringRules, regexRules, 
-            WebloggerRuntimeConfig.getProperty("spam.blacklist"));
+        BlacklistRules rules = BlacklistRules.forText(
+            website.getBlacklist(), WebloggerRuntimeConfig.getProperty("spam.blacklist"));
         Blacklist blacklist = Blacklist.getBlacklist();
-        if (   blacklist.isBlacklisted(c.getUrl(),     stringRules, regexRules)
-            || blacklist.isBlacklisted(c.getEmail(),   stringRules, regexRules)
-            || blacklist.isBlacklisted(c.getName(),    stringRules, regexRules)
-            || blacklist.isBlacklisted(c.getContent(), stringRules, regexRules)) {
+        if (   blacklist.isBlacklisted(c.getUrl(),     rules)
+            || blacklist.isBlacklisted(c.getEmail(),   rules)
+            || blacklist.isBlacklisted(c.getName(),    rules)
+            || blacklist.isBlacklisted(c.getContent(), rules)) {
             ret = true;
         }
         return ret;
@@ -0,0 +1,577 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * A set of blacklist rules, compiled once so that checking a string against
+ * it is cheap.
+ *
+ * String rules match whole words, case insensitively.  Plain words and
+ * domain names are all found in a single pass with an Aho-Corasick
+ * automaton, any dot in them matching a literal dot.  String rules using
+ * other regex syntax are compiled to word matching patterns, and those
+ * which aren't valid regexes match if the string contains them.
+ *
+ * Most regex rules start with a group of alternative words, as in
+ * "(viagra|xanax)[\w.]*\.com".  Those words are found in a single pass
+ * as well, and a regex rule is only run if one of its words is in the
+ * string.  Rules without such a group are always run.
+ */
+final class BlacklistRules {
+
+    private static Log log = LogFactory.getLog(BlacklistRules.class);
+
+    /** No rules at all. */
+    static final BlacklistRules EMPTY = new BlacklistRules(
+            Collections.<String>emptyList(), Collections.<Pattern>emptyList());
+
+    // compiled rule sets of the additional rules of callers
+    private static final int MAX_CACHED = 500;
+    private static final ConcurrentMap<Object, BlacklistRules> CACHE =
+            new ConcurrentHashMap<Object, BlacklistRules>();
+
+    // string rules
+    private final Automaton words;
+    private final List<Pattern> wordPatterns = new ArrayList<Pattern>();
+    private final List<String> containsRules = new ArrayList<String>();
+
+    // regex rules, the words of their leading groups and the rule of each
+    // of those words, and the rules which have to be run every time
+    private final List<Pattern> regexRules;
+    private final Automaton regexWords;
+    private final int[] regexWordRules;
+    private final List<Pattern> unfilteredRules = new ArrayList<Pattern>();
+
+
+    private BlacklistRules(Collection<String> stringRules, Collection<Pattern> regexRules) {
+
+        List<String> plain = new ArrayList<String>();
+        for (String rule : stringRules) {
+            if (rule == null || rule.length() == 0) {
+                continue;
+            }
+            if (isPlain(rule)) {
+                plain.add(rule);
+            } else {
+                try {
+                    wordPatterns.add(Pattern.compile("\\b(" + rule + ")\\b",
+                            Pattern.CASE_INSENSITIVE));
+                } catch (PatternSyntaxException e) {
+                    containsRules.add(rule);
+                }
+            }
+        }
+        this.words = plain.isEmpty() ? null : new Automaton(plain, true);
+
+        this.regexRules = new ArrayList<Pattern>(regexRules);
+        List<String> filterWords = new ArrayList<String>();
+        List<Integer> filterRules = new ArrayList<Integer>();
+        for (int i = 0; i < this.regexRules.size(); i++) {
+            List<String> ruleWords = getLeadingWords(this.regexRules.get(i));
+            if (ruleWords == null) {
+                unfilteredRules.add(this.regexRules.get(i));
+            } else {
+                for (String word : ruleWords) {
+                    filterWords.add(word);
+                    filterRules.add(i);
+                }
+            }
+        }
+        this.regexWords = filterWords.isEmpty() ? null : new Automaton(filterWords, false);
+        this.regexWordRules = new int[filterRules.size()];
+        for (int i = 0; i < regexWordRules.length; i++) {
+            regexWordRules[i] = filterRules.get(i);
+        }
+    }
+
+
+    /**
+     * Compile a set of rules.
+     */
+    static BlacklistRules compile(Collection<String> stringRules, Collection<Pattern> regexRules) {
+        return new BlacklistRules(
+                stringRules != null ? stringRules : Collections.<String>emptyList(),
+                regexRules != null ? regexRules : Collections.<Pattern>emptyList());
+    }
+
+
+    /**
+     * Get a compiled set of rules, reusing the one compiled earlier for the
+     * same rules.
+     */
+    static BlacklistRules forRules(List<String> stringRules, List<Pattern> regexRules) {
+
+        if ((stringRules == null || stringRules.isEmpty())
+                && (regexRules == null || regexRules.isEmpty())) {
+            return EMPTY;
+        }
+
+        StringBuilder key = new StringBuilder();
+        if (stringRules != null) {
+            for (String rule : stringRules) {
+                key.append(rule).append('\n');
+            }
+        }
+        key.append('\u0000');
+        if (regexRules != null) {
+            for (Pattern rule : regexRules) {
+                key.append(rule.flags()).append(':').append(rule.pattern()).append('\n');
+            }
+        }
+
+        String cacheKey = key.toString();
+        BlacklistRules rules = CACHE.get(cacheKey);
+        if (rules == null) {
+            rules = compile(stringRules, regexRules);
+            cache(cacheKey, rules);
+        }
+        return rules;
+    }
+
+
+    /**
+     * Get the compiled rules of blacklists in string form, as parsed by
+     * Blacklist.populateSpamRules(), reusing the ones compiled earlier for
+     * the same blacklists.  This is cheaper than forRules() as the text of
+     * a blacklist usually is the same string every time.
+     */
+    static BlacklistRules forText(String blacklist, String addendum) {
+
+        if (StringUtils.isBlank(blacklist) && StringUtils.isBlank(addendum)) {
+            return EMPTY;
+        }
+
+        TextKey key = new TextKey(blacklist, addendum);
+        BlacklistRules rules = CACHE.get(key);
+        if (rules == null) {
+            List<String> stringRules = new ArrayList<String>();
+            List<Pattern> regexRules = new ArrayList<Pattern>();
+            Blacklist.populateSpamRules(blacklist, stringRules, regexRules, addendum);
+            rules = compile(stringRules, regexRules);
+            cache(key, rules);
+        }
+        return rules;
+    }
+
+
+    /**
+     * Does the string match any rule?
+     */
+    boolean matches(String str) {
+        return matchesStringRules(str) || matchesRegexRules(str);
+    }
+
+
+    boolean matchesStringRules(String str) {
+
+        if (words != null) {
+            String match = words.find(str);
+            if (match != null) {
+                log.debug("matched:" + match + ":");
+                return true;
+            }
+        }
+
+        for (Pattern pattern : wordPatterns) {
+            if (pattern.matcher(str).find()) {
+                log.debug("matched:" + pattern.pattern() + ":");
+                return true;
+            }
+        }
+
+        for (String rule : containsRules) {
+            if (str.contains(rule)) {
+                log.debug("matched:" + rule + ":");
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    boolean matchesRegexRules(String str) {
+
+        if (regexWords != null) {
+            BitSet found = regexWords.findAll(str);
+            BitSet tested = new BitSet(regexRules.size());
+            for (int w = found.nextSetBit(0); w >= 0; w = found.nextSetBit(w + 1)) {
+                int rule = regexWordRules[w];
+                if (!tested.get(rule)) {
+                    tested.set(rule);
+                    if (matches(regexRules.get(rule), str)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        for (Pattern rule : unfilteredRules) {
+            if (matches(rule, str)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    int size() {
+        return (words != null ? words.size() : 0) + wordPatterns.size()
+                + containsRules.size() + regexRules.size();
+    }
+
+
+    private static boolean matches(Pattern rule, String str) {
+        Matcher matcher = rule.matcher(str);
+        if (matcher.find()) {
+            // want to see what it is matching on, but only in debug mode
+            if (log.isDebugEnabled()) {
+                log.debug(matcher.group() + " matched by " + rule.pattern());
+            }
+            return true;
+        }
+        return false;
+    }
+
+
+    private static void cache(Object key, BlacklistRules rules) {
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+        }
+        CACHE.put(key, rules);
+    }
+
+
+    /**
+     * Get the words of the group a regex starts with, one of which must be
+     * in any string the regex matches, or null if there is no such group.
+     */
+    private static List<String> getLeadingWords(Pattern rule) {
+
+        String regex = rule.pattern();
+        if (rule.flags() != 0 || !regex.startsWith("(")) {
+            return null;
+        }
+        int end = regex.indexOf(')');
+        if (end < 0 || regex.indexOf('(', 1) < end && regex.indexOf('(', 1) > 0) {
+            return null;
+        }
+        // the group must not be optional
+        if (end + 1 < regex.length() && "?*{".indexOf(regex.charAt(end + 1)) != -1) {
+            return null;
+        }
+        // nor one alternative of the whole regex
+        if (hasAlternation(regex, end + 1)) {
+            return null;
+        }
+
+        List<String> ruleWords = new ArrayList<String>();
+        for (String alternative : regex.substring(1, end).split("\\|", -1)) {
+            // word boundaries only make a match less likely
+            String word = alternative.replace("\\b", "");
+            if (word.length() == 0 || !isPlain(word) || word.indexOf('.') != -1) {
+                return null;
+            }
+            ruleWords.add(word);
+        }
+        return ruleWords;
+    }
+
+
+    /**
+     * Does the regex have an alternation outside of any group, starting at
+     * the given index?
+     */
+    private static boolean hasAlternation(String regex, int start) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Is the rule made of nothing but literal characters, apart from dots?
+     */
+    private static boolean isPlain(String rule) {
+        for (int i = 0; i < rule.length(); i++) {
+            if ("\\[](){}*+?^$|".indexOf(rule.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // as in java.util.regex, where CASE_INSENSITIVE only folds ascii
+    private static char toLower(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+
+    private static boolean isWord(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+
+    // a \b boundary at the given position
+    private static boolean isBoundary(String str, int pos) {
+        boolean before = pos > 0 && isWord(str.charAt(pos - 1));
+        boolean after = pos < str.length() && isWord(str.charAt(pos));
+        return before != after;
+    }
+
+
+    /**
+     * Cache key for the rules of blacklists in string form.
+     */
+    private static final class TextKey {
+
+        private final String blacklist;
+        private final String addendum;
+
+        TextKey(String blacklist, String addendum) {
+            this.blacklist = blacklist;
+            this.addendum = addendum;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof TextKey)) {
+                return false;
+            }
+            TextKey that = (TextKey) other;
+            return StringUtils.equals(blacklist, that.blacklist)
+                    && StringUtils.equals(addendum, that.addendum);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (blacklist != null ? blacklist.hashCode() : 0)
+                    + (addendum != null ? addendum.hashCode() : 0);
+        }
+    }
+
+
+    /**
+     * Aho-Corasick automaton finding any of a set of words in one pass,
+     * ignoring ascii case.
+     */
+    private static final class Automaton {
+
+        private final String[] words;
+        private final boolean wholeWords;
+
+        // per state, the sorted chars it has transitions for and the states
+        // they lead to, its failure state and the words ending in it
+        private final char[][] keys;
+        private final int[][] targets;
+        private final int[] fail;
+        private final int[][] outputs;
+
+
+        /**
+         * @param wordList   the words to find
+         * @param wholeWords only find words at word boundaries
+         */
+        Automaton(List<String> wordList, boolean wholeWords) {
+
+            this.words = wordList.toArray(new String[wordList.size()]);
+            this.wholeWords = wholeWords;
+
+            // build the trie
+            List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+            List<List<Integer>> out = new ArrayList<List<Integer>>();
+            trie.add(new TreeMap<Character, Integer>());
+            out.add(new ArrayList<Integer>());
+            for (int w = 0; w < words.length; w++) {
+                int state = 0;
+                for (int i = 0; i < words[w].length(); i++) {
+                    char c = toLower(words[w].charAt(i));
+                    Integer next = trie.get(state).get(c);
+                    if (next == null) {
+                        next = trie.size();
+                        trie.get(state).put(c, next);
+                        trie.add(new TreeMap<Character, Integer>());
+                        out.add(new ArrayList<Integer>());
+                    }
+                    state = next;
+                }
+                out.get(state).add(w);
+            }
+
+            int states = trie.size();
+            keys = new char[states][];
+            targets = new int[states][];
+            for (int s = 0; s < states; s++) {
+                keys[s] = new char[trie.get(s).size()];
+                targets[s] = new int[trie.get(s).size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> entry : trie.get(s).entrySet()) {
+                    keys[s][i] = entry.getKey();
+                    targets[s][i] = entry.getValue();
+                    i++;
+                }
+            }
+
+            // failure links, breadth first so shorter suffixes are done first
+            fail = new int[states];
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int t : targets[0]) {
+                queue[tail++] = t;
+            }
+            while (head < tail) {
+                int s = queue[head++];
+                for (int i = 0; i < keys[s].length; i++) {
+                    int t = targets[s][i];
+                    int f = fail[s];
+                    int next;
+                    while ((next = step(f, keys[s][i])) == -1 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[t] = (next == -1 || next == t) ? 0 : next;
+                    out.get(t).addAll(out.get(fail[t]));
+                    queue[tail++] = t;
+                }
+            }
+
+            outputs = new int[states][];
+            for (int s = 0; s < states; s++) {
+                List<Integer> o = out.get(s);
+                outputs[s] = new int[o.size()];
+                for (int i = 0; i < o.size(); i++) {
+                    outputs[s][i] = o.get(i);
+                }
+            }
+        }
+
+
+        int size() {
+            return words.length;
+        }
+
+
+        /**
+         * Find a word in the string.
+         *
+         * @return the word found, or null
+         */
+        String find(String str) {
+            int state = 0;
+            for (int i = 0; i < str.length(); i++) {
+                state = next(state, str.charAt(i));
+                for (int w : outputs[state]) {
+                    if (isMatch(str, w, i)) {
+                        return words[w];
+                    }
+                }
+            }
+            return null;
+        }
+
+
+        /**
+         * Find all words in the string.
+         *
+         * @return the indexes of the words found
+         */
+        BitSet findAll(String str) {
+            BitSet found = new BitSet(words.length);
+            int state = 0;
+            for (int i = 0; i < str.length(); i++) {
+                state = next(state, str.charAt(i));
+                for (int w : outputs[state]) {
+                    if (isMatch(str, w, i)) {
+                        found.set(w);
+                    }
+                }
+            }
+            return found;
+        }
+
+
+        private boolean isMatch(String str, int word, int end) {
+            return !wholeWords || (isBoundary(str, end + 1 - words[word].length())
+                    && isBoundary(str, end + 1));
+        }
+
+
+        private int next(int state, char c) {
+            char lower = toLower(c);
+            int next;
+            while ((next = step(state, lower)) == -1 && state != 0) {
+                state = fail[state];
+            }
+            return (next == -1) ? 0 : next;
+        }
+
+
+        private int step(int state, char c) {
+            char[] k = keys[state];
+            int lo = 0;
+            int hi = k.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (k[mid] < c) {
+                    lo = mid + 1;
+                } else if (k[mid] > c) {
+                    hi = mid - 1;
+                } else {
+                    return targets[state][mid];
+                }
+            }
+            return -1;
+        }
+    }
+
+}
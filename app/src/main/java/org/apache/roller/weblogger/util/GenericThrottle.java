@@ -17,13 +17,18 @@
 
 package org.apache.roller.weblogger.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.roller.weblogger.util.cache.Cache;
-import org.apache.roller.weblogger.util.cache.CacheManager;
-import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
 
 
 /**
@@ -32,19 +37,47 @@ import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
  * The basic idea is that if the # of hits from a client within a certain
  * interval of time is greater than the threshold value then the client is
  * considered to be abusive.
+ *
+ * Hits are counted per client in a sliding window: the count of the current
+ * interval plus the count of the previous interval, weighted by how much of
+ * it still overlaps the window.  Counters are updated without locking.  Once
+ * the max number of clients is reached, clients which haven't been seen for
+ * two intervals are evicted, and then the least recently seen ones until the
+ * number of clients is back below the max.
  */
 public class GenericThrottle {
     
     private static Log log = LogFactory.getLog(GenericThrottle.class);
     
+    // a client's state is its window number and hit count packed in a long
+    private static final int COUNT_BITS = 20;
+    private static final long MAX_COUNT = (1L << COUNT_BITS) - 1;
+    
+    // fraction of the max number of clients left after evicting
+    private static final double LOW_WATER_MARK = 0.9;
+    
     // threshold and interval to determine who is abusive
     private int threshold = 1;
-    private int interval = 0;
+    private int interval = 1;
+    
+    // max number of clients we keep track of
+    private final int maxEntries;
+    
+    private final ConcurrentMap<String, ClientWindow> clients =
+            new ConcurrentHashMap<String, ClientWindow>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
     
-    // a cache to maintain the data
-    Cache clientHistoryCache = null;
+    // for stats
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong abusiveHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
     
     
+    /**
+     * @param thresh     max number of hits allowed within the interval
+     * @param inter      interval in millis
+     * @param maxEntries max number of clients to keep track of
+     */
     public GenericThrottle(int thresh, int inter, int maxEntries) {
         
         // threshold can't be negative, that would mean everyone is abusive
@@ -58,18 +91,7 @@ public class GenericThrottle {
         }
         
         // max entries must be a positive value
-        if(maxEntries < 0) {
-            maxEntries = 1;
-        }
-        
-        // cache props
-        Map<String,String> cacheProps = new HashMap<String,String>();
-        cacheProps.put("id", "throttle");
-        cacheProps.put("size", ""+maxEntries);
-        cacheProps.put("timeout", ""+this.interval);
-        
-        // get cache instance.  handler is null cuz we don't want to register it
-        this.clientHistoryCache = CacheManager.constructCache(null, cacheProps);
+        this.maxEntries = Math.max(1, maxEntries);
     }
     
     
@@ -88,41 +110,31 @@ public class GenericThrottle {
             return false;
         }
         
-        // see if we have any info about this client yet
-        ClientInfo client = null;
-        ExpiringCacheEntry cacheEntry = (ExpiringCacheEntry) this.clientHistoryCache.get(clientId);
-        if(cacheEntry != null) {
-            log.debug("HIT "+clientId);
-            client = (ClientInfo) cacheEntry.getValue();
+        long now = now();
+        
+        ClientWindow client = clients.get(clientId);
+        if(client == null) {
+            log.debug("NEW "+clientId);
             
-            // this means entry had expired
+            if(clients.size() >= maxEntries) {
+                evict(now);
+            }
+            ClientWindow newClient = new ClientWindow();
+            client = clients.putIfAbsent(clientId, newClient);
             if(client == null) {
-                log.debug("EXPIRED "+clientId);
-                this.clientHistoryCache.remove(clientId);
+                client = newClient;
             }
         }
         
-        // if we already know this client then update their hit count and 
-        // see if they have surpassed the threshold
-        if(client != null) {
-            client.hits++;
-            
-            log.debug("STATUS "+clientId+" - "+client.hits+" hits since "+client.start);
-            
-            // abusive client
-            if(client.hits > this.threshold) {
-                return true;
-            }
-            
-        } else {
-            log.debug("NEW "+clientId);
-            
-            // first timer
-            ClientInfo newClient = new ClientInfo();
-            newClient.hits = 1;
-
-            ExpiringCacheEntry newEntry = new ExpiringCacheEntry(newClient, this.interval);
-            this.clientHistoryCache.put(clientId, newEntry);
+        hits.incrementAndGet();
+        double count = client.hit(now);
+        
+        log.debug("STATUS "+clientId+" - "+count+" hits");
+        
+        // abusive client
+        if(count > this.threshold) {
+            abusiveHits.incrementAndGet();
+            return true;
         }
         
         return false;
@@ -142,29 +154,186 @@ public class GenericThrottle {
             return false;
         }
         
-        // see if we have any info about this client
-        ClientInfo client = null;
-        ExpiringCacheEntry cacheEntry = (ExpiringCacheEntry) this.clientHistoryCache.get(clientId);
-        if(cacheEntry != null) {
-            log.debug("HIT "+clientId);
-            client = (ClientInfo) cacheEntry.getValue();
+        ClientWindow client = clients.get(clientId);
+        
+        return client != null && client.count(now()) > this.threshold;
+    }
+    
+    
+    /**
+     * Clients which are currently over the threshold, with their hit counts.
+     */
+    public Map<String, Integer> getAbusiveClients() {
+        
+        long now = now();
+        Map<String, Integer> abusive = new HashMap<String, Integer>();
+        for(Map.Entry<String, ClientWindow> entry : clients.entrySet()) {
+            double count = entry.getValue().count(now);
+            if(count > this.threshold) {
+                abusive.put(entry.getKey(), (int) Math.ceil(count));
+            }
+        }
+        return abusive;
+    }
+    
+    
+    /**
+     * Number of tracked clients, hits, hits from abusive clients and
+     * evicted clients.
+     */
+    public Map<String, Object> getStats() {
+        
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("clients", clients.size());
+        stats.put("hits", hits.get());
+        stats.put("abusiveHits", abusiveHits.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+    
+    
+    /**
+     * Current time in millis, can be overridden for testing.
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+    
+    
+    /**
+     * Make room for new clients.  Idle clients are dropped, and if that
+     * isn't enough the clients seen least recently are dropped too, down to
+     * a low water mark below the max number of clients.  Only one thread
+     * does this at a time, others wait for it and then find there is room,
+     * so the max number of clients is only exceeded by the clients added
+     * at the same moment.
+     */
+    private void evict(long now) {
+        
+        evictionLock.lock();
+        try {
+            // somebody else made room already
+            if(clients.size() < maxEntries) {
+                return;
+            }
             
-            // this means entry had expired
-            if (client == null) {
-                log.debug("EXPIRED "+clientId);
-                this.clientHistoryCache.remove(clientId);
+            int target = (int) (maxEntries * LOW_WATER_MARK);
+            int removed = 0;
+            List<Map.Entry<String, ClientWindow>> candidates =
+                    new ArrayList<Map.Entry<String, ClientWindow>>(clients.size());
+            for(Map.Entry<String, ClientWindow> entry : clients.entrySet()) {
+                if(now - entry.getValue().lastHit > 2L * interval) {
+                    if(clients.remove(entry.getKey(), entry.getValue())) {
+                        log.debug("EXPIRED "+entry.getKey());
+                        removed++;
+                    }
+                } else {
+                    candidates.add(entry);
+                }
             }
+            
+            if(clients.size() > target) {
+                // snapshot last hits before sorting since hits keep moving them
+                final Map<ClientWindow, Long> lastHits =
+                        new HashMap<ClientWindow, Long>(candidates.size());
+                for(Map.Entry<String, ClientWindow> entry : candidates) {
+                    lastHits.put(entry.getValue(), entry.getValue().lastHit);
+                }
+                Collections.sort(candidates, new Comparator<Map.Entry<String, ClientWindow>>() {
+                    public int compare(Map.Entry<String, ClientWindow> a, Map.Entry<String, ClientWindow> b) {
+                        long la = lastHits.get(a.getValue());
+                        long lb = lastHits.get(b.getValue());
+                        return la < lb ? -1 : (la == lb ? 0 : 1);
+                    }
+                });
+                
+                for(int i = 0; i < candidates.size() && clients.size() > target; i++) {
+                    Map.Entry<String, ClientWindow> entry = candidates.get(i);
+                    if(clients.remove(entry.getKey(), entry.getValue())) {
+                        log.debug("EVICTED "+entry.getKey());
+                        removed++;
+                    }
+                }
+            }
+            evictions.addAndGet(removed);
+        } finally {
+            evictionLock.unlock();
         }
-
-        return client != null && client.hits > this.threshold;
     }
     
     
-    // just something to keep a few properties in
-    private class ClientInfo {
+    // hit counts of one client, for the current and the previous interval
+    private class ClientWindow {
+        
+        // window number and count of the current interval
+        private final AtomicLong state = new AtomicLong();
+        
+        // count of the previous interval, set when moving to a new one
+        private volatile long previous = 0;
         
-        public int hits = 0;
-        public java.util.Date start = new java.util.Date();
+        private volatile long lastHit = now();
+        
+        
+        /**
+         * Count a hit and return the number of hits in the sliding window.
+         */
+        double hit(long now) {
+            
+            lastHit = now;
+            long window = now / interval;
+            
+            while(true) {
+                long current = state.get();
+                long currentWindow = current >>> COUNT_BITS;
+                long count = current & MAX_COUNT;
+                
+                long next;
+                if(currentWindow == window) {
+                    next = (window << COUNT_BITS) | Math.min(count + 1, MAX_COUNT);
+                } else {
+                    next = (window << COUNT_BITS) | 1;
+                }
+                
+                if(state.compareAndSet(current, next)) {
+                    if(currentWindow != window) {
+                        // the count we replaced is only of use if it was
+                        // for the interval right before this one
+                        previous = (currentWindow == window - 1) ? count : 0;
+                    }
+                    return estimate(next, previous, now);
+                }
+            }
+        }
+        
+        
+        /**
+         * Number of hits in the sliding window, without counting a hit.
+         */
+        double count(long now) {
+            return estimate(state.get(), previous, now);
+        }
+        
+        
+        private double estimate(long current, long prev, long now) {
+            
+            long window = now / interval;
+            long currentWindow = current >>> COUNT_BITS;
+            long count = current & MAX_COUNT;
+            
+            if(currentWindow == window - 1) {
+                // nothing yet in this interval, the current count is the
+                // previous one now
+                prev = count;
+                count = 0;
+            } else if(currentWindow != window) {
+                return 0;
+            }
+            
+            // part of the previous interval still within the window
+            double overlap = 1.0 - (double) (now % interval) / interval;
+            
+            return count + prev * overlap;
+        }
         
     }
     
@@ -22,8 +22,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.WeblogBookmark;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
@@ -64,6 +66,13 @@ public final class CacheManager {
     // a map of all registered caches
     private static Map<String, Cache> caches = new HashMap<String, Cache>();
     
+    // id used for the response encoding stats in getStats()
+    public static final String RESPONSE_ENCODING_STATS = "responseEncoding";
+    
+    // counts of cached content sent to clients compressed vs as is
+    private static final AtomicLong compressedResponses = new AtomicLong();
+    private static final AtomicLong identityResponses = new AtomicLong();
+    
     
     static {
         // lookup what cache factory we want to use
@@ -293,6 +302,11 @@ public final class CacheManager {
      * Flush a single cache.
      */
     public static void clear(String cacheId) {
+        if(RESPONSE_ENCODING_STATS.equals(cacheId)) {
+            compressedResponses.set(0);
+            identityResponses.set(0);
+            return;
+        }
         Cache cache = caches.get(cacheId);
         if(cache != null) {
             cache.clear();
@@ -313,10 +327,35 @@ public final class CacheManager {
         for (Cache cache : caches.values()) {
             allStats.put(cache.getId(), cache.getStats());
         }
+        
+        double compressed = compressedResponses.get();
+        double identity = identityResponses.get();
+        Map<String, Object> encodingStats = new HashMap<String, Object>();
+        encodingStats.put("compressed", compressed);
+        encodingStats.put("identity", identity);
+        if((compressed + identity) > 0) {
+            encodingStats.put("compressedRatio",
+                    compressed / (compressed + identity) * RollerConstants.PERCENT_100);
+        }
+        allStats.put(RESPONSE_ENCODING_STATS, encodingStats);
+        
         return allStats;
     }
     
     
+    /**
+     * Record that cached content was sent to a client, either gzip
+     * compressed or as is.
+     */
+    public static void recordResponse(boolean compressed) {
+        if(compressed) {
+            compressedResponses.incrementAndGet();
+        } else {
+            identityResponses.incrementAndGet();
+        }
+    }
+    
+    
     /**
      * Place to do any cleanup tasks for cache system.
      */
@@ -3,10 +3,18 @@ package org.apache.roller.weblogger.util.cache;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -14,13 +22,38 @@ import org.apache.roller.util.RollerConstants;
 
 /**
  * A utility class for storing cached content written to a java.io.Writer.
+ *
+ * Once closed the content may be moved off the java heap into a direct
+ * ByteBuffer via moveOffHeap(), which keeps large rendered pages out of the
+ * old generation while they sit in a cache.
+ *
+ * A gzip compressed variant of the content may also be created once via
+ * compress(), so that clients accepting gzip can be served the compressed
+ * bytes directly on every cache hit.
+ *
+ * Closed content has a strong entity tag derived from an MD5 hash of its
+ * bytes, which is computed once and kept for as long as the content lives.
+ *
+ * Content may also be written through to another stream, e.g. the response
+ * to a client, as it is written, keeping a copy of only up to a maximum size.
+ * Content which grew past the maximum is truncated and must not be cached.
  */
-public class CachedContent implements Serializable {
+public class CachedContent implements SizedContent, Serializable {
     
     private static Log log = LogFactory.getLog(CachedContent.class);
     
     // the byte array we use to maintain the cached content
-    private byte[] content = new byte[0];
+    private transient byte[] content = new byte[0];
+    
+    // the cached content when stored off heap, read-only
+    private transient volatile ByteBuffer offHeapContent = null;
+    
+    // optional gzip compressed variant of the content, on or off heap
+    private transient byte[] compressedContent = null;
+    private transient volatile ByteBuffer offHeapCompressedContent = null;
+    
+    // strong entity tag derived from a hash of the content
+    private transient volatile String eTag = null;
     
     // content-type of data in byte array
     private String contentType = null;
@@ -31,31 +64,53 @@ public class CachedContent implements Serializable {
     // The PrintWriter that users will be writing to
     private transient PrintWriter cachedWriter = null;
     
+    // stream the content is written through to, and max size of our copy
+    private transient OutputStream teeStream = null;
+    private transient int maxSize = Integer.MAX_VALUE;
+    
+    // true if the content grew past the max size and our copy was dropped
+    private transient boolean truncated = false;
+    
     
     public CachedContent(int size) {
+        this(size, null, null, Integer.MAX_VALUE);
+    }
+    
+    public CachedContent(int size, String contentType) {
+        this(size, contentType, null, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Construct content which is written through to the given stream as it
+     * is written, keeping a copy of at most maxSize bytes.
+     *
+     * Errors writing to the stream are logged and the stream is not written
+     * to again, so that a client going away doesn't affect our copy.  The
+     * stream is flushed along with the content, but never closed.
+     */
+    public CachedContent(int size, String contentType, OutputStream out, int maxSize) {
+        
+        this.contentType = contentType;
+        this.teeStream = out;
+        this.maxSize = maxSize;
         
         // construct output stream
         if(size > 0) {
-            this.outstream = new ByteArrayOutputStream(size);
+            this.outstream = new ByteArrayOutputStream(Math.min(size, maxSize));
         } else {
             this.outstream = new ByteArrayOutputStream(RollerConstants.EIGHT_KB_IN_BYTES);
         }
         
         // construct writer from output stream
         try {
-            this.cachedWriter =
-                    new PrintWriter(new OutputStreamWriter(this.outstream, "UTF-8"));
+            this.cachedWriter = new PrintWriter(new OutputStreamWriter(
+                    (out != null) ? new TeeOutputStream() : this.outstream, "UTF-8"));
         } catch(UnsupportedEncodingException e) {
             // shouldn't be possible, java always supports utf-8
             throw new RuntimeException("Encoding problem", e);
         }
     }
     
-    public CachedContent(int size, String contentType) {
-        this(size);
-        this.contentType = contentType;
-    }
-    
     
     /**
      * Get the content cached in this object as a byte array.  If you convert
@@ -63,12 +118,253 @@ public class CachedContent implements Serializable {
      *
      * NOTE: the content is only a representation of the data written to the
      *       enclosed Writer up until the last call to flush().
+     *
+     * If the content has been moved off heap then this returns a copy, so
+     * prefer writeTo() for sending content to a client.
      */
     public byte[] getContent() {
+        ByteBuffer buffer = this.offHeapContent;
+        if (buffer != null) {
+            byte[] copy = new byte[buffer.capacity()];
+            buffer.duplicate().get(copy);
+            return copy;
+        }
         return this.content;
     }
     
     
+    /**
+     * Get the number of bytes of content cached in this object.
+     */
+    public int getContentLength() {
+        ByteBuffer buffer = this.offHeapContent;
+        if (buffer != null) {
+            return buffer.capacity();
+        }
+        return this.content.length;
+    }
+    
+    
+    /**
+     * Write the content cached in this object to the given stream.
+     *
+     * Off heap content is copied to the stream in small chunks, so no heap
+     * array of the full content size is ever created.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = this.offHeapContent;
+        if (buffer != null) {
+            write(buffer, out);
+        } else {
+            out.write(this.content);
+        }
+    }
+    
+    
+    /**
+     * The cached size of this object, which is the length of the content
+     * plus the length of the compressed variant, if any.
+     */
+    public int getCachedSize() {
+        return getContentLength() + getCompressedContentLength();
+    }
+    
+    
+    /**
+     * Create a gzip compressed variant of the content.
+     *
+     * The compressed variant is only kept when it is actually smaller than
+     * the content, so callers should check hasCompressedContent() afterwards.
+     *
+     * @throws IllegalStateException if calling compress() before close()
+     */
+    public synchronized void compress() throws IOException {
+        
+        if(this.outstream != null) {
+            throw new IllegalStateException("Cannot compress() before close()!");
+        }
+        
+        if(hasCompressedContent()) {
+            return;
+        }
+        
+        byte[] bytes = getContent();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        try {
+            gzip.write(bytes);
+        } finally {
+            gzip.close();
+        }
+        
+        if(compressed.size() < bytes.length) {
+            if(this.offHeapContent != null) {
+                this.offHeapCompressedContent = toOffHeap(compressed.toByteArray());
+            } else {
+                this.compressedContent = compressed.toByteArray();
+            }
+            log.debug("COMPRESSED "+bytes.length+" -> "+compressed.size());
+        }
+    }
+    
+    
+    /**
+     * True if a gzip compressed variant of the content is available.
+     */
+    public boolean hasCompressedContent() {
+        return this.offHeapCompressedContent != null || this.compressedContent != null;
+    }
+    
+    
+    /**
+     * Get the length of the compressed variant, or 0 if there is none.
+     */
+    public int getCompressedContentLength() {
+        ByteBuffer buffer = this.offHeapCompressedContent;
+        if (buffer != null) {
+            return buffer.capacity();
+        }
+        return (this.compressedContent != null) ? this.compressedContent.length : 0;
+    }
+    
+    
+    /**
+     * Write the gzip compressed variant of the content to the given stream.
+     *
+     * @throws IllegalStateException if there is no compressed variant
+     */
+    public void writeCompressedTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = this.offHeapCompressedContent;
+        if (buffer != null) {
+            write(buffer, out);
+        } else if (this.compressedContent != null) {
+            out.write(this.compressedContent);
+        } else {
+            throw new IllegalStateException("No compressed content available");
+        }
+    }
+    
+    
+    /**
+     * Move the content of this object off the java heap.
+     *
+     * Only content which is closed to further writing can be moved, and the
+     * move is a no-op if the content already lives off heap.
+     *
+     * @throws IllegalStateException if calling moveOffHeap() before close()
+     */
+    public synchronized void moveOffHeap() {
+        
+        if(this.outstream != null) {
+            throw new IllegalStateException("Cannot moveOffHeap() before close()!");
+        }
+        
+        if(this.offHeapContent != null) {
+            return;
+        }
+        
+        this.offHeapContent = toOffHeap(this.content);
+        this.content = new byte[0];
+        
+        if(this.compressedContent != null) {
+            this.offHeapCompressedContent = toOffHeap(this.compressedContent);
+            this.compressedContent = null;
+        }
+        
+        log.debug("MOVED OFF HEAP "+this.offHeapContent.capacity());
+    }
+    
+    
+    /**
+     * Get the strong entity tag for the content, quoted as it should appear
+     * in an ETag header.
+     *
+     * @throws IllegalStateException if calling getETag() before close()
+     */
+    public String getETag() {
+        
+        String tag = this.eTag;
+        if (tag != null) {
+            return tag;
+        }
+        
+        if(this.outstream != null) {
+            throw new IllegalStateException("Cannot getETag() before close()!");
+        }
+        
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            // shouldn't be possible, every java platform supports md5
+            throw new RuntimeException(ex);
+        }
+        
+        ByteBuffer buffer = this.offHeapContent;
+        if (buffer != null) {
+            digest.update(buffer.duplicate());
+        } else {
+            digest.update(this.content);
+        }
+        
+        StringBuilder hex = new StringBuilder("\"");
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        tag = hex.append('"').toString();
+        
+        this.eTag = tag;
+        return tag;
+    }
+    
+    
+    /**
+     * Get the strong entity tag for the compressed variant of the content,
+     * or null if there is no compressed variant.
+     */
+    public String getCompressedETag() {
+        if (!hasCompressedContent()) {
+            return null;
+        }
+        String tag = getETag();
+        return tag.substring(0, tag.length() - 1) + "-gzip\"";
+    }
+    
+    
+    /**
+     * Prepare closed content for storage in a cache, optionally creating its
+     * compressed variant and moving it off the java heap.  The entity tag is
+     * always computed here so that cache hits never pay for hashing.
+     *
+     * Failure to compress is logged and the content is cached as is.
+     */
+    public void prepareForCaching(boolean compress, boolean offHeap) {
+        
+        getETag();
+        
+        if(compress) {
+            try {
+                compress();
+            } catch (IOException ex) {
+                log.warn("Unable to compress cached content", ex);
+            }
+        }
+        
+        if(offHeap) {
+            moveOffHeap();
+        }
+    }
+    
+    
+    /**
+     * True if the content of this object is stored off the java heap.
+     */
+    public boolean isOffHeap() {
+        return this.offHeapContent != null;
+    }
+    
+    
     /**
      * Get the content cached in this object as a String.
      *
@@ -77,7 +373,7 @@ public class CachedContent implements Serializable {
      */
     public String getContentAsString() {
         try {
-            return new String(this.content,"UTF-8");
+            return new String(getContent(),"UTF-8");
         } catch (UnsupportedEncodingException uex) {
             // shouldn't ever happen - violates Java Spec.
             throw new RuntimeException(uex);
@@ -95,10 +391,22 @@ public class CachedContent implements Serializable {
     }
     
     
+    /**
+     * True if more content than the max size was written, in which case only
+     * the stream written through to got all of it.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    
     /**
      * Called to flush any output in the cached Writer to
      * the cached content for more permanent storage.
      *
+     * Content written through to another stream is flushed to that stream
+     * instead, and is only available from this object after close().
+     *
      * @throws IllegalStateException if calling flush() after a close()
      */
     public void flush() {
@@ -108,9 +416,11 @@ public class CachedContent implements Serializable {
         }
         
         this.cachedWriter.flush();
-        this.content = this.outstream.toByteArray();
+        if(this.teeStream == null) {
+            this.content = this.outstream.toByteArray();
+        }
         
-        log.debug("FLUSHED "+this.content.length);
+        log.debug("FLUSHED "+this.outstream.size());
     }
     
     
@@ -131,7 +441,101 @@ public class CachedContent implements Serializable {
             this.outstream = null;
         }
         
+        this.teeStream = null;
+        
         log.debug("CLOSED");
     }
     
+    
+    /**
+     * Writes to the tee stream, and to our copy until it would grow past the
+     * max size, at which point the copy is dropped.
+     */
+    private class TeeOutputStream extends OutputStream {
+        
+        public void write(int b) throws IOException {
+            if(!truncated) {
+                if(outstream.size() < maxSize) {
+                    outstream.write(b);
+                } else {
+                    truncate();
+                }
+            }
+            if(teeStream != null) {
+                try {
+                    teeStream.write(b);
+                } catch (IOException ex) {
+                    teeFailed(ex);
+                }
+            }
+        }
+        
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(!truncated) {
+                if(outstream.size() + len <= maxSize) {
+                    outstream.write(b, off, len);
+                } else {
+                    truncate();
+                }
+            }
+            if(teeStream != null) {
+                try {
+                    teeStream.write(b, off, len);
+                } catch (IOException ex) {
+                    teeFailed(ex);
+                }
+            }
+        }
+        
+        public void flush() throws IOException {
+            if(teeStream != null) {
+                try {
+                    teeStream.flush();
+                } catch (IOException ex) {
+                    teeFailed(ex);
+                }
+            }
+        }
+        
+        private void truncate() {
+            truncated = true;
+            outstream = new ByteArrayOutputStream(0);
+            log.debug("TRUNCATED at "+maxSize);
+        }
+        
+        private void teeFailed(IOException ex) {
+            teeStream = null;
+            log.debug("Error writing through content, stopped", ex);
+        }
+    }
+    
+    
+    private static ByteBuffer toOffHeap(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+    
+    
+    private static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+        // duplicate so concurrent readers each get their own position
+        Channels.newChannel(out).write(buffer.duplicate());
+    }
+    
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        byte[] bytes = getContent();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.content = new byte[in.readInt()];
+        in.readFully(this.content);
+    }
+    
 }
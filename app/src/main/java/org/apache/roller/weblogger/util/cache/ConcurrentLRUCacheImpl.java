@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * An expiring cache with approximate LRU eviction which does not need a
+ * global lock for reads or writes.
+ *
+ * Entries live in a ConcurrentHashMap and carry a logical access stamp which
+ * is bumped on every hit.  When the cache grows past its maximum size a single
+ * thread (whichever wins a tryLock) sweeps the map, drops expired entries and
+ * then evicts the least recently stamped entries until the cache is back
+ * under a low water mark.  Other threads never wait on the sweep, so the cache
+ * may briefly hold a few more entries than its configured size.
+ *
+ * A cache may optionally be bounded by bytes as well as by entries.  Values
+ * implementing SizedContent are weighed by their cached size and the sweep
+ * also evicts until the total is back under the low water mark of maxBytes.
+ */
+public class ConcurrentLRUCacheImpl implements Cache {
+
+    private static Log log = LogFactory.getLog(ConcurrentLRUCacheImpl.class);
+
+    // fraction of maxsize we shrink down to when evicting, so that a sweep
+    // happens once per batch of puts rather than on every put
+    private static final double LOW_WATER_MARK = 0.9;
+
+    private String id = null;
+    private int maxsize = 100;
+    private long timeout = 0;
+    private long maxBytes = 0;
+
+    private final ConcurrentMap<String, CacheEntry> cache;
+
+    // logical clock used to order entries by recency of access
+    private final AtomicLong clock = new AtomicLong();
+
+    // total content bytes of all cached values which are SizedContent
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    // only one thread at a time sweeps for evictions
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // for metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong removes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private volatile Date startTime = new Date();
+
+
+    protected ConcurrentLRUCacheImpl(String id, int maxsize, long timeout) {
+        this(id, maxsize, timeout, 0);
+    }
+
+
+    protected ConcurrentLRUCacheImpl(String id, int maxsize, long timeout, long maxBytes) {
+
+        this.id = id;
+
+        // only positive values allowed, 0 means no byte limit
+        if (maxBytes > 0) {
+            this.maxBytes = maxBytes;
+        }
+
+        if (maxsize > 0) {
+            this.maxsize = maxsize;
+        }
+
+        // timeout is specified in seconds; only positive values allowed
+        if (timeout > 0) {
+            this.timeout = timeout * RollerConstants.SEC_IN_MS;
+        }
+
+        int concurrency = Math.max(16, Runtime.getRuntime().availableProcessors() * 2);
+        this.cache = new ConcurrentHashMap<String, CacheEntry>(
+                this.maxsize * 4 / 3 + 1, 0.75f, concurrency);
+    }
+
+
+    public String getId() {
+        return this.id;
+    }
+
+
+    /**
+     * Store an entry in the cache.
+     */
+    public void put(String key, Object value) {
+
+        if (key == null || value == null) {
+            return;
+        }
+
+        CacheEntry entry = new CacheEntry(value, clock.incrementAndGet());
+
+        // an entry which can never fit is simply not cached
+        if (this.maxBytes > 0 && entry.weight > this.maxBytes) {
+            log.debug("TOO BIG ["+key+"] "+entry.weight);
+            remove(key);
+            return;
+        }
+
+        CacheEntry previous = this.cache.put(key, entry);
+        totalBytes.addAndGet(entry.weight - (previous != null ? previous.weight : 0));
+        puts.incrementAndGet();
+
+        if (isOverLimit(this.maxsize, this.maxBytes)) {
+            evict();
+        }
+    }
+
+
+    /**
+     * Retrieve an entry from the cache.
+     *
+     * If the cached object has expired then we return null, just as if the
+     * entry wasn't found.
+     */
+    public Object get(String key) {
+
+        CacheEntry entry = this.cache.get(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.hasExpired(System.currentTimeMillis())) {
+            log.debug("EXPIRED ["+key+"]");
+            // only remove the exact entry we saw, a fresh put may have won
+            if (this.cache.remove(key, entry)) {
+                totalBytes.addAndGet(-entry.weight);
+                expirations.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        entry.lastAccess = clock.incrementAndGet();
+        hits.incrementAndGet();
+
+        return entry.value;
+    }
+
+
+    public void remove(String key) {
+
+        CacheEntry previous = this.cache.remove(key);
+        if (previous != null) {
+            totalBytes.addAndGet(-previous.weight);
+        }
+        removes.incrementAndGet();
+    }
+
+
+    public void clear() {
+
+        // remove one by one so the byte count stays in step with any
+        // concurrent puts
+        for (Map.Entry<String, CacheEntry> e : this.cache.entrySet()) {
+            if (this.cache.remove(e.getKey(), e.getValue())) {
+                totalBytes.addAndGet(-e.getValue().weight);
+            }
+        }
+
+        // clear metrics
+        hits.set(0);
+        misses.set(0);
+        puts.set(0);
+        removes.set(0);
+        evictions.set(0);
+        expirations.set(0);
+        startTime = new Date();
+    }
+
+
+    public Map<String, Object> getStats() {
+
+        double h = hits.get();
+        double m = misses.get();
+
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("startTime", this.startTime);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("puts", (double) puts.get());
+        stats.put("removes", (double) removes.get());
+        stats.put("evictions", (double) evictions.get());
+        stats.put("expirations", (double) expirations.get());
+        stats.put("size", this.cache.size());
+        stats.put("bytes", totalBytes.get());
+        if (this.maxBytes > 0) {
+            stats.put("maxBytes", this.maxBytes);
+        }
+
+        // calculate efficiency
+        if ((h + m) > 0) {
+            double efficiency = h / (m + h);
+            stats.put("efficiency", efficiency * RollerConstants.PERCENT_100);
+        }
+
+        return stats;
+    }
+
+
+    /**
+     * Bring the cache back under its low water mark.
+     *
+     * Expired entries go first, then the least recently accessed entries.
+     * If another thread is already sweeping we simply return.
+     */
+    private void evict() {
+
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            int target = (int) (this.maxsize * LOW_WATER_MARK);
+            long targetBytes = (long) (this.maxBytes * LOW_WATER_MARK);
+            long now = System.currentTimeMillis();
+
+            List<Map.Entry<String, CacheEntry>> candidates =
+                    new ArrayList<Map.Entry<String, CacheEntry>>(this.cache.size());
+            for (Map.Entry<String, CacheEntry> e : this.cache.entrySet()) {
+                if (e.getValue().hasExpired(now)) {
+                    if (this.cache.remove(e.getKey(), e.getValue())) {
+                        totalBytes.addAndGet(-e.getValue().weight);
+                        expirations.incrementAndGet();
+                    }
+                } else {
+                    candidates.add(e);
+                }
+            }
+
+            if (!isOverLimit(target, targetBytes)) {
+                return;
+            }
+
+            // snapshot stamps before sorting since hits keep moving them
+            final Map<CacheEntry, Long> stamps = new HashMap<CacheEntry, Long>(candidates.size());
+            for (Map.Entry<String, CacheEntry> e : candidates) {
+                stamps.put(e.getValue(), e.getValue().lastAccess);
+            }
+            Collections.sort(candidates, new Comparator<Map.Entry<String, CacheEntry>>() {
+                public int compare(Map.Entry<String, CacheEntry> a, Map.Entry<String, CacheEntry> b) {
+                    long sa = stamps.get(a.getValue());
+                    long sb = stamps.get(b.getValue());
+                    return sa < sb ? -1 : (sa == sb ? 0 : 1);
+                }
+            });
+
+            for (int i = 0; i < candidates.size() && isOverLimit(target, targetBytes); i++) {
+                Map.Entry<String, CacheEntry> e = candidates.get(i);
+                if (this.cache.remove(e.getKey(), e.getValue())) {
+                    totalBytes.addAndGet(-e.getValue().weight);
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    private boolean isOverLimit(int entries, long bytes) {
+        return this.cache.size() > entries
+                || (this.maxBytes > 0 && totalBytes.get() > bytes);
+    }
+
+
+    /**
+     * A cached value along with its weight, creation time and last access stamp.
+     */
+    private class CacheEntry {
+
+        private final Object value;
+        private final long timeCached;
+        private final int weight;
+        private volatile long lastAccess;
+
+        CacheEntry(Object value, long stamp) {
+            this.value = value;
+            this.weight = (value instanceof SizedContent)
+                    ? ((SizedContent) value).getCachedSize() : 0;
+            this.timeCached = System.currentTimeMillis();
+            this.lastAccess = stamp;
+        }
+
+        boolean hasExpired(long now) {
+            return timeout > 0 && (this.timeCached + timeout) < now;
+        }
+    }
+
+}
@@ -42,7 +42,7 @@ import java.io.Serializable;
  * invalidate.  Instead we can just sit back and let the items be invalidated as
  * we try to use them.
  */
-public class LazyExpiringCacheEntry implements Serializable {
+public class LazyExpiringCacheEntry implements SizedContent, Serializable {
     
     private Object value = null;
     private long timeCached = -1;
@@ -81,4 +81,15 @@ public class LazyExpiringCacheEntry implements Serializable {
         return timeCached;
     }
     
+    
+    /**
+     * The cached size of the wrapped object, or 0 if it is not sized.
+     */
+    public int getCachedSize() {
+        if (this.value instanceof SizedContent) {
+            return ((SizedContent) this.value).getCachedSize();
+        }
+        return 0;
+    }
+    
 }
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.planet.business;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.planet.business.updater.ParallelFeedUpdater;
+import org.apache.roller.planet.pojos.Planet;
+import org.apache.roller.planet.pojos.PlanetGroup;
+import org.apache.roller.planet.pojos.Subscription;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+
+
+/**
+ * Test parallel feed updater against feeds served from a local http server.
+ */
+public class ParallelFeedUpdaterTest extends TestCase {
+
+    public static Log log = LogFactory.getLog(ParallelFeedUpdaterTest.class);
+
+    private static final int FEEDS = 6;
+    private static final int THREADS_PER_HOST = 2;
+
+    private HttpServer server = null;
+    private String baseURL = null;
+
+    // requests being served right now, and the most there ever were
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private Planet testPlanet = null;
+    private PlanetGroup testGroup = null;
+    private List<Subscription> testSubs = new ArrayList<Subscription>();
+
+
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new FeedHandler());
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseURL = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        // setup planet
+        TestUtils.setupWeblogger();
+
+        testPlanet = TestUtils.setupPlanet("parallelUpdaterTest");
+        testGroup = TestUtils.setupGroup(testPlanet, "parallelUpdaterTest");
+
+        List<String> urls = new ArrayList<String>();
+        for (int i = 0; i < FEEDS; i++) {
+            urls.add(baseURL + "/feed/" + i);
+        }
+        urls.add(baseURL + "/slow");
+        urls.add(baseURL + "/missing");
+
+        for (String url : urls) {
+            Subscription sub = TestUtils.setupSubscription(url);
+            testGroup.getSubscriptions().add(sub);
+            sub.getGroups().add(testGroup);
+            testSubs.add(sub);
+        }
+        WebloggerFactory.getWeblogger().getPlanetManager().saveGroup(testGroup);
+        WebloggerFactory.getWeblogger().flush();
+    }
+
+
+    protected void tearDown() throws Exception {
+        for (Subscription sub : testSubs) {
+            TestUtils.teardownSubscription(sub.getId());
+        }
+        TestUtils.teardownGroup(testGroup.getId());
+        TestUtils.teardownPlanet(testPlanet.getId());
+        server.stop(0);
+    }
+
+
+    public void testUpdateSubscriptions() throws Exception {
+
+        PlanetManager mgr = WebloggerFactory.getWeblogger().getPlanetManager();
+        PlanetGroup group = mgr.getGroupById(testGroup.getId());
+
+        ParallelFeedUpdater updater = new ParallelFeedUpdater(4, THREADS_PER_HOST, 1000, 4);
+        updater.updateSubscriptions(group);
+        TestUtils.endSession(true);
+
+        // all good feeds were saved, over two commits
+        Map<String, Object> stats = updater.getLastStats();
+        log.info("Update stats: " + stats);
+        assertEquals(FEEDS + 2, stats.get("subscriptions"));
+        assertEquals(FEEDS, stats.get("updated"));
+        assertEquals(1, stats.get("failed"));
+        assertEquals(1, stats.get("timedOut"));
+        assertEquals(FEEDS * 2, stats.get("entriesInserted"));
+        assertEquals(2, stats.get("batches"));
+        assertEquals((long) FEEDS, stats.get("parsed"));
+        assertTrue((Long) stats.get("bytesDownloaded") > 0);
+
+        for (int i = 0; i < FEEDS; i++) {
+            Subscription sub = mgr.getSubscription(baseURL + "/feed/" + i);
+            assertEquals("Feed " + i, sub.getTitle());
+            assertNotNull(sub.getLastUpdated());
+            assertEquals(2, sub.getEntries().size());
+        }
+        assertEquals(0, mgr.getSubscription(baseURL + "/missing").getEntries().size());
+        assertEquals(0, mgr.getSubscription(baseURL + "/slow").getEntries().size());
+
+        // the server only ever saw a couple of requests at once
+        assertTrue(maxActive.get() <= THREADS_PER_HOST);
+
+        // feed content hasn't changed since, so a second update doesn't
+        // parse or write anything
+        group = mgr.getGroupById(testGroup.getId());
+        updater.updateSubscriptions(group);
+        TestUtils.endSession(true);
+
+        stats = updater.getLastStats();
+        assertEquals(0, stats.get("updated"));
+        assertEquals(FEEDS, stats.get("unchanged"));
+        assertEquals(0, stats.get("batches"));
+        assertEquals((long) FEEDS, stats.get("unchangedContent"));
+        assertEquals(0L, stats.get("parsed"));
+    }
+
+    public static Test suite() {
+        return new TestSuite(ParallelFeedUpdaterTest.class);
+    }
+
+
+    private class FeedHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            int now = active.incrementAndGet();
+            int max = maxActive.get();
+            while (now > max && !maxActive.compareAndSet(max, now)) {
+                max = maxActive.get();
+            }
+            try {
+                String path = exchange.getRequestURI().getPath();
+                if (path.equals("/slow")) {
+                    try {
+                        Thread.sleep(3000);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (!path.startsWith("/feed/")) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                byte[] body = atomFeed(path.substring("/feed/".length())).getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/atom+xml");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            } finally {
+                active.decrementAndGet();
+                exchange.close();
+            }
+        }
+
+        private String atomFeed(String num) {
+            StringBuilder feed = new StringBuilder();
+            feed.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+            feed.append("<feed xmlns=\"http://www.w3.org/2005/Atom\">");
+            feed.append("<title>Feed ").append(num).append("</title>");
+            feed.append("<link href=\"").append(baseURL).append("/site/").append(num).append("\"/>");
+            feed.append("<id>urn:feed:").append(num).append("</id>");
+            feed.append("<updated>2014-06-01T12:00:00Z</updated>");
+            for (int i = 0; i < 2; i++) {
+                feed.append("<entry>");
+                feed.append("<title>Entry ").append(num).append('-').append(i).append("</title>");
+                feed.append("<link href=\"").append(baseURL).append("/site/").append(num)
+                        .append('/').append(i).append("\"/>");
+                feed.append("<id>urn:feed:").append(num).append(':').append(i).append("</id>");
+                feed.append("<updated>2014-06-01T1").append(i).append(":00:00Z</updated>");
+                feed.append("<author><name>test</name></author>");
+                feed.append("<content>Entry content</content>");
+                feed.append("</entry>");
+            }
+            feed.append("</feed>");
+            return feed.toString();
+        }
+    }
+
+}
@@ -64,6 +64,7 @@ public class PlanetTestSuite {
         
         // updating
         suite.addTestSuite(SingleThreadedFeedUpdaterTest.class);
+        suite.addTestSuite(ParallelFeedUpdaterTest.class);
         
         return suite;
     }
@@ -16,6 +16,12 @@
 
 package org.apache.roller.planet.business;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import junit.framework.TestCase;
@@ -24,6 +30,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
 import org.apache.roller.planet.business.fetcher.FeedFetcher;
 import org.apache.roller.planet.business.fetcher.FetcherException;
+import org.apache.roller.planet.business.fetcher.RomeFeedFetcher;
 import org.apache.roller.planet.pojos.Subscription;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 
@@ -91,4 +98,78 @@ public class RomeFeedFetcherTest extends TestCase {
         }
     }
     
+    
+    public void testFetchTimesOut() throws Exception {
+        // a host which accepts connections but never answers
+        ServerSocket server = new ServerSocket(0);
+        try {
+            FeedFetcher feedFetcher = new RomeFeedFetcher(500);
+            long start = System.currentTimeMillis();
+            try {
+                feedFetcher.fetchSubscription("http://localhost:" + server.getLocalPort() + "/feed");
+                fail("fetch from a silent host succeeded");
+            } catch (FetcherException expected) {
+                // expected
+            }
+            assertTrue(System.currentTimeMillis() - start < 10000);
+        } finally {
+            server.close();
+        }
+    }
+    
+    
+    public void testLongValidatorsIgnored() throws Exception {
+        StringBuilder etag = new StringBuilder("\"");
+        for (int i = 0; i < 300; i++) {
+            etag.append('x');
+        }
+        etag.append('"');
+        
+        final ServerSocket server = new ServerSocket(0);
+        final String response = "HTTP/1.0 200 OK\r\n"
+                + "Content-Type: application/atom+xml\r\n"
+                + "ETag: " + etag + "\r\n"
+                + "Last-Modified: Sat, 17 Oct 2026 10:00:00 GMT\r\n"
+                + "\r\n"
+                + "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+                + "<feed xmlns=\"http://www.w3.org/2005/Atom\"><title>Long ETag</title>"
+                + "<id>urn:test:longetag</id><updated>2026-10-17T10:00:00Z</updated></feed>";
+        Thread answer = new Thread() {
+            public void run() {
+                try {
+                    Socket socket = server.accept();
+                    try {
+                        BufferedReader in = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                        String line;
+                        while ((line = in.readLine()) != null && line.length() > 0) {
+                            // skip request
+                        }
+                        OutputStream out = socket.getOutputStream();
+                        out.write(response.getBytes("UTF-8"));
+                        out.flush();
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException ex) {
+                    log.error("Error answering fetch", ex);
+                }
+            }
+        };
+        answer.start();
+        try {
+            FeedFetcher feedFetcher = new RomeFeedFetcher(5000);
+            Subscription sub = feedFetcher.fetchSubscription(
+                    "http://localhost:" + server.getLocalPort() + "/feed");
+            
+            // the etag doesn't fit its column, so it isn't kept
+            assertEquals("Long ETag", sub.getTitle());
+            assertNull(sub.getEtag());
+            assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", sub.getLastModified());
+        } finally {
+            server.close();
+            answer.join(5000);
+        }
+    }
+    
 }
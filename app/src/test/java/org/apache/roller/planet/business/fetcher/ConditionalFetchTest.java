@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.planet.business.fetcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.planet.pojos.Subscription;
+
+
+/**
+ * Test conditional fetching by RomeFeedFetcher against a local http server.
+ */
+public class ConditionalFetchTest extends TestCase {
+
+    private static final String LAST_MODIFIED = "Sun, 01 Jun 2014 12:00:00 GMT";
+
+    private HttpServer server = null;
+    private String feedURL = null;
+
+    // what the server sends, changed by the tests
+    private volatile String etag = "\"v1\"";
+    private volatile String title = "Test Feed";
+    private volatile boolean gzip = false;
+
+
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/feed", new FeedHandler());
+        server.start();
+        feedURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/feed";
+    }
+
+
+    protected void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+
+    public void testNotModified() throws Exception {
+        RomeFeedFetcher fetcher = new RomeFeedFetcher();
+
+        Subscription sub = fetcher.fetchSubscription(feedURL);
+        assertNotNull(sub);
+        assertEquals("Test Feed", sub.getTitle());
+        assertEquals(1, sub.getEntries().size());
+        assertEquals("\"v1\"", sub.getEtag());
+        assertEquals(LAST_MODIFIED, sub.getLastModified());
+        assertNotNull(sub.getContentHash());
+
+        // validators match, so the server says 304 and nothing is parsed
+        assertNull(fetcher.fetchSubscription(sub));
+        assertEquals(Long.valueOf(2), fetcher.getStats().get("requests"));
+        assertEquals(Long.valueOf(1), fetcher.getStats().get("notModified"));
+        assertEquals(Long.valueOf(1), fetcher.getStats().get("parsed"));
+
+        // a new version is fetched in full
+        etag = "\"v2\"";
+        title = "Renamed Feed";
+        Subscription updated = fetcher.fetchSubscription(sub);
+        assertNotNull(updated);
+        assertEquals("Renamed Feed", updated.getTitle());
+        assertEquals("\"v2\"", updated.getEtag());
+        assertFalse(sub.getContentHash().equals(updated.getContentHash()));
+    }
+
+    public void testUnchangedContent() throws Exception {
+        RomeFeedFetcher fetcher = new RomeFeedFetcher();
+        Subscription sub = fetcher.fetchSubscription(feedURL);
+
+        // server doesn't honor the etag, but the content is the same
+        etag = "\"v3\"";
+        assertNull(fetcher.fetchSubscription(sub));
+        assertEquals(Long.valueOf(0), fetcher.getStats().get("notModified"));
+        assertEquals(Long.valueOf(1), fetcher.getStats().get("unchanged"));
+        assertEquals(Long.valueOf(1), fetcher.getStats().get("parsed"));
+    }
+
+    public void testGzip() throws Exception {
+        RomeFeedFetcher fetcher = new RomeFeedFetcher();
+        Subscription plain = fetcher.fetchSubscription(feedURL);
+        long plainBytes = fetcher.getStats().get("bytes");
+
+        gzip = true;
+        Subscription zipped = fetcher.fetchSubscription(feedURL);
+        assertEquals("Test Feed", zipped.getTitle());
+        assertEquals(plain.getContentHash(), zipped.getContentHash());
+        assertTrue(fetcher.getStats().get("bytes") - plainBytes < plainBytes);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ConditionalFetchTest.class);
+    }
+
+
+    private class FeedHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+
+                byte[] body = atomFeed().getBytes("UTF-8");
+                if (gzip) {
+                    ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+                    GZIPOutputStream out = new GZIPOutputStream(zipped);
+                    out.write(body);
+                    out.close();
+                    body = zipped.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/atom+xml");
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private String atomFeed() {
+            StringBuilder feed = new StringBuilder();
+            feed.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+            feed.append("<feed xmlns=\"http://www.w3.org/2005/Atom\">");
+            feed.append("<title>").append(title).append("</title>");
+            feed.append("<link href=\"http://example.com/\"/>");
+            feed.append("<id>urn:feed</id>");
+            feed.append("<updated>2014-06-01T12:00:00Z</updated>");
+            for (int i = 0; i < 20; i++) {
+                feed.append("<!-- padding so compression pays off -->");
+            }
+            feed.append("<entry>");
+            feed.append("<title>Entry</title>");
+            feed.append("<link href=\"http://example.com/entry\"/>");
+            feed.append("<id>urn:feed:entry</id>");
+            feed.append("<updated>2014-06-01T12:00:00Z</updated>");
+            feed.append("<content>Entry content</content>");
+            feed.append("</entry>");
+            feed.append("</feed>");
+            return feed.toString();
+        }
+    }
+
+}
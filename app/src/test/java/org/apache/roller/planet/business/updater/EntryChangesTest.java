@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.planet.business.updater;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.planet.pojos.Subscription;
+import org.apache.roller.planet.pojos.SubscriptionEntry;
+
+
+/**
+ * Test EntryChanges.
+ */
+public class EntryChangesTest extends TestCase {
+
+    public void testMerge() {
+        Subscription sub = new Subscription();
+        SubscriptionEntry kept = entry("a", "http://host/a", "A");
+        SubscriptionEntry edited = entry("b", "http://host/b", "B");
+        SubscriptionEntry dropped = entry("c", "http://host/c", "C");
+        sub.addEntry(kept);
+        sub.addEntry(edited);
+        sub.addEntry(dropped);
+
+        List<SubscriptionEntry> fetched = new ArrayList<SubscriptionEntry>();
+        fetched.add(entry("a", "http://host/a", "A"));
+        fetched.add(entry("b", "http://host/b", "B edited"));
+        fetched.add(entry("d", "http://host/d", "D"));
+
+        EntryChanges changes = EntryChanges.merge(sub, fetched);
+        assertEquals(1, changes.getInserted());
+        assertEquals(1, changes.getUpdated());
+        assertEquals(1, changes.getDeleted());
+        assertSame(dropped, changes.getRemoved().get(0));
+
+        // existing entries are kept, and updated in place
+        assertEquals(3, sub.getEntries().size());
+        assertTrue(sub.getEntries().contains(kept));
+        assertTrue(sub.getEntries().contains(edited));
+        assertEquals("B edited", edited.getTitle());
+        assertFalse(sub.getEntries().contains(dropped));
+        for (SubscriptionEntry entry : sub.getEntries()) {
+            assertSame(sub, entry.getSubscription());
+        }
+
+        // merging the same entries again changes nothing
+        changes = EntryChanges.merge(sub, fetched);
+        assertEquals(0, changes.getTotal());
+    }
+
+    public void testMatchByPermalink() {
+        Subscription sub = new Subscription();
+        SubscriptionEntry existing = entry(null, "http://host/a", "A");
+        sub.addEntry(existing);
+
+        // entries without a guid match by permalink
+        List<SubscriptionEntry> fetched = new ArrayList<SubscriptionEntry>();
+        fetched.add(entry(null, "http://host/a", "A"));
+        assertEquals(0, EntryChanges.merge(sub, fetched).getTotal());
+
+        // a guid showing up is an update, and a moved permalink too
+        fetched.clear();
+        fetched.add(entry("a", "http://host/a", "A"));
+        assertEquals(1, EntryChanges.merge(sub, fetched).getUpdated());
+        fetched.clear();
+        fetched.add(entry("a", "http://host/moved", "A"));
+        EntryChanges changes = EntryChanges.merge(sub, fetched);
+        assertEquals(1, changes.getUpdated());
+        assertEquals(0, changes.getInserted());
+        assertEquals(1, sub.getEntries().size());
+        assertEquals("http://host/moved", sub.getEntries().iterator().next().getPermalink());
+    }
+
+    public void testTimestampPrecision() {
+        Subscription sub = new Subscription();
+        SubscriptionEntry existing = entry("a", "http://host/a", "A");
+        existing.setPubTime(new Timestamp(1000000000000L));
+        sub.addEntry(existing);
+
+        // a database dropping millis doesn't make an entry look changed
+        List<SubscriptionEntry> fetched = new ArrayList<SubscriptionEntry>();
+        SubscriptionEntry entry = entry("a", "http://host/a", "A");
+        entry.setPubTime(new Timestamp(1000000000123L));
+        fetched.add(entry);
+        assertEquals(0, EntryChanges.merge(sub, fetched).getTotal());
+    }
+
+    public static Test suite() {
+        return new TestSuite(EntryChangesTest.class);
+    }
+
+
+    private static SubscriptionEntry entry(String guid, String permalink, String title) {
+        SubscriptionEntry entry = new SubscriptionEntry();
+        entry.setGuid(guid);
+        entry.setPermalink(permalink);
+        entry.setTitle(title);
+        entry.setText("text of " + title);
+        return entry;
+    }
+
+}
@@ -18,8 +18,10 @@
 
 package org.apache.roller.weblogger.business;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -206,6 +208,52 @@ public class HitCountTest extends TestCase {
     }
     
     
+    public void testIncrementHitCounts() throws Exception {
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        
+        testUser = TestUtils.getManagedUser(testUser);
+        Weblog blog1 = TestUtils.setupWeblog("hitCntIncTest1", testUser);
+        Weblog blog2 = TestUtils.setupWeblog("hitCntIncTest2", testUser);
+        Weblog blog3 = TestUtils.setupWeblog("hitCntIncTest3", testUser);
+        
+        WeblogHitCount cnt1 = TestUtils.setupHitCount(blog1, 10);
+        WeblogHitCount cnt2 = TestUtils.setupHitCount(blog2, 20);
+        
+        TestUtils.endSession(true);
+        
+        try {
+            // two existing counts with the same increment, one new count
+            // and a weblog which doesn't exist
+            Map<String, Long> hits = new HashMap<String, Long>();
+            hits.put(blog1.getHandle(), 5L);
+            hits.put(blog2.getHandle(), 5L);
+            hits.put(blog3.getHandle(), 7L);
+            hits.put("hitCntIncTestMissing", 3L);
+            mgr.incrementHitCounts(hits);
+            TestUtils.endSession(true);
+            
+            WeblogHitCount testCount;
+            testCount = mgr.getHitCount(cnt1.getId());
+            assertEquals(15, testCount.getDailyHits());
+            testCount = mgr.getHitCount(cnt2.getId());
+            assertEquals(25, testCount.getDailyHits());
+            blog3 = TestUtils.getManagedWebsite(blog3);
+            testCount = mgr.getHitCountByWeblog(blog3);
+            assertNotNull(testCount);
+            assertEquals(7, testCount.getDailyHits());
+            TestUtils.teardownHitCount(testCount.getId());
+            
+        } finally {
+            // cleanup
+            TestUtils.teardownHitCount(cnt1.getId());
+            TestUtils.teardownHitCount(cnt2.getId());
+            TestUtils.teardownWeblog(blog1.getId());
+            TestUtils.teardownWeblog(blog2.getId());
+            TestUtils.teardownWeblog(blog3.getId());
+        }
+    }
+    
+    
     public void testResetHitCounts() throws Exception {
         WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
         
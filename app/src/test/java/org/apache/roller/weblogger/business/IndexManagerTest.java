@@ -148,6 +148,26 @@ public class IndexManagerTest extends TestCase {
         imgr.executeIndexOperationNow(search2);
         assertEquals(1, search2.getResultsCount());
 
+        // page through the hits one at a time, the second page is found
+        // after the last hit of the cached first page
+        SearchOperation page1 = new SearchOperation(imgr);
+        page1.setTerm("Enterprise");
+        page1.setLimit(1);
+        imgr.executeIndexOperationNow(page1);
+        assertEquals(2, page1.getResultsCount());
+        assertEquals(1, page1.getHits().length);
+
+        SearchOperation page2 = new SearchOperation(imgr);
+        page2.setTerm("Enterprise");
+        page2.setOffset(1);
+        page2.setLimit(1);
+        imgr.executeIndexOperationNow(page2);
+        assertEquals(2, page2.getResultsCount());
+        assertEquals(1, page2.getHits().length);
+        assertTrue(page1.getHits()[0].doc != page2.getHits()[0].doc);
+        page1.release();
+        page2.release();
+
         // Clean up
         imgr.removeEntryIndexOperation(wd1);
         imgr.removeEntryIndexOperation(wd2);
@@ -297,6 +297,96 @@ public class PermissionTest extends TestCase {
     }
     
     
+    /**
+     * Test that cached lookups follow grants and revokes.
+     */
+    public void testCachedPermissionLookups() throws Exception {
+        
+        log.info("BEGIN");
+        
+        UserManager mgr = WebloggerFactory.getWeblogger().getUserManager();
+        
+        // a second user without any permission in the weblog
+        User otherUser = TestUtils.setupUser("permsCacheTestUser");
+        TestUtils.endSession(true);
+        
+        // no permission, looked up twice so the second comes from cache
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        otherUser = TestUtils.getManagedUser(otherUser);
+        assertNull(mgr.getWeblogPermission(testWeblog, otherUser));
+        assertNull(mgr.getWeblogPermission(testWeblog, otherUser));
+        
+        // granting is seen right away
+        mgr.grantWeblogPermission(testWeblog, otherUser, 
+                Collections.singletonList(WeblogPermission.POST));
+        TestUtils.endSession(true);
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        otherUser = TestUtils.getManagedUser(otherUser);
+        WeblogPermission perm = mgr.getWeblogPermission(testWeblog, otherUser);
+        assertNotNull(perm);
+        assertTrue(perm.hasAction(WeblogPermission.POST));
+        assertSame(perm, mgr.getWeblogPermission(testWeblog, otherUser));
+        
+        // and so is revoking
+        mgr.revokeWeblogPermission(testWeblog, otherUser, WeblogPermission.ALL_ACTIONS);
+        TestUtils.endSession(true);
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        otherUser = TestUtils.getManagedUser(otherUser);
+        assertNull(mgr.getWeblogPermission(testWeblog, otherUser));
+        
+        TestUtils.teardownUser(otherUser.getUserName());
+        TestUtils.endSession(true);
+        
+        log.info("END");
+    }
+    
+    
+    /**
+     * Test that cached permission checks follow permission and role changes.
+     */
+    public void testCachedPermissionChecks() throws Exception {
+        
+        log.info("BEGIN");
+        
+        UserManager umgr = WebloggerFactory.getWeblogger().getUserManager();
+        
+        User otherUser = TestUtils.setupUser("permsCheckTestUser");
+        TestUtils.endSession(true);
+        
+        // checked twice, so the second comes from cache
+        WeblogPermission post = 
+            new WeblogPermission(testWeblog, otherUser, WeblogPermission.POST);
+        assertFalse(umgr.checkPermission(post, otherUser));
+        assertFalse(umgr.checkPermission(post, otherUser));
+        
+        // granting a weblog permission is seen right away
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        otherUser = TestUtils.getManagedUser(otherUser);
+        umgr.grantWeblogPermission(testWeblog, otherUser, 
+                Collections.singletonList(WeblogPermission.POST));
+        TestUtils.endSession(true);
+        assertTrue(umgr.checkPermission(post, otherUser));
+        
+        // and so are role changes
+        WeblogPermission admin = 
+            new WeblogPermission(testWeblog, otherUser, WeblogPermission.ADMIN);
+        assertFalse(umgr.checkPermission(admin, otherUser));
+        otherUser = TestUtils.getManagedUser(otherUser);
+        umgr.grantRole("admin", otherUser);
+        TestUtils.endSession(true);
+        assertTrue(umgr.checkPermission(admin, otherUser));
+        otherUser = TestUtils.getManagedUser(otherUser);
+        umgr.revokeRole("admin", otherUser);
+        TestUtils.endSession(true);
+        assertFalse(umgr.checkPermission(admin, otherUser));
+        
+        TestUtils.teardownUser(otherUser.getUserName());
+        TestUtils.endSession(true);
+        
+        log.info("END");
+    }
+    
+    
     /**
      * Tests weblog invitation process.
      */
@@ -25,6 +25,7 @@ import junit.framework.TestSuite;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
 
 
@@ -98,4 +99,67 @@ public class PropertiesTest extends TestCase {
         assertEquals("blahblah", ((RuntimeConfigProperty)props.get("site.description")).getValue());
     }
     
+    
+    public void testRuntimeConfigSnapshot() throws Exception {
+        
+        PropertiesManager mgr = WebloggerFactory.getWeblogger().getPropertiesManager();
+        Map original = mgr.getProperties();
+        String siteName = ((RuntimeConfigProperty) original.get("site.name")).getValue();
+        String maxSize = ((RuntimeConfigProperty) original.get("uploads.dir.maxsize")).getValue();
+        String enabled = ((RuntimeConfigProperty) original.get("uploads.enabled")).getValue();
+        TestUtils.endSession(false);
+        
+        try {
+            // saved values show up in runtime config right away
+            RuntimeConfigProperty prop = mgr.getProperty("site.name");
+            prop.setValue("snapshot");
+            mgr.saveProperty(prop);
+            TestUtils.endSession(true);
+            assertEquals("snapshot", WebloggerRuntimeConfig.getProperty("site.name"));
+            
+            // values saved but rolled back never show up
+            prop = mgr.getProperty("site.name");
+            prop.setValue("rolled back");
+            mgr.saveProperty(prop);
+            assertEquals("snapshot", WebloggerRuntimeConfig.getProperty("site.name"));
+            TestUtils.endSession(false);
+            assertEquals("snapshot", WebloggerRuntimeConfig.getProperty("site.name"));
+        
+            Map props = mgr.getProperties();
+            ((RuntimeConfigProperty) props.get("uploads.dir.maxsize")).setValue("42");
+            ((RuntimeConfigProperty) props.get("uploads.enabled")).setValue("false");
+            mgr.saveProperties(props);
+            TestUtils.endSession(true);
+            assertEquals(42, WebloggerRuntimeConfig.getIntProperty("uploads.dir.maxsize"));
+            assertFalse(WebloggerRuntimeConfig.getBooleanProperty("uploads.enabled"));
+            assertNull(WebloggerRuntimeConfig.getProperty("no.such.property"));
+            assertEquals(-1, WebloggerRuntimeConfig.getIntProperty("no.such.property"));
+        
+            // report lookup cost against the properties manager
+            int lookups = 10000;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                mgr.getProperty("site.name").getValue();
+            }
+            long managerNanos = System.nanoTime() - start;
+        
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                WebloggerRuntimeConfig.getProperty("site.name");
+            }
+            long snapshotNanos = System.nanoTime() - start;
+            TestUtils.endSession(true);
+        
+            log.info(lookups + " lookups: properties manager " + (managerNanos / lookups)
+                    + " ns/lookup, runtime config " + (snapshotNanos / lookups) + " ns/lookup");
+        } finally {
+            Map props = mgr.getProperties();
+            ((RuntimeConfigProperty) props.get("site.name")).setValue(siteName);
+            ((RuntimeConfigProperty) props.get("uploads.dir.maxsize")).setValue(maxSize);
+            ((RuntimeConfigProperty) props.get("uploads.enabled")).setValue(enabled);
+            mgr.saveProperties(props);
+            TestUtils.endSession(true);
+        }
+    }
+    
 }
@@ -23,6 +23,7 @@ import java.io.StringWriter;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -279,6 +280,32 @@ public class WeblogEntryTest extends TestCase {
         assertEquals(1, entries.size());
         assertEquals(entry2, entries.get(0));
         
+        // seeking past the first entry gives the same page as the offset
+        WeblogEntrySearchCriteria wescSeek = new WeblogEntrySearchCriteria();
+        wescSeek.setWeblog(testWeblog);
+        wescSeek.setAfter(entry3.getPubTime(), entry3.getId());
+        wescSeek.setMaxResults(1);
+        entries = mgr.getWeblogEntries(wescSeek);
+        assertNotNull(entries);
+        assertEquals(1, entries.size());
+        assertEquals(entry2, entries.get(0));
+        
+        // and seeking through all pages gives every entry once
+        WeblogEntry last = null;
+        int seen = 0;
+        do {
+            wescSeek = new WeblogEntrySearchCriteria();
+            wescSeek.setWeblog(testWeblog);
+            wescSeek.setMaxResults(2);
+            if (last != null) {
+                wescSeek.setAfter(last.getPubTime(), last.getId());
+            }
+            entries = mgr.getWeblogEntries(wescSeek);
+            seen += entries.size();
+            last = entries.isEmpty() ? null : (WeblogEntry) entries.get(entries.size() - 1);
+        } while (last != null);
+        assertEquals(5, seen);
+        
         // get all entries, limited by locale
         WeblogEntrySearchCriteria wesc7 = new WeblogEntrySearchCriteria();
         wesc7.setWeblog(testWeblog);
@@ -315,6 +342,29 @@ public class WeblogEntryTest extends TestCase {
         entryMap = mgr.getWeblogEntryStringMap(wesc8);
         assertNotNull(entryMap);
         assertTrue(entryMap.keySet().size() > 1);
+        
+        // get count map, same days as the string map
+        Map<Date, Integer> countMap = mgr.getWeblogEntryCountMap(wesc8);
+        assertEquals(entryMap.keySet(), countMap.keySet());
+        int total = 0;
+        for (Integer count : countMap.values()) {
+            total += count;
+        }
+        assertEquals(mgr.getWeblogEntries(wesc8).size(), total);
+        
+        // string and count maps of a range only cover the entries in it
+        entryMap = mgr.getWeblogEntryStringMap(wesc6);
+        assertEquals(1, entryMap.size());
+        countMap = mgr.getWeblogEntryCountMap(wesc6);
+        assertEquals(entryMap.keySet(), countMap.keySet());
+        assertEquals(Integer.valueOf(1), countMap.values().iterator().next());
+        
+        // get earliest and latest pubTimes
+        Date earliest = mgr.getEarliestPubTime(wesc8);
+        Date latest = mgr.getLatestPubTime(wesc8);
+        assertNotNull(earliest);
+        assertNotNull(latest);
+        assertFalse(earliest.after(latest));
                 
         // teardown our test entries
         TestUtils.teardownWeblogEntry(entry1.getId());
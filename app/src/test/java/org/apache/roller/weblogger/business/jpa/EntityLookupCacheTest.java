@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
+
+
+/**
+ * Test EntityLookupCache.
+ */
+public class EntityLookupCacheTest extends TestCase {
+
+    private EntityLookupCache cache = EntityLookupCache.getInstance();
+
+
+    public void testPermissionsOnCommit() throws Exception {
+
+        User user = new User();
+        user.setUserName("lookupCacheTestUser");
+        Weblog weblog = new Weblog();
+        weblog.setHandle("lookupCacheTestWeblog");
+        WeblogPermission perm = new WeblogPermission(weblog, user, WeblogPermission.POST);
+        perm.setId("lookupCacheTestPermission");
+
+        cache.putPermission(perm);
+        assertEquals(perm.getId(), cache.getPermissionId(user.getUserName(), weblog.getHandle()));
+
+        // the changing thread doesn't use the mapping until the change commits
+        cache.removePermissionOnCommit(user.getUserName(), weblog.getHandle());
+        assertNull(cache.getPermissionId(user.getUserName(), weblog.getHandle()));
+        cache.putPermission(perm);
+
+        // nothing is dropped by a change which is rolled back
+        cache.rolledBack();
+        assertEquals(perm.getId(), cache.getPermissionId(user.getUserName(), weblog.getHandle()));
+
+        // and the mapping is dropped once it commits
+        cache.removePermissionOnCommit(user.getUserName(), weblog.getHandle());
+        cache.committed();
+        assertNull(cache.getPermissionId(user.getUserName(), weblog.getHandle()));
+    }
+
+    public static Test suite() {
+        return new TestSuite(EntityLookupCacheTest.class);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
+
+
+/**
+ * Test PermissionDecisionCache.
+ */
+public class PermissionDecisionCacheTest extends TestCase {
+
+    private PermissionDecisionCache cache = PermissionDecisionCache.getInstance();
+
+
+    public void testDecisions() throws Exception {
+
+        User user = user("decisionCacheTestUser");
+        User other = user("decisionCacheOtherUser");
+        Weblog weblog = new Weblog();
+        weblog.setHandle("decisionCacheTestWeblog");
+
+        WeblogPermission post = new WeblogPermission(weblog, user, WeblogPermission.POST);
+        WeblogPermission admin = new WeblogPermission(weblog, user, WeblogPermission.ADMIN);
+        assertNull(cache.get(cache.getKey(post, user)));
+        cache.put(cache.getKey(post, user), true);
+        cache.put(cache.getKey(admin, user), false);
+        cache.put(cache.getKey(post, other), false);
+        assertEquals(Boolean.TRUE, cache.get(cache.getKey(post, user)));
+        assertEquals(Boolean.FALSE, cache.get(cache.getKey(admin, user)));
+
+        // a change to the user drops all of the user's decisions, only
+        cache.remove(user.getUserName());
+        assertNull(cache.get(cache.getKey(post, user)));
+        assertNull(cache.get(cache.getKey(admin, user)));
+        assertEquals(Boolean.FALSE, cache.get(cache.getKey(post, other)));
+
+        // and decisions made after the change are cached again
+        cache.put(cache.getKey(post, user), false);
+        assertEquals(Boolean.FALSE, cache.get(cache.getKey(post, user)));
+    }
+
+    public void testChangesOnCommit() throws Exception {
+
+        User user = user("decisionCacheCommitUser");
+        Weblog weblog = new Weblog();
+        weblog.setHandle("decisionCacheTestWeblog");
+        WeblogPermission post = new WeblogPermission(weblog, user, WeblogPermission.POST);
+
+        // a decision checked before the change, put while it commits
+        String key = cache.getKey(post, user);
+        cache.removeOnCommit(user.getUserName());
+
+        // the changing thread doesn't cache decisions about the user
+        assertNull(cache.getKey(post, user));
+
+        cache.committed();
+        cache.put(key, true);
+        assertNull(cache.get(cache.getKey(post, user)));
+
+        // nothing is dropped by a change which is rolled back
+        cache.put(cache.getKey(post, user), true);
+        cache.removeOnCommit(user.getUserName());
+        cache.rolledBack();
+        assertEquals(Boolean.TRUE, cache.get(cache.getKey(post, user)));
+    }
+
+    public void testManyChanges() throws Exception {
+
+        User user = user("decisionCacheTestUser");
+        Weblog weblog = new Weblog();
+        weblog.setHandle("decisionCacheTestWeblog");
+        WeblogPermission post = new WeblogPermission(weblog, user, WeblogPermission.POST);
+
+        // changes to lots of users start over, and a decision from before
+        // a change never comes back
+        cache.put(cache.getKey(post, user), true);
+        cache.remove(user.getUserName());
+        for (int i = 0; i < 2500; i++) {
+            cache.remove("decisionCacheUser" + i);
+            assertNull(cache.get(cache.getKey(post, user)));
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(PermissionDecisionCacheTest.class);
+    }
+
+
+    private static User user(String userName) {
+        User user = new User();
+        user.setUserName(userName);
+        return user;
+    }
+
+}
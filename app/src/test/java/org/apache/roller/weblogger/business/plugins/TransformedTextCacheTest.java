@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.plugins;
+
+import java.sql.Timestamp;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+
+
+/**
+ * Test TransformedTextCache.
+ */
+public class TransformedTextCacheTest extends TestCase {
+
+    private TransformedTextCache cache = TransformedTextCache.getInstance();
+    private WeblogEntry entry = null;
+
+
+    protected void setUp() throws Exception {
+        entry = new WeblogEntry();
+        entry.setId("transformedTextCacheTest");
+        entry.setPlugins("smileys");
+        entry.setUpdateTime(new Timestamp(1000000000000L));
+    }
+
+
+    protected void tearDown() throws Exception {
+        cache.remove(entry);
+    }
+
+
+    public void testStamp() throws Exception {
+
+        assertNull(cache.get(entry, TransformedTextCache.TEXT, "text"));
+        cache.put(entry, TransformedTextCache.TEXT, "text", "rendered text");
+        assertEquals("rendered text", cache.get(entry, TransformedTextCache.TEXT, "text"));
+
+        // text and summary are kept apart
+        assertNull(cache.get(entry, TransformedTextCache.SUMMARY, "text"));
+
+        // a different source text, plugin list or update time is a miss
+        assertNull(cache.get(entry, TransformedTextCache.TEXT, "other text"));
+        entry.setPlugins("smileys,convertLineBreaks");
+        assertNull(cache.get(entry, TransformedTextCache.TEXT, "text"));
+        entry.setPlugins("smileys");
+        entry.setUpdateTime(new Timestamp(1000000001000L));
+        assertNull(cache.get(entry, TransformedTextCache.TEXT, "text"));
+    }
+
+    public void testInvalidate() throws Exception {
+
+        cache.put(entry, TransformedTextCache.TEXT, "text", "rendered text");
+        cache.put(entry, TransformedTextCache.SUMMARY, "summary", "rendered summary");
+        cache.invalidate(entry);
+        assertNull(cache.get(entry, TransformedTextCache.TEXT, "text"));
+        assertNull(cache.get(entry, TransformedTextCache.SUMMARY, "summary"));
+    }
+
+    public static Test suite() {
+        return new TestSuite(TransformedTextCacheTest.class);
+    }
+
+}
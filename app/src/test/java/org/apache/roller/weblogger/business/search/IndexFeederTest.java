@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+
+
+/**
+ * Test IndexFeeder, and report indexing throughput with one and with several
+ * feeder threads.
+ */
+public class IndexFeederTest extends TestCase {
+
+    private static Log log = LogFactory.getLog(IndexFeederTest.class);
+
+    private static final int DOCS = 5000;
+
+    public void testSingleThread() throws Exception {
+        assertEquals(DOCS, index(1, false));
+    }
+
+    public void testMultipleThreads() throws Exception {
+        assertEquals(DOCS, index(4, false));
+    }
+
+    public void testReplace() throws Exception {
+        // feeding the same ids twice with a term leaves one doc per id
+        assertEquals(DOCS, index(4, true));
+    }
+
+    private int index(int threads, boolean twice) throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(
+                FieldConstants.LUCENE_VERSION, IndexManagerImpl.getAnalyzer()));
+
+        long start = System.nanoTime();
+        IndexFeeder feeder = new IndexFeeder(writer, threads, 100);
+        try {
+            for (int pass = 0; pass < (twice ? 2 : 1); pass++) {
+                for (int i = 0; i < DOCS; i++) {
+                    Term term = twice ? new Term(FieldConstants.ID, "id" + i) : null;
+                    feeder.add(term, document(i));
+                }
+            }
+            feeder.await();
+        } finally {
+            feeder.close();
+        }
+        writer.commit();
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+        log.info(threads + " feeder thread(s): " + feeder.getAdded() + " docs in "
+                + millis + " ms (" + (feeder.getAdded() * 1000 / millis) + " docs/sec)");
+
+        writer.close();
+        DirectoryReader reader = DirectoryReader.open(dir);
+        try {
+            return reader.numDocs();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Document document(int i) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < 200; w++) {
+            text.append("word").append((i * 31 + w) % 997).append(' ');
+        }
+        Document doc = new Document();
+        doc.add(new StringField(FieldConstants.ID, "id" + i, Field.Store.YES));
+        doc.add(new TextField(FieldConstants.TITLE, "Entry number " + i, Field.Store.YES));
+        doc.add(new TextField(FieldConstants.CONTENT, text.toString(), Field.Store.NO));
+        return doc;
+    }
+
+    public static Test suite() {
+        return new TestSuite(IndexFeederTest.class);
+    }
+
+}
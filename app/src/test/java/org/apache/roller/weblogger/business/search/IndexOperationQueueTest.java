@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.weblogger.business.search.operations.IndexOperation;
+
+
+/**
+ * Test IndexOperationQueue ordering, coalescing and commits.
+ */
+public class IndexOperationQueueTest extends TestCase {
+
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger refreshes = new AtomicInteger();
+
+    private IndexOperationQueue newQueue(int batchSize) {
+        return new IndexOperationQueue(null, 100, batchSize, 60000, 60000) {
+            protected void commit() {
+                commits.incrementAndGet();
+            }
+            protected void refresh() {
+                refreshes.incrementAndGet();
+            }
+        };
+    }
+
+    public void testOrderAndCoalescing() throws Exception {
+        IndexOperationQueue queue = newQueue(100);
+
+        // queue everything before starting so the batch stays open
+        queue.addEntryOperation("e1", new RecordingOperation("add e1"));
+        queue.addEntryOperation("e2", new RecordingOperation("add e2"));
+        queue.addEntryOperation("e1", new RecordingOperation("remove e1"));
+        queue.add(new RecordingOperation("rebuild"));
+        queue.addEntryOperation("e1", new RecordingOperation("add e1 again"));
+
+        queue.start();
+        queue.flush();
+
+        assertEquals(4, applied.size());
+        assertEquals("remove e1", applied.get(0));
+        assertEquals("add e2", applied.get(1));
+        assertEquals("rebuild", applied.get(2));
+        assertEquals("add e1 again", applied.get(3));
+        assertTrue(commits.get() >= 1);
+        assertEquals(1L, queue.getStats().get("coalesced"));
+
+        queue.shutdown(1000);
+    }
+
+    public void testBatchSize() throws Exception {
+        IndexOperationQueue queue = newQueue(2);
+
+        for (int i = 0; i < 5; i++) {
+            queue.addEntryOperation("e" + i, new RecordingOperation("add e" + i));
+        }
+
+        // five entries in batches of two
+        assertEquals(3, queue.getStats().get("depth"));
+
+        queue.start();
+        queue.flush();
+        assertEquals(5, applied.size());
+        assertEquals("add e4", applied.get(4));
+
+        queue.shutdown(1000);
+    }
+
+    public void testExecuteWaitsForCommit() throws Exception {
+        IndexOperationQueue queue = newQueue(100);
+        queue.start();
+
+        queue.execute(new RecordingOperation("now"));
+        assertEquals(1, applied.size());
+        assertEquals(1, commits.get());
+        assertEquals(1, refreshes.get());
+
+        queue.shutdown(1000);
+    }
+
+    public void testShutdownDrainsQueue() throws Exception {
+        IndexOperationQueue queue = newQueue(100);
+        for (int i = 0; i < 10; i++) {
+            queue.add(new RecordingOperation("op" + i));
+        }
+
+        queue.start();
+        queue.shutdown(10000);
+
+        assertEquals(10, applied.size());
+        assertTrue(commits.get() >= 1);
+    }
+
+    public void testWorkerSurvivesErrors() throws Exception {
+        IndexOperationQueue queue = newQueue(100);
+        queue.start();
+
+        queue.add(new IndexOperation(null) {
+            protected void doRun() {
+                throw new AssertionError("broken operation");
+            }
+        });
+        queue.execute(new RecordingOperation("after error"));
+        assertEquals(1, applied.size());
+        assertEquals(1L, queue.getStats().get("failed"));
+
+        queue.shutdown(1000);
+    }
+
+    public void testStoppedWorker() throws Exception {
+        final IndexOperationQueue queue = newQueue(100);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.start();
+        queue.add(new IndexOperation(null) {
+            protected void doRun() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }
+        });
+
+        // the worker is busy, so it is still running after the timeout
+        assertFalse(queue.shutdown(10));
+
+        // an operation queued behind the stop marker is never applied, and
+        // its caller is released once the worker stops
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch executed = new CountDownLatch(1);
+        Thread caller = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    queue.execute(new RecordingOperation("too late"));
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+                executed.countDown();
+            }
+        });
+        caller.start();
+        Thread.sleep(100);
+        release.countDown();
+
+        assertTrue(executed.await(10, TimeUnit.SECONDS));
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertTrue(applied.isEmpty());
+
+        // and operations are refused once it has stopped
+        try {
+            queue.add(new RecordingOperation("refused"));
+            fail("operation queued on a stopped worker");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(IndexOperationQueueTest.class);
+    }
+
+
+    private class RecordingOperation extends IndexOperation {
+
+        private final String name;
+
+        RecordingOperation(String name) {
+            super(null);
+            this.name = name;
+        }
+
+        protected void doRun() {
+            applied.add(name);
+        }
+    }
+
+}
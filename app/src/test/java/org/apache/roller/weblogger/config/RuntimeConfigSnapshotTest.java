@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
+
+
+/**
+ * Test RuntimeConfigSnapshot.
+ */
+public class RuntimeConfigSnapshotTest extends TestCase {
+
+    public void testLookups() {
+        RuntimeConfigSnapshot props = RuntimeConfigSnapshot.of(Arrays.asList(
+                new RuntimeConfigProperty("site.name", "Roller"),
+                new RuntimeConfigProperty("uploads.enabled", "true"),
+                new RuntimeConfigProperty("site.pages.maxEntries", "30"),
+                new RuntimeConfigProperty("uploads.dir.maxsize", "20.00")));
+
+        assertEquals("Roller", props.getProperty("site.name"));
+        assertNull(props.getProperty("no.such.property"));
+
+        assertTrue(props.getBooleanProperty("uploads.enabled"));
+        assertFalse(props.getBooleanProperty("site.name"));
+        assertFalse(props.getBooleanProperty("no.such.property"));
+
+        assertEquals(30, props.getIntProperty("site.pages.maxEntries"));
+        assertEquals(30, props.getIntProperty("site.pages.maxEntries"));
+        assertEquals(-1, props.getIntProperty("uploads.dir.maxsize"));
+        assertEquals(-1, props.getIntProperty("no.such.property"));
+    }
+
+    public void testWith() {
+        RuntimeConfigSnapshot props = RuntimeConfigSnapshot.of(Arrays.asList(
+                new RuntimeConfigProperty("site.name", "Roller"),
+                new RuntimeConfigProperty("site.pages.maxEntries", "30")));
+        assertEquals(30, props.getIntProperty("site.pages.maxEntries"));
+
+        RuntimeConfigSnapshot changed = props.with(Collections.singletonList(
+                new RuntimeConfigProperty("site.pages.maxEntries", "10")));
+
+        // the old snapshot is left as it was
+        assertEquals(30, props.getIntProperty("site.pages.maxEntries"));
+        assertEquals(10, changed.getIntProperty("site.pages.maxEntries"));
+        assertEquals("Roller", changed.getProperty("site.name"));
+    }
+
+    public static Test suite() {
+        return new TestSuite(RuntimeConfigSnapshotTest.class);
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.planet.business;
+
+import java.util.Date;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.planet.business.PlanetManager;
+import org.apache.roller.planet.pojos.Subscription;
+import org.apache.roller.planet.pojos.SubscriptionEntry;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+
+
+/**
+ * Test syncing local planet subscriptions with weblog entries.
+ */
+public class LocalSubscriptionSyncTest extends TestCase {
+
+    private User testUser = null;
+    private Weblog testWeblog = null;
+    private Subscription testSub = null;
+
+
+    protected void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+
+        testUser = TestUtils.setupUser("localSyncTestUser");
+        testWeblog = TestUtils.setupWeblog("localSyncTestWeblog", testUser);
+        testSub = TestUtils.setupSubscription(
+                LocalSubscriptionSync.FEED_PREFIX + testWeblog.getHandle());
+        TestUtils.endSession(true);
+    }
+
+
+    protected void tearDown() throws Exception {
+        TestUtils.teardownSubscription(testSub.getId());
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+        TestUtils.endSession(true);
+    }
+
+
+    public void testEntrySync() throws Exception {
+
+        PlanetManager pmgr = WebloggerFactory.getWeblogger().getPlanetManager();
+        LocalSubscriptionSync sync = new LocalSubscriptionSync(WebloggerFactory.getWeblogger(), true);
+
+        // subscription starts out up to date with the weblog
+        Subscription sub = pmgr.getSubscriptionById(testSub.getId());
+        Weblog weblog = TestUtils.getManagedWebsite(testWeblog);
+        Date modified = weblog.getLastModified();
+        sub.setLastUpdated(modified);
+        pmgr.saveSubscription(sub);
+        TestUtils.endSession(true);
+
+        // a published entry is added, and the subscription stays up to date
+        WeblogEntry entry = TestUtils.setupWeblogEntry("localSyncTestEntry", testWeblog, testUser);
+        entry = TestUtils.getManagedWeblogEntry(entry);
+        sync.entrySaved(entry, modified);
+        TestUtils.endSession(true);
+
+        sub = pmgr.getSubscriptionById(testSub.getId());
+        assertEquals(1, sub.getEntries().size());
+        SubscriptionEntry subEntry = sub.getEntries().iterator().next();
+        assertEquals("localSyncTestEntry", subEntry.getTitle());
+        assertEquals(entry.getPermalink(), subEntry.getPermalink());
+        weblog = TestUtils.getManagedWebsite(testWeblog);
+        assertFalse(weblog.getLastModified().after(sub.getLastUpdated()));
+
+        // an edit updates the same planet entry
+        entry = TestUtils.getManagedWeblogEntry(entry);
+        entry.setTitle("localSyncTestEntry edited");
+        sync.entrySaved(entry, weblog.getLastModified());
+        TestUtils.endSession(true);
+
+        sub = pmgr.getSubscriptionById(testSub.getId());
+        assertEquals(1, sub.getEntries().size());
+        assertEquals(subEntry.getId(), sub.getEntries().iterator().next().getId());
+        assertEquals("localSyncTestEntry edited", sub.getEntries().iterator().next().getTitle());
+
+        // and unpublishing removes it
+        entry = TestUtils.getManagedWeblogEntry(entry);
+        entry.setStatus(PubStatus.DRAFT);
+        sync.entrySaved(entry, weblog.getLastModified());
+        TestUtils.endSession(true);
+
+        sub = pmgr.getSubscriptionById(testSub.getId());
+        assertEquals(0, sub.getEntries().size());
+
+        TestUtils.teardownWeblogEntry(entry.getId());
+    }
+
+    public void testStaleSubscription() throws Exception {
+
+        PlanetManager pmgr = WebloggerFactory.getWeblogger().getPlanetManager();
+        LocalSubscriptionSync sync = new LocalSubscriptionSync(WebloggerFactory.getWeblogger(), true);
+
+        // never fully pulled, so it must stay due for a refresh
+        Weblog weblog = TestUtils.getManagedWebsite(testWeblog);
+        Date modified = weblog.getLastModified();
+        WeblogEntry entry = TestUtils.setupWeblogEntry("localSyncStaleEntry", testWeblog, testUser);
+        sync.entrySaved(TestUtils.getManagedWeblogEntry(entry), modified);
+        TestUtils.endSession(true);
+
+        Subscription sub = pmgr.getSubscriptionById(testSub.getId());
+        assertEquals(1, sub.getEntries().size());
+        assertNull(sub.getLastUpdated());
+
+        TestUtils.teardownWeblogEntry(entry.getId());
+    }
+
+    public void testSyncOnSave() throws Exception {
+
+        PlanetManager pmgr = WebloggerFactory.getWeblogger().getPlanetManager();
+        WeblogEntryManager wmgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        // saving a published entry adds it to the subscription
+        WeblogEntry entry = TestUtils.setupWeblogEntry("localSyncSaveEntry", testWeblog, testUser);
+        TestUtils.endSession(true);
+
+        Subscription sub = pmgr.getSubscriptionById(testSub.getId());
+        assertEquals(1, sub.getEntries().size());
+        SubscriptionEntry subEntry = sub.getEntries().iterator().next();
+        assertEquals(entry.getPermalink(), subEntry.getPermalink());
+
+        // a new anchor changes the permalink, but not the planet entry
+        entry = TestUtils.getManagedWeblogEntry(entry);
+        entry.setAnchor("localSyncSaveEntryMoved");
+        wmgr.saveWeblogEntry(entry);
+        TestUtils.endSession(true);
+
+        sub = pmgr.getSubscriptionById(testSub.getId());
+        assertEquals(1, sub.getEntries().size());
+        assertEquals(subEntry.getId(), sub.getEntries().iterator().next().getId());
+        assertEquals(entry.getPermalink(), sub.getEntries().iterator().next().getPermalink());
+
+        // and removing the entry removes it from the subscription
+        wmgr.removeWeblogEntry(TestUtils.getManagedWeblogEntry(entry));
+        TestUtils.endSession(true);
+
+        sub = pmgr.getSubscriptionById(testSub.getId());
+        assertEquals(0, sub.getEntries().size());
+    }
+
+    public static Test suite() {
+        return new TestSuite(LocalSubscriptionSyncTest.class);
+    }
+
+}
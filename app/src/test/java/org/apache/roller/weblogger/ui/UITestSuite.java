@@ -20,8 +20,11 @@ package org.apache.roller.weblogger.ui;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.apache.roller.weblogger.planet.business.LocalSubscriptionSyncTest;
 import org.apache.roller.weblogger.planet.business.WebloggerRomeFeedFetcherTest;
 import org.apache.roller.weblogger.ui.rendering.util.CommentValidatorTest;
+import org.apache.roller.weblogger.ui.rendering.model.ModelLoaderTest;
+import org.apache.roller.weblogger.ui.rendering.velocity.TemplateCacheTest;
 
 
 /**
@@ -38,6 +41,13 @@ public class UITestSuite {
         
         // custom planet fetcher
         suite.addTestSuite(WebloggerRomeFeedFetcherTest.class);
+        suite.addTestSuite(LocalSubscriptionSyncTest.class);
+        
+        // template caching
+        suite.addTestSuite(TemplateCacheTest.class);
+        
+        // model loading
+        suite.addTestSuite(ModelLoaderTest.class);
         
         return suite;
     }
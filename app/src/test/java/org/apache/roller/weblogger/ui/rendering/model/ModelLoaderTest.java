@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.util.Utilities;
+
+
+/**
+ * Test loading of models through the ModelLoader registry, and compare the
+ * cost of setting up the models of a request to loading them reflectively
+ * every time.
+ */
+public class ModelLoaderTest extends TestCase {
+    
+    public static Log log = LogFactory.getLog(ModelLoaderTest.class);
+    
+    private static final int REQUESTS = 20000;
+    
+    private static final String MODELS = RequestModel.class.getName() + ","
+            + StatelessModel.class.getName();
+    
+    
+    public void testSharedModels() throws Exception {
+        
+        Map<String, Object> first = load(MODELS);
+        Map<String, Object> second = load(MODELS);
+        
+        // a shared model is created once, others for every request
+        assertSame(first.get("stateless"), second.get("stateless"));
+        assertNotSame(first.get("request"), second.get("request"));
+        assertEquals("second", ((RequestModel) second.get("request")).getName());
+    }
+    
+    public void testMissingModel() throws Exception {
+        
+        String models = MODELS + ",org.apache.roller.NoSuchModel";
+        
+        // without failing, the models which exist are still loaded
+        Map<String, Object> modelMap = new HashMap<String, Object>();
+        ModelLoader.loadModels(models, modelMap, initData("test"), false);
+        assertEquals(2, modelMap.size());
+        
+        // and the missing model is reported every time
+        try {
+            ModelLoader.loadModels(models, modelMap, initData("test"), true);
+            fail("missing model not reported");
+        } catch (WebloggerException expected) {
+            // expected
+        }
+    }
+    
+    public void testRequestSetupCost() throws Exception {
+        
+        // warm up the jvm
+        for (int i = 0; i < REQUESTS; i++) {
+            load(MODELS);
+            loadReflectively(MODELS);
+        }
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            loadReflectively(MODELS);
+        }
+        long reflective = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            load(MODELS);
+        }
+        long registry = System.nanoTime() - start;
+        
+        log.info("Loaded models for " + REQUESTS + " requests, reflectively "
+                + (reflective / REQUESTS) + " ns/request, from registry "
+                + (registry / REQUESTS) + " ns/request");
+    }
+    
+    public static Test suite() {
+        return new TestSuite(ModelLoaderTest.class);
+    }
+    
+    
+    private static Map<String, Object> load(String models) throws Exception {
+        Map<String, Object> modelMap = new HashMap<String, Object>();
+        ModelLoader.loadModels(models, modelMap, initData("second"), true);
+        return modelMap;
+    }
+    
+    
+    // the way models were loaded before there was a registry
+    private static Map<String, Object> loadReflectively(String models) throws Exception {
+        Map<String, Object> modelMap = new HashMap<String, Object>();
+        Map initData = initData("second");
+        for (String model : Utilities.stringToStringArray(models, ",")) {
+            Model pageModel = (Model) Class.forName(model).newInstance();
+            pageModel.init(initData);
+            modelMap.put(pageModel.getModelName(), pageModel);
+        }
+        return modelMap;
+    }
+    
+    
+    private static Map<String, Object> initData(String name) {
+        Map<String, Object> initData = new HashMap<String, Object>();
+        initData.put("name", name);
+        return initData;
+    }
+    
+    
+    public static class RequestModel implements Model {
+        
+        private String name = null;
+        
+        public String getModelName() {
+            return "request";
+        }
+        
+        public void init(Map params) throws WebloggerException {
+            name = (String) params.get("name");
+        }
+        
+        public String getName() {
+            return name;
+        }
+    }
+    
+    
+    public static class StatelessModel implements SharedModel {
+        
+        public String getModelName() {
+            return "stateless";
+        }
+        
+        public void init(Map params) throws WebloggerException {
+            // no-op
+        }
+    }
+    
+}
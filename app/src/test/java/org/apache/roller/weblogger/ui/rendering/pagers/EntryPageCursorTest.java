@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.pagers;
+
+import java.sql.Timestamp;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+
+
+/**
+ * Test EntryPageCursor.
+ */
+public class EntryPageCursorTest extends TestCase {
+
+    public void testRoundTrip() {
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId("abc-123");
+        entry.setPubTime(new Timestamp(1234567890000L));
+
+        String token = EntryPageCursor.toToken(entry);
+        assertEquals("1234567890000-abc-123", token);
+
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        assertTrue(EntryPageCursor.apply(token, wesc));
+        assertEquals(1234567890000L, wesc.getAfterPubTime().getTime());
+        assertEquals("abc-123", wesc.getAfterId());
+    }
+
+    public void testBadTokens() {
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        assertFalse(EntryPageCursor.apply(null, wesc));
+        assertFalse(EntryPageCursor.apply("", wesc));
+        assertFalse(EntryPageCursor.apply("-abc", wesc));
+        assertFalse(EntryPageCursor.apply("123-", wesc));
+        assertFalse(EntryPageCursor.apply("xyz-abc", wesc));
+        assertNull(wesc.getAfterPubTime());
+        assertNull(wesc.getAfterId());
+
+        assertNull(EntryPageCursor.toToken(new WeblogEntry()));
+    }
+
+    public void testAddToURL() {
+        assertEquals("http://host/blog/?after=1-a",
+                EntryPageCursor.addToURL("http://host/blog/", "1-a"));
+        assertEquals("http://host/blog/?page=2&after=1-a",
+                EntryPageCursor.addToURL("http://host/blog/?page=2", "1-a"));
+        assertEquals("http://host/blog/",
+                EntryPageCursor.addToURL("http://host/blog/", null));
+    }
+
+    public static Test suite() {
+        return new TestSuite(EntryPageCursorTest.class);
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+/**
+ * Test ETagHeaderUtil.
+ */
+public class ETagHeaderUtilTest extends TestCase {
+
+    public void testMatches() {
+        assertTrue(ETagHeaderUtil.matches("\"abc\"", "\"abc\""));
+        assertTrue(ETagHeaderUtil.matches("\"xyz\", \"abc\"", "\"abc\""));
+        assertTrue(ETagHeaderUtil.matches("*", "\"abc\""));
+        assertFalse(ETagHeaderUtil.matches("\"xyz\"", "\"abc\""));
+        assertFalse(ETagHeaderUtil.matches("abc", "\"abc\""));
+    }
+
+    public void testWeakComparison() {
+        assertTrue(ETagHeaderUtil.matches("W/\"abc\"", "\"abc\""));
+        assertTrue(ETagHeaderUtil.matches("\"abc\"", "W/\"abc\""));
+    }
+
+    public static Test suite() {
+        return new TestSuite(ETagHeaderUtilTest.class);
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SiteWideDependenciesTest {
+
+    @Test
+    public void stopRecording_notStarted() {
+        final Set<String> dependencies = SiteWideDependencies.stopRecording();
+
+        assertEquals(1, dependencies.size());
+        assertTrue(dependencies.contains(SiteWideDependencies.ANY));
+    }
+
+    @Test
+    public void record_whileRecording() {
+        SiteWideDependencies.startRecording();
+        SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
+        SiteWideDependencies.recordWeblog("blog1");
+        SiteWideDependencies.record(SiteWideDependencies.ENTRIES);
+
+        final Set<String> dependencies = SiteWideDependencies.stopRecording();
+
+        assertEquals(2, dependencies.size());
+        assertTrue(dependencies.contains(SiteWideDependencies.ENTRIES));
+        assertTrue(dependencies.contains(SiteWideDependencies.weblog("blog1")));
+    }
+
+    @Test
+    public void startRecording_discardsLeftovers() {
+        SiteWideDependencies.startRecording();
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
+
+        SiteWideDependencies.startRecording();
+        SiteWideDependencies.record(SiteWideDependencies.COMMENTS);
+
+        final Set<String> dependencies = SiteWideDependencies.stopRecording();
+
+        assertEquals(1, dependencies.size());
+        assertTrue(dependencies.contains(SiteWideDependencies.COMMENTS));
+    }
+
+    @Test
+    public void record_notRecording() {
+        SiteWideDependencies.record(SiteWideDependencies.WEBLOGS);
+
+        assertTrue(SiteWideDependencies.stopRecording().contains(SiteWideDependencies.ANY));
+    }
+
+    @Test
+    public void clear_endsRecording() {
+        SiteWideDependencies.startRecording();
+        SiteWideDependencies.record(SiteWideDependencies.USERS);
+        SiteWideDependencies.clear();
+
+        SiteWideDependencies.record(SiteWideDependencies.COMMENTS);
+
+        final Set<String> dependencies = SiteWideDependencies.stopRecording();
+
+        assertEquals(1, dependencies.size());
+        assertTrue(dependencies.contains(SiteWideDependencies.ANY));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.velocity;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WeblogManager;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.CustomTemplateRendition;
+import org.apache.roller.weblogger.pojos.TemplateRendition.RenditionType;
+import org.apache.roller.weblogger.pojos.TemplateRendition.TemplateLanguage;
+import org.apache.roller.weblogger.pojos.ThemeTemplate.ComponentType;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository.DeviceType;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+
+
+/**
+ * Test caching of parsed weblog templates loaded by RollerResourceLoader,
+ * and compare rendering with a warm cache to rendering with a cold one.
+ */
+public class TemplateCacheTest extends TestCase {
+
+    public static Log log = LogFactory.getLog(TemplateCacheTest.class);
+
+    private static final int RENDERS = 200;
+
+    private User testUser = null;
+    private Weblog testWeblog = null;
+    private WeblogTemplate testPage = null;
+    private VelocityEngine engine = null;
+
+
+    protected void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+
+        testUser = TestUtils.setupUser("templateCacheTestUser");
+        testWeblog = TestUtils.setupWeblog("templateCacheTestWeblog", testUser);
+        TestUtils.endSession(true);
+
+        WeblogManager mgr = WebloggerFactory.getWeblogger().getWeblogManager();
+        testPage = new WeblogTemplate();
+        testPage.setAction(ComponentType.WEBLOG);
+        testPage.setName("templateCacheTest");
+        testPage.setDescription("Template cache test");
+        testPage.setLink("templateCacheTest");
+        testPage.setLastModified(new Date());
+        testPage.setWeblog(TestUtils.getManagedWebsite(testWeblog));
+        mgr.saveTemplate(testPage);
+
+        CustomTemplateRendition rendition =
+                new CustomTemplateRendition(testPage, RenditionType.STANDARD);
+        rendition.setTemplate(themePage());
+        rendition.setTemplateLanguage(TemplateLanguage.VELOCITY);
+        mgr.saveTemplateRendition(rendition);
+        TestUtils.endSession(true);
+
+        // an engine with just the roller loader, set up as in velocity.properties
+        Properties props = new Properties();
+        props.setProperty("resource.loader", "roller");
+        props.setProperty("roller.resource.loader.class", RollerResourceLoader.class.getName());
+        props.setProperty("roller.resource.loader.cache", "true");
+        props.setProperty("roller.resource.loader.modificationCheckInterval", "1");
+        props.setProperty("resource.manager.defaultcache.size", "2000");
+        props.setProperty("velocimacro.permissions.allow.inline", "true");
+        props.setProperty("runtime.log.logsystem.class",
+                "org.apache.velocity.runtime.log.NullLogChute");
+        engine = new VelocityEngine();
+        engine.init(props);
+    }
+
+
+    protected void tearDown() throws Exception {
+        TestUtils.teardownWeblog(testWeblog.getId());
+        TestUtils.teardownUser(testUser.getUserName());
+        TestUtils.endSession(true);
+    }
+
+
+    public void testVersionedTemplates() throws Exception {
+
+        WeblogManager mgr = WebloggerFactory.getWeblogger().getWeblogManager();
+        WeblogTemplate page = mgr.getTemplate(testPage.getId());
+        String name = RollerVelocity.getTemplateName(page, DeviceType.standard);
+        assertEquals(page.getLastModified().getTime(), RollerVelocity.getTemplateVersion(name));
+
+        // the same version is parsed once
+        Template template = engine.getTemplate(name, "UTF-8");
+        assertSame(template, engine.getTemplate(name, "UTF-8"));
+
+        // an edit is a new version, parsed again right away
+        CustomTemplateRendition rendition = page.getTemplateRendition(RenditionType.STANDARD);
+        rendition.setTemplate("edited");
+        mgr.saveTemplateRendition(rendition);
+        TestUtils.endSession(true);
+
+        page = mgr.getTemplate(testPage.getId());
+        String editedName = RollerVelocity.getTemplateName(page, DeviceType.standard);
+        assertFalse(name.equals(editedName));
+        StringWriter out = new StringWriter();
+        engine.getTemplate(editedName, "UTF-8").merge(new VelocityContext(), out);
+        assertEquals("edited", out.toString());
+
+        // so is an edit within the same last modified time
+        page = mgr.getTemplate(testPage.getId());
+        page.getTemplateRendition(RenditionType.STANDARD).setTemplate("edited again");
+        assertFalse(editedName.equals(RollerVelocity.getTemplateName(page, DeviceType.standard)));
+        TestUtils.endSession(false);
+    }
+
+    public void testStaleDayInclude() throws Exception {
+
+        WeblogManager mgr = WebloggerFactory.getWeblogger().getWeblogManager();
+        WeblogTemplate day = setupTemplate("_day", "day one");
+        WeblogTemplate page = setupTemplate("templateCacheTestIncluder",
+                "<div>#parse($dayName)</div>");
+        TestUtils.endSession(true);
+
+        day = mgr.getTemplate(day.getId());
+        page = mgr.getTemplate(page.getId());
+        Date modified = day.getLastModified();
+        assertEquals("<div>day one</div>", renderIncluder(page, day));
+        TestUtils.endSession(true);
+
+        // an edit saved within the same last modified time as the first
+        day = mgr.getTemplate(day.getId());
+        CustomTemplateRendition rendition = day.getTemplateRendition(RenditionType.STANDARD);
+        rendition.setTemplate("day two");
+        mgr.saveTemplateRendition(rendition);
+        day.setLastModified(modified);
+        mgr.saveTemplate(day);
+        TestUtils.endSession(true);
+
+        // still replaces the parsed include
+        day = mgr.getTemplate(day.getId());
+        page = mgr.getTemplate(page.getId());
+        assertEquals(modified.getTime(), RollerVelocity.getTemplateVersion(
+                RollerVelocity.getTemplateName(day, DeviceType.standard)));
+        assertEquals("<div>day two</div>", renderIncluder(page, day));
+        TestUtils.endSession(true);
+    }
+
+    public void testWarmVersusCold() throws Exception {
+
+        WeblogTemplate page = WebloggerFactory.getWeblogger()
+                .getWeblogManager().getTemplate(testPage.getId());
+        String name = RollerVelocity.getTemplateName(page, DeviceType.standard);
+        String unversioned = page.getId() + "|" + DeviceType.standard;
+
+        // warm up the jvm, and the cache
+        render(name);
+        render(unversioned + "|" + RENDERS);
+
+        // cold, a new version every time so every render parses
+        long start = System.nanoTime();
+        for (int i = 0; i < RENDERS; i++) {
+            render(unversioned + "|" + i);
+        }
+        long cold = System.nanoTime() - start;
+
+        // warm, the parsed template is reused
+        start = System.nanoTime();
+        for (int i = 0; i < RENDERS; i++) {
+            render(name);
+        }
+        long warm = System.nanoTime() - start;
+
+        log.info("Rendered theme page " + RENDERS + " times, cold cache "
+                + (cold / RENDERS / 1000) + " us/render, warm cache "
+                + (warm / RENDERS / 1000) + " us/render");
+    }
+
+    public static Test suite() {
+        return new TestSuite(TemplateCacheTest.class);
+    }
+
+
+    private WeblogTemplate setupTemplate(String name, String code) throws Exception {
+        WeblogManager mgr = WebloggerFactory.getWeblogger().getWeblogManager();
+        WeblogTemplate template = new WeblogTemplate();
+        template.setAction(ComponentType.CUSTOM);
+        template.setName(name);
+        template.setDescription(name);
+        template.setLink(name);
+        template.setLastModified(new Date());
+        template.setWeblog(TestUtils.getManagedWebsite(testWeblog));
+        mgr.saveTemplate(template);
+
+        CustomTemplateRendition rendition =
+                new CustomTemplateRendition(template, RenditionType.STANDARD);
+        rendition.setTemplate(code);
+        rendition.setTemplateLanguage(TemplateLanguage.VELOCITY);
+        mgr.saveTemplateRendition(rendition);
+        return template;
+    }
+
+
+    // render a page including the day template, named as the weblog.vm
+    // macros name it
+    private String renderIncluder(WeblogTemplate page, WeblogTemplate day) throws Exception {
+        VelocityContext ctx = new VelocityContext();
+        ctx.put("dayName", RollerVelocity.getTemplateName(day, DeviceType.standard));
+        StringWriter out = new StringWriter();
+        engine.getTemplate(RollerVelocity.getTemplateName(page, DeviceType.standard), "UTF-8")
+                .merge(ctx, out);
+        return out.toString();
+    }
+
+
+    private String render(String name) throws Exception {
+        List<String> entries = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            entries.add("Entry " + i);
+        }
+        VelocityContext ctx = new VelocityContext();
+        ctx.put("title", "Template cache test");
+        ctx.put("entries", entries);
+
+        StringWriter out = new StringWriter();
+        engine.getTemplate(name, "UTF-8").merge(ctx, out);
+        return out.toString();
+    }
+
+
+    // something like a weblog page of a theme, with macros, loops and
+    // conditionals
+    private static String themePage() {
+        StringBuilder page = new StringBuilder();
+        page.append("#macro(showEntry $entry $num)\n");
+        page.append("<div class=\"entry\" id=\"entry$num\">\n");
+        page.append("  #if($num % 2 == 0)<h3 class=\"even\">#else<h3>#end$entry</h3>\n");
+        page.append("  <p>Posted in #foreach($tag in ['java', 'roller', 'velocity'])");
+        page.append("#if($foreach.hasNext)$tag, #else$tag#end#end</p>\n");
+        page.append("</div>\n");
+        page.append("#end\n");
+        page.append("<html><head><title>$title</title></head><body>\n");
+        for (int i = 0; i < 10; i++) {
+            page.append("<div class=\"sidebar").append(i).append("\">\n");
+            page.append("  #set($count").append(i).append(" = $entries.size() + ").append(i).append(")\n");
+            page.append("  #if($count").append(i).append(" > 5)<p>$count").append(i);
+            page.append(" items</p>#else<p>few items</p>#end\n");
+            page.append("</div>\n");
+        }
+        page.append("#foreach($entry in $entries)\n");
+        page.append("  #showEntry($entry $foreach.count)\n");
+        page.append("#end\n");
+        page.append("</body></html>\n");
+        return page.toString();
+    }
+
+}
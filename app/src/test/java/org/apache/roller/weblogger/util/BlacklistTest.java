@@ -19,6 +19,11 @@
 package org.apache.roller.weblogger.util;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -95,6 +100,132 @@ public class BlacklistTest extends TestCase {
         assertTrue(blacklist.isBlacklisted("viagra.com"));
     }
     
+    public void testStringRules() {
+        List<String> stringRules = Arrays.asList("spam.example.com", "cheap", "pill[sz]", "bad(");
+        List<Pattern> regexRules = Collections.emptyList();
+
+        // whole words only, case insensitive
+        assertTrue(Blacklist.matchesRulesOnly("see SPAM.example.com now", stringRules, regexRules));
+        assertTrue(Blacklist.matchesRulesOnly("Cheap stuff", stringRules, regexRules));
+        assertFalse(Blacklist.matchesRulesOnly("cheapest stuff", stringRules, regexRules));
+        assertFalse(Blacklist.matchesRulesOnly("nospam.example.community", stringRules, regexRules));
+
+        // rules with regex syntax, and ones which aren't valid regexes
+        assertTrue(Blacklist.matchesRulesOnly("buy pillz", stringRules, regexRules));
+        assertTrue(Blacklist.matchesRulesOnly("so bad(ly", stringRules, regexRules));
+        assertFalse(Blacklist.matchesRulesOnly("four score", stringRules, regexRules));
+    }
+    
+    public void testAdditionalRules() {
+        List<String> stringRules = new ArrayList<String>();
+        List<Pattern> regexRules = new ArrayList<Pattern>();
+        Blacklist.populateSpamRules("weblogspam.com\n(foo)+bar", stringRules, regexRules, "sitespam.com");
+
+        assertTrue(blacklist.isBlacklisted("www.weblogspam.com", stringRules, regexRules));
+        assertTrue(blacklist.isBlacklisted("sitespam.com", stringRules, regexRules));
+        assertTrue(blacklist.isBlacklisted("foofoobar", stringRules, regexRules));
+        assertTrue(blacklist.isBlacklisted("viagra.com", stringRules, regexRules));
+        assertFalse(blacklist.isBlacklisted("weblogspam.com"));
+        assertFalse(blacklist.isBlacklisted("a fine comment", stringRules, regexRules));
+    }
+    
+    public void testAlternationAfterLeadingGroup() {
+        List<String> stringRules = Collections.emptyList();
+        List<Pattern> regexRules = new ArrayList<Pattern>();
+        regexRules.add(Pattern.compile("(viagra)pills|casino"));
+        regexRules.add(Pattern.compile("(cheap)[a|b]pills"));
+        assertTrue(Blacklist.matchesRulesOnly("play casino now", stringRules, regexRules));
+        assertTrue(Blacklist.matchesRulesOnly("buy viagrapills", stringRules, regexRules));
+        assertTrue(Blacklist.matchesRulesOnly("cheapapills", stringRules, regexRules));
+        assertFalse(Blacklist.matchesRulesOnly("a fine comment", stringRules, regexRules));
+    }
+    
+    /**
+     * Check a comment corpus against a few thousand rules, compare the
+     * results with compiling every rule for every check as the blacklist
+     * used to, and report the time taken by both.
+     */
+    public void testMatchesLikeUncompiledRules() {
+        List<String> stringRules = new ArrayList<String>();
+        for (int i = 0; i < 3000; i++) {
+            stringRules.add("spamdomain" + i + ".com");
+        }
+        List<Pattern> regexRules = new ArrayList<Pattern>();
+        for (int i = 0; i < 100; i++) {
+            regexRules.add(Pattern.compile("(casino" + i + ")[\\w\\-_.]*\\.[a-z]{2,}"));
+        }
+
+        List<String> comments = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder comment = new StringBuilder("Thanks for the great post number " + i + ". ");
+            for (int w = 0; w < 40; w++) {
+                comment.append("word").append((i * 7 + w) % 113).append(' ');
+            }
+            if (i % 5 == 0) {
+                comment.append("visit SpamDomain").append(i * 13).append(".com");
+            } else if (i % 7 == 0) {
+                comment.append("see casino").append(i % 100).append("-online.net");
+            }
+            comments.add(comment.toString());
+        }
+
+        long start = System.nanoTime();
+        List<Boolean> expected = new ArrayList<Boolean>();
+        for (String comment : comments) {
+            expected.add(matchesUncompiled(comment, stringRules, regexRules));
+        }
+        long uncompiledNanos = System.nanoTime() - start;
+
+        // rules are compiled on first use, weblog blacklists are kept as text
+        StringBuilder text = new StringBuilder();
+        for (String rule : stringRules) {
+            text.append(rule).append('\n');
+        }
+        for (Pattern rule : regexRules) {
+            text.append(rule.pattern()).append('\n');
+        }
+        String blacklistText = text.toString();
+        BlacklistRules.forText(blacklistText, null);
+
+        start = System.nanoTime();
+        List<Boolean> actual = new ArrayList<Boolean>();
+        for (String comment : comments) {
+            actual.add(BlacklistRules.forText(blacklistText, null).matches(comment));
+        }
+        long compiledNanos = System.nanoTime() - start;
+
+        List<Boolean> fromLists = new ArrayList<Boolean>();
+        for (String comment : comments) {
+            fromLists.add(Blacklist.matchesRulesOnly(comment, stringRules, regexRules));
+        }
+
+        assertEquals(expected, fromLists);
+        assertEquals(expected, actual);
+        assertTrue(actual.contains(Boolean.TRUE));
+        assertTrue(actual.contains(Boolean.FALSE));
+
+        log.info(comments.size() + " comments against " + (stringRules.size() + regexRules.size())
+                + " rules: uncompiled " + (uncompiledNanos / comments.size() / 1000)
+                + " us/comment, compiled " + (compiledNanos / comments.size() / 1000) + " us/comment");
+    }
+    
+    // the way rules used to be applied, compiling string rules every time
+    private static boolean matchesUncompiled(
+            String str, List<String> stringRules, List<Pattern> regexRules) {
+        for (String rule : stringRules) {
+            Pattern pattern = Pattern.compile("\\b(" + rule + ")\\b", Pattern.CASE_INSENSITIVE);
+            if (pattern.matcher(str).find()) {
+                return true;
+            }
+        }
+        for (Pattern rule : regexRules) {
+            if (rule.matcher(str).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     public static Test suite() {
         return new TestSuite(BlacklistTest.class);
     }
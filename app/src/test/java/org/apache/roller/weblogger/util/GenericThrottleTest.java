@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util;
+
+import java.util.concurrent.CountDownLatch;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+/**
+ * Test GenericThrottle.
+ */
+public class GenericThrottleTest extends TestCase {
+
+    public void testThreshold() {
+        TestThrottle throttle = new TestThrottle(3, 1000, 10);
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(throttle.processHit("a"));
+        }
+        assertFalse(throttle.isAbusive("a"));
+        assertTrue(throttle.processHit("a"));
+        assertTrue(throttle.isAbusive("a"));
+
+        // other clients are not affected
+        assertFalse(throttle.processHit("b"));
+        assertFalse(throttle.isAbusive("b"));
+        assertFalse(throttle.isAbusive("c"));
+        assertFalse(throttle.processHit(null));
+
+        assertEquals(1, throttle.getAbusiveClients().size());
+        assertEquals(Integer.valueOf(4), throttle.getAbusiveClients().get("a"));
+        assertEquals(5L, throttle.getStats().get("hits"));
+        assertEquals(1L, throttle.getStats().get("abusiveHits"));
+    }
+
+    public void testSlidingWindow() {
+        TestThrottle throttle = new TestThrottle(3, 1000, 10);
+
+        for (int i = 0; i < 4; i++) {
+            throttle.processHit("a");
+        }
+        assertTrue(throttle.isAbusive("a"));
+
+        // halfway through the next interval half of the hits still count
+        throttle.time += 1500;
+        assertFalse(throttle.isAbusive("a"));
+        assertFalse(throttle.processHit("a"));
+        assertTrue(throttle.processHit("a"));
+
+        // and two intervals later nothing counts
+        throttle.time += 2000;
+        assertFalse(throttle.isAbusive("a"));
+        assertTrue(throttle.getAbusiveClients().isEmpty());
+    }
+
+    public void testEviction() {
+        TestThrottle throttle = new TestThrottle(3, 1000, 2);
+
+        throttle.processHit("a");
+        throttle.time += 10;
+        throttle.processHit("b");
+        throttle.time += 10;
+
+        // the client seen least recently makes room
+        throttle.processHit("c");
+        assertEquals(2, throttle.getStats().get("clients"));
+        assertEquals(1L, throttle.getStats().get("evictions"));
+
+        // idle clients are all dropped
+        throttle.time += 5000;
+        throttle.processHit("d");
+        assertEquals(1, throttle.getStats().get("clients"));
+        assertEquals(3L, throttle.getStats().get("evictions"));
+    }
+
+    public void testConcurrentHits() throws Exception {
+        final int threads = 8;
+        final int hitsPerThread = 1000;
+        final TestThrottle throttle = new TestThrottle(threads * hitsPerThread, 1000, 10);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < hitsPerThread; j++) {
+                        throttle.processHit("a");
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // no hits were lost, one more makes the client abusive
+        assertFalse(throttle.isAbusive("a"));
+        assertTrue(throttle.processHit("a"));
+    }
+
+    public void testConcurrentNewClients() throws Exception {
+        final int threads = 8;
+        final int clientsPerThread = 2000;
+        final int maxEntries = 100;
+        final TestThrottle throttle = new TestThrottle(10, 1000, maxEntries);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int worker = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < clientsPerThread; j++) {
+                        throttle.processHit(worker + ":" + j);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // a flood of new clients, none idle, only overshoots by the clients
+        // added at the same moment, and the next one makes room again
+        assertTrue((Integer) throttle.getStats().get("clients") <= maxEntries + threads);
+        throttle.processHit("last");
+        assertTrue((Integer) throttle.getStats().get("clients") <= maxEntries);
+    }
+
+    public static Test suite() {
+        return new TestSuite(GenericThrottleTest.class);
+    }
+
+
+    // throttle with a clock we control, starting at the beginning of a window
+    private static class TestThrottle extends GenericThrottle {
+
+        volatile long time = 1000000;
+
+        TestThrottle(int thresh, int inter, int maxEntries) {
+            super(thresh, inter, maxEntries);
+        }
+
+        long now() {
+            return time;
+        }
+    }
+
+}
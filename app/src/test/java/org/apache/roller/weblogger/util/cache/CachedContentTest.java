@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+/**
+ * Test CachedContent.
+ */
+public class CachedContentTest extends TestCase {
+
+    public void testOffHeapContent() throws Exception {
+        CachedContent content = content(300);
+        content.moveOffHeap();
+        assertTrue(content.isOffHeap());
+        assertEquals(300, content.getContentLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeTo(out);
+        assertEquals(300, out.size());
+        assertEquals(content.getContentAsString(), out.toString("UTF-8"));
+    }
+
+    public void testCompressedContent() throws Exception {
+        CachedContent content = content(3000);
+        content.prepareForCaching(true, true);
+        assertTrue(content.hasCompressedContent());
+        assertTrue(content.getCompressedContentLength() < 3000);
+        assertEquals(3000 + content.getCompressedContentLength(), content.getCachedSize());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeCompressedTo(out);
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        int length = 0;
+        while (in.read() != -1) {
+            length++;
+        }
+        assertEquals(3000, length);
+    }
+
+    public void testETag() throws Exception {
+        CachedContent content = content(300);
+        String eTag = content.getETag();
+        assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+        assertEquals(eTag, content(300).getETag());
+        assertFalse(eTag.equals(content(301).getETag()));
+
+        // the tag survives moving off heap and compressed content has its own
+        content.prepareForCaching(true, true);
+        assertEquals(eTag, content.getETag());
+        assertFalse(eTag.equals(content.getCompressedETag()));
+    }
+
+    public void testStreamedContent() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CachedContent content = new CachedContent(100, "text/html", out, 1000);
+        content.getCachedWriter().write(text(300));
+
+        // written through as it is flushed, our copy after close only
+        content.flush();
+        assertEquals(300, out.size());
+        content.close();
+        assertFalse(content.isTruncated());
+        assertEquals(text(300), content.getContentAsString());
+        assertEquals(content(300).getETag(), content.getETag());
+    }
+
+    public void testTruncatedContent() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CachedContent content = new CachedContent(100, "text/html", out, 1000);
+        content.getCachedWriter().write(text(3000));
+        content.close();
+
+        // the client gets everything, the copy is dropped
+        assertEquals(text(3000), out.toString("UTF-8"));
+        assertTrue(content.isTruncated());
+        assertEquals(0, content.getContentLength());
+    }
+
+    public void testFailedStream() throws Exception {
+        OutputStream out = new OutputStream() {
+            public void write(int b) throws IOException {
+                throw new IOException("client went away");
+            }
+        };
+        CachedContent content = new CachedContent(100, "text/html", out, 100000);
+        content.getCachedWriter().write(text(10000));
+        content.close();
+
+        // a client going away leaves our copy complete
+        assertFalse(content.isTruncated());
+        assertEquals(text(10000), content.getContentAsString());
+    }
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append('x');
+        }
+        return text.toString();
+    }
+
+    private static CachedContent content(int length) throws Exception {
+        CachedContent content = new CachedContent(length);
+        for (int i = 0; i < length; i++) {
+            content.getCachedWriter().write('x');
+        }
+        content.flush();
+        content.close();
+        return content;
+    }
+
+    public static Test suite() {
+        return new TestSuite(CachedContentTest.class);
+    }
+
+}
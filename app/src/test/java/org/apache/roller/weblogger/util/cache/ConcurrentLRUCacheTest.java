@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+/**
+ * Test ConcurrentLRUCacheImpl.
+ */
+public class ConcurrentLRUCacheTest extends TestCase {
+
+    public void testPutGetRemove() {
+        Cache cache = new ConcurrentLRUCacheImpl("test", 10, 60);
+
+        cache.put("key1", "string1");
+        assertEquals("string1", cache.get("key1"));
+        assertNull(cache.get("key2"));
+
+        cache.remove("key1");
+        assertNull(cache.get("key1"));
+    }
+
+    public void testLRU() {
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 10, 60);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, "string" + i);
+        }
+
+        // touch key0 so it is the most recently used entry
+        assertNotNull(cache.get("key0"));
+
+        // overflowing the cache evicts the least recently used entries
+        cache.put("key10", "string10");
+        assertNotNull(cache.get("key0"));
+        assertNotNull(cache.get("key10"));
+        assertNull(cache.get("key1"));
+
+        Map<String, Object> stats = cache.getStats();
+        assertTrue((Integer) stats.get("size") <= 10);
+        assertTrue((Double) stats.get("evictions") > 0);
+    }
+
+    public void testTimeout() throws Exception {
+        Cache cache = new ConcurrentLRUCacheImpl("test", 10, 1);
+
+        cache.put("key1", "string1");
+        assertNotNull(cache.get("key1"));
+
+        Thread.sleep(1100);
+        assertNull(cache.get("key1"));
+    }
+
+    public void testStats() {
+        Cache cache = new ConcurrentLRUCacheImpl("test", 10, 60);
+
+        cache.put("key1", "string1");
+        cache.get("key1");
+        cache.get("key2");
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1.0, stats.get("hits"));
+        assertEquals(1.0, stats.get("misses"));
+        assertEquals(1.0, stats.get("puts"));
+        assertEquals(50.0, stats.get("efficiency"));
+
+        cache.clear();
+        assertEquals(0.0, cache.getStats().get("hits"));
+    }
+
+    public void testMaxBytes() throws Exception {
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 100, 60, 1000);
+
+        for (int i = 0; i < 5; i++) {
+            cache.put("key" + i, content(300));
+        }
+
+        // only the most recently used entries fit within the byte budget
+        Map<String, Object> stats = cache.getStats();
+        assertTrue((Long) stats.get("bytes") <= 1000);
+        assertNull(cache.get("key0"));
+        assertNotNull(cache.get("key4"));
+
+        // content larger than the whole budget is never cached
+        cache.put("big", content(2000));
+        assertNull(cache.get("big"));
+    }
+
+    private static CachedContent content(int length) throws Exception {
+        CachedContent content = new CachedContent(length);
+        for (int i = 0; i < length; i++) {
+            content.getCachedWriter().write('x');
+        }
+        content.flush();
+        content.close();
+        return content;
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final Cache cache = new ConcurrentLRUCacheImpl("test", 100, 60);
+
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        String key = "key" + ((i * 31 + seed) % 500);
+                        if (cache.get(key) == null) {
+                            cache.put(key, key);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(80000.0, (Double) stats.get("hits") + (Double) stats.get("misses"));
+        // evictions are best effort under contention, so allow some slack
+        assertTrue((Integer) stats.get("size") <= 200);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ConcurrentLRUCacheTest.class);
+    }
+
+}